@@ -15,6 +15,7 @@ CREATE TABLE product (
     description TEXT COMMENT '商品描述',
     image_url VARCHAR(255) COMMENT '商品图片URL',
     status TINYINT NOT NULL DEFAULT 1 COMMENT '状态：1-上架，0-下架',
+    version BIGINT NOT NULL DEFAULT 0 COMMENT '商品信息版本号，每次修改商品信息时递增',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
 ) COMMENT '商品表';
@@ -23,6 +24,8 @@ CREATE TABLE product (
 CREATE TABLE `order` (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
     order_no VARCHAR(50) NOT NULL COMMENT '订单编号',
+    user_id BIGINT COMMENT '下单用户ID',
+    batch_no VARCHAR(50) COMMENT '多商品订单批次号，同一次下单的各商品订单相同',
     product_id BIGINT NOT NULL COMMENT '商品ID',
     product_name VARCHAR(100) NOT NULL COMMENT '商品名称',
     product_price DECIMAL(10, 2) NOT NULL COMMENT '商品价格',
@@ -33,7 +36,11 @@ CREATE TABLE `order` (
     expire_time DATETIME NOT NULL COMMENT '订单过期时间',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    UNIQUE KEY uk_order_no (order_no)
+    UNIQUE KEY uk_order_no (order_no),
+    INDEX idx_product_user (product_id, user_id),
+    INDEX idx_batch_no (batch_no),
+    INDEX idx_status_create_time (status, create_time),
+    INDEX idx_create_time (create_time)
 ) COMMENT '订单表';
 
 -- 库存日志表
@@ -47,9 +54,26 @@ CREATE TABLE stock_log (
     order_id VARCHAR(50) COMMENT '关联订单ID',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     synced BOOLEAN DEFAULT FALSE COMMENT '是否已同步到Redis',
-    remark VARCHAR(255) COMMENT '备注'
+    remark VARCHAR(255) COMMENT '备注',
+    -- 按商品或操作类型过滤的游标翻页沿这两个索引按 (create_time, id) 顺序读取；
+    -- idx_product_create_time 取代原来的 idx_product_id，idx_operation_type_create_time 为新增
+    INDEX idx_product_create_time (product_id, create_time),
+    INDEX idx_operation_type_create_time (operation_type, create_time),
+    INDEX idx_synced (synced),
+    INDEX idx_order_id (order_id),
+    INDEX idx_create_time (create_time)
 ) COMMENT '库存日志表';
 
+-- 库存日志统计汇总表
+CREATE TABLE stock_log_rollup (
+    stat_date DATE NOT NULL COMMENT '统计日期',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    operation_type VARCHAR(20) NOT NULL COMMENT '操作类型',
+    log_count BIGINT NOT NULL DEFAULT 0 COMMENT '日志条数',
+    change_amount BIGINT NOT NULL DEFAULT 0 COMMENT '库存变更数量合计',
+    PRIMARY KEY (stat_date, product_id, operation_type)
+) COMMENT '库存日志统计汇总表，写入库存日志时同步累加';
+
 -- 插入测试数据
 -- 商品数据
 INSERT INTO product (name, price, stock, description, image_url) VALUES
@@ -72,4 +96,10 @@ UPDATE `order` SET payment_time = DATE_ADD(create_time, INTERVAL 5 MINUTE) WHERE
 INSERT INTO stock_log (product_id, before_stock, after_stock, change_amount, operation_type, order_id, synced)
 VALUES
 (1, 101, 100, 1, 'DEDUCT', (SELECT order_no FROM `order` WHERE product_id = 1 LIMIT 1), true),
-(3, 82, 80, 2, 'DEDUCT', (SELECT order_no FROM `order` WHERE product_id = 3 LIMIT 1), true); 
\ No newline at end of file
+(3, 82, 80, 2, 'DEDUCT', (SELECT order_no FROM `order` WHERE product_id = 3 LIMIT 1), true); 
+
+-- 按已有库存日志生成统计汇总
+INSERT INTO stock_log_rollup (stat_date, product_id, operation_type, log_count, change_amount)
+SELECT DATE(create_time), product_id, operation_type, COUNT(*), SUM(change_amount)
+FROM stock_log
+GROUP BY DATE(create_time), product_id, operation_type;
@@ -3,6 +3,11 @@ package com.example.skillsystem.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 @ConfigurationProperties(prefix = "app")
 public class AppConfig {
@@ -13,8 +18,21 @@ public class AppConfig {
     // 订单相关配置
     private final Order order = new Order();
     
+    // 库存相关配置
+    private final Stock stock = new Stock();
+    
+    // 下单和支付的准入控制配置
+    private final Admission admission = new Admission();
+    
+    // 只读从库配置
+    private final ReadReplica readReplica = new ReadReplica();
+    
     public static class Product {
-        private Integer cacheTtl = 3600;
+        private Integer cacheTtl = 86400;
+        
+        private Integer doubleDeleteDelay = 1000;
+        
+        private Integer infoMaxAge = 60;
         
         public Integer getCacheTtl() {
             return cacheTtl;
@@ -23,11 +41,47 @@ public class AppConfig {
         public void setCacheTtl(Integer cacheTtl) {
             this.cacheTtl = cacheTtl;
         }
+        
+        public Integer getDoubleDeleteDelay() {
+            return doubleDeleteDelay;
+        }
+        
+        public void setDoubleDeleteDelay(Integer doubleDeleteDelay) {
+            this.doubleDeleteDelay = doubleDeleteDelay;
+        }
+        
+        public Integer getInfoMaxAge() {
+            return infoMaxAge;
+        }
+        
+        public void setInfoMaxAge(Integer infoMaxAge) {
+            this.infoMaxAge = infoMaxAge;
+        }
     }
     
     public static class Order {
         private Integer paymentTimeout = 300000;
         
+        private Boolean asyncEnabled = false;
+        
+        private Integer pipelineQueueCapacity = 10000;
+        
+        private Integer pipelineBatchSize = 200;
+        
+        private Map<Long, Integer> purchaseLimits = new HashMap<>();
+        
+        private Integer idempotencyTtl = 3600;
+        
+        private Integer idempotencyMaxEntries = 100000;
+        
+        private Integer idempotencyWaitTimeout = 5000;
+        
+        private Boolean idempotencySharedEnabled = false;
+        
+        private Integer workerId = -1;
+        
+        private Integer maxClockBackward = 5000;
+        
         public Integer getPaymentTimeout() {
             return paymentTimeout;
         }
@@ -35,12 +89,448 @@ public class AppConfig {
         public void setPaymentTimeout(Integer paymentTimeout) {
             this.paymentTimeout = paymentTimeout;
         }
+        
+        public Boolean getAsyncEnabled() {
+            return asyncEnabled;
+        }
+        
+        public void setAsyncEnabled(Boolean asyncEnabled) {
+            this.asyncEnabled = asyncEnabled;
+        }
+        
+        public Integer getPipelineQueueCapacity() {
+            return pipelineQueueCapacity;
+        }
+        
+        public void setPipelineQueueCapacity(Integer pipelineQueueCapacity) {
+            this.pipelineQueueCapacity = pipelineQueueCapacity;
+        }
+        
+        public Integer getPipelineBatchSize() {
+            return pipelineBatchSize;
+        }
+        
+        public void setPipelineBatchSize(Integer pipelineBatchSize) {
+            this.pipelineBatchSize = pipelineBatchSize;
+        }
+        
+        public Map<Long, Integer> getPurchaseLimits() {
+            return purchaseLimits;
+        }
+        
+        public void setPurchaseLimits(Map<Long, Integer> purchaseLimits) {
+            this.purchaseLimits = purchaseLimits;
+        }
+        
+        public Integer getIdempotencyTtl() {
+            return idempotencyTtl;
+        }
+        
+        public void setIdempotencyTtl(Integer idempotencyTtl) {
+            this.idempotencyTtl = idempotencyTtl;
+        }
+        
+        public Integer getIdempotencyMaxEntries() {
+            return idempotencyMaxEntries;
+        }
+        
+        public void setIdempotencyMaxEntries(Integer idempotencyMaxEntries) {
+            this.idempotencyMaxEntries = idempotencyMaxEntries;
+        }
+        
+        public Integer getIdempotencyWaitTimeout() {
+            return idempotencyWaitTimeout;
+        }
+        
+        public void setIdempotencyWaitTimeout(Integer idempotencyWaitTimeout) {
+            this.idempotencyWaitTimeout = idempotencyWaitTimeout;
+        }
+        
+        public Boolean getIdempotencySharedEnabled() {
+            return idempotencySharedEnabled;
+        }
+        
+        public void setIdempotencySharedEnabled(Boolean idempotencySharedEnabled) {
+            this.idempotencySharedEnabled = idempotencySharedEnabled;
+        }
+        
+        public Integer getWorkerId() {
+            return workerId;
+        }
+        
+        public void setWorkerId(Integer workerId) {
+            this.workerId = workerId;
+        }
+        
+        public Integer getMaxClockBackward() {
+            return maxClockBackward;
+        }
+        
+        public void setMaxClockBackward(Integer maxClockBackward) {
+            this.maxClockBackward = maxClockBackward;
+        }
+    }
+    
+    public static class Stock {
+        private Integer lockWriterQueueCapacity = 10000;
+        
+        private Integer lockWriterBatchSize = 200;
+        
+        private String lockWriterFallbackFile = "data/stock-lock-fallback.jsonl";
+        
+        private List<Long> segmentedProducts = new ArrayList<>();
+        
+        private Integer segmentCount = 8;
+        
+        private List<Long> leasedProducts = new ArrayList<>();
+        
+        private Integer leaseSize = 50;
+        
+        private Integer leaseMinSize = 10;
+        
+        private Integer leaseMaxSize = 500;
+        
+        private Integer leaseTimeout = 10000;
+        
+        private Boolean combinerEnabled = true;
+        
+        private Integer combineWindowMicros = 50;
+        
+        private Integer combineMaxBatch = 64;
+        
+        private Integer journalCapacity = 65536;
+        
+        private Integer journalBatchSize = 500;
+        
+        private String journalFallbackFile = "data/stock-log-fallback.jsonl";
+        
+        private Boolean writeBehindEnabled = true;
+        
+        private Integer writeBehindInterval = 1000;
+        
+        private Integer writeBehindThreshold = 100;
+        
+        public Integer getLockWriterQueueCapacity() {
+            return lockWriterQueueCapacity;
+        }
+        
+        public void setLockWriterQueueCapacity(Integer lockWriterQueueCapacity) {
+            this.lockWriterQueueCapacity = lockWriterQueueCapacity;
+        }
+        
+        public Integer getLockWriterBatchSize() {
+            return lockWriterBatchSize;
+        }
+        
+        public void setLockWriterBatchSize(Integer lockWriterBatchSize) {
+            this.lockWriterBatchSize = lockWriterBatchSize;
+        }
+        
+        public String getLockWriterFallbackFile() {
+            return lockWriterFallbackFile;
+        }
+        
+        public void setLockWriterFallbackFile(String lockWriterFallbackFile) {
+            this.lockWriterFallbackFile = lockWriterFallbackFile;
+        }
+        
+        public List<Long> getSegmentedProducts() {
+            return segmentedProducts;
+        }
+        
+        public void setSegmentedProducts(List<Long> segmentedProducts) {
+            this.segmentedProducts = segmentedProducts;
+        }
+        
+        public Integer getSegmentCount() {
+            return segmentCount;
+        }
+        
+        public void setSegmentCount(Integer segmentCount) {
+            this.segmentCount = segmentCount;
+        }
+        
+        public List<Long> getLeasedProducts() {
+            return leasedProducts;
+        }
+        
+        public void setLeasedProducts(List<Long> leasedProducts) {
+            this.leasedProducts = leasedProducts;
+        }
+        
+        public Integer getLeaseSize() {
+            return leaseSize;
+        }
+        
+        public void setLeaseSize(Integer leaseSize) {
+            this.leaseSize = leaseSize;
+        }
+        
+        public Integer getLeaseMinSize() {
+            return leaseMinSize;
+        }
+        
+        public void setLeaseMinSize(Integer leaseMinSize) {
+            this.leaseMinSize = leaseMinSize;
+        }
+        
+        public Integer getLeaseMaxSize() {
+            return leaseMaxSize;
+        }
+        
+        public void setLeaseMaxSize(Integer leaseMaxSize) {
+            this.leaseMaxSize = leaseMaxSize;
+        }
+        
+        public Integer getLeaseTimeout() {
+            return leaseTimeout;
+        }
+        
+        public void setLeaseTimeout(Integer leaseTimeout) {
+            this.leaseTimeout = leaseTimeout;
+        }
+        
+        public Boolean getCombinerEnabled() {
+            return combinerEnabled;
+        }
+        
+        public void setCombinerEnabled(Boolean combinerEnabled) {
+            this.combinerEnabled = combinerEnabled;
+        }
+        
+        public Integer getCombineWindowMicros() {
+            return combineWindowMicros;
+        }
+        
+        public void setCombineWindowMicros(Integer combineWindowMicros) {
+            this.combineWindowMicros = combineWindowMicros;
+        }
+        
+        public Integer getCombineMaxBatch() {
+            return combineMaxBatch;
+        }
+        
+        public void setCombineMaxBatch(Integer combineMaxBatch) {
+            this.combineMaxBatch = combineMaxBatch;
+        }
+        
+        public Integer getJournalCapacity() {
+            return journalCapacity;
+        }
+        
+        public void setJournalCapacity(Integer journalCapacity) {
+            this.journalCapacity = journalCapacity;
+        }
+        
+        public Integer getJournalBatchSize() {
+            return journalBatchSize;
+        }
+        
+        public void setJournalBatchSize(Integer journalBatchSize) {
+            this.journalBatchSize = journalBatchSize;
+        }
+        
+        public String getJournalFallbackFile() {
+            return journalFallbackFile;
+        }
+        
+        public void setJournalFallbackFile(String journalFallbackFile) {
+            this.journalFallbackFile = journalFallbackFile;
+        }
+        
+        public Boolean getWriteBehindEnabled() {
+            return writeBehindEnabled;
+        }
+        
+        public void setWriteBehindEnabled(Boolean writeBehindEnabled) {
+            this.writeBehindEnabled = writeBehindEnabled;
+        }
+        
+        public Integer getWriteBehindInterval() {
+            return writeBehindInterval;
+        }
+        
+        public void setWriteBehindInterval(Integer writeBehindInterval) {
+            this.writeBehindInterval = writeBehindInterval;
+        }
+        
+        public Integer getWriteBehindThreshold() {
+            return writeBehindThreshold;
+        }
+        
+        public void setWriteBehindThreshold(Integer writeBehindThreshold) {
+            this.writeBehindThreshold = writeBehindThreshold;
+        }
+    }
+    
+    public static class Admission {
+        private Boolean enabled = true;
+        
+        private Integer globalRate = 2000;
+        
+        private Integer globalBurst = 2000;
+        
+        private Map<Long, Integer> productRates = new HashMap<>();
+        
+        private Double paymentReserve = 0.2;
+        
+        private Boolean clusterEnabled = false;
+        
+        private Integer clusterRate = 10000;
+        
+        public Boolean getEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public Integer getGlobalRate() {
+            return globalRate;
+        }
+        
+        public void setGlobalRate(Integer globalRate) {
+            this.globalRate = globalRate;
+        }
+        
+        public Integer getGlobalBurst() {
+            return globalBurst;
+        }
+        
+        public void setGlobalBurst(Integer globalBurst) {
+            this.globalBurst = globalBurst;
+        }
+        
+        public Map<Long, Integer> getProductRates() {
+            return productRates;
+        }
+        
+        public void setProductRates(Map<Long, Integer> productRates) {
+            this.productRates = productRates;
+        }
+        
+        public Double getPaymentReserve() {
+            return paymentReserve;
+        }
+        
+        public void setPaymentReserve(Double paymentReserve) {
+            this.paymentReserve = paymentReserve;
+        }
+        
+        public Boolean getClusterEnabled() {
+            return clusterEnabled;
+        }
+        
+        public void setClusterEnabled(Boolean clusterEnabled) {
+            this.clusterEnabled = clusterEnabled;
+        }
+        
+        public Integer getClusterRate() {
+            return clusterRate;
+        }
+        
+        public void setClusterRate(Integer clusterRate) {
+            this.clusterRate = clusterRate;
+        }
+    }
+    
+    public static class ReadReplica {
+        private Boolean enabled = false;
+        
+        private List<Replica> replicas = new ArrayList<>();
+        
+        private Integer healthCheckInterval = 5000;
+        
+        private Integer healthCheckTimeout = 2;
+        
+        private Integer stickyWindow = 3000;
+        
+        public Boolean getEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+        
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+        
+        public Integer getHealthCheckInterval() {
+            return healthCheckInterval;
+        }
+        
+        public void setHealthCheckInterval(Integer healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+        }
+        
+        public Integer getHealthCheckTimeout() {
+            return healthCheckTimeout;
+        }
+        
+        public void setHealthCheckTimeout(Integer healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+        }
+        
+        public Integer getStickyWindow() {
+            return stickyWindow;
+        }
+        
+        public void setStickyWindow(Integer stickyWindow) {
+            this.stickyWindow = stickyWindow;
+        }
+    }
+    
+    public static class Replica {
+        private String url;
+        
+        private String username;
+        
+        private String password;
+        
+        public String getUrl() {
+            return url;
+        }
+        
+        public void setUrl(String url) {
+            this.url = url;
+        }
+        
+        public String getUsername() {
+            return username;
+        }
+        
+        public void setUsername(String username) {
+            this.username = username;
+        }
+        
+        public String getPassword() {
+            return password;
+        }
+        
+        public void setPassword(String password) {
+            this.password = password;
+        }
     }
     
     public Integer getProductCacheTtl() {
         return product.getCacheTtl();
     }
     
+    public Integer getProductDoubleDeleteDelay() {
+        return product.getDoubleDeleteDelay();
+    }
+    
+    public Integer getProductInfoMaxAge() {
+        return product.getInfoMaxAge();
+    }
+    
     public Integer getOrderPaymentTimeout() {
         return order.getPaymentTimeout();
     }
@@ -52,4 +542,16 @@ public class AppConfig {
     public Order getOrder() {
         return order;
     }
+    
+    public Stock getStock() {
+        return stock;
+    }
+    
+    public Admission getAdmission() {
+        return admission;
+    }
+    
+    public ReadReplica getReadReplica() {
+        return readReplica;
+    }
 } 
\ No newline at end of file
@@ -63,6 +63,30 @@ public class RabbitMQConfig {
                 .with(MQConstants.STOCK_ROLLBACK_ROUTING_KEY);
     }
     
+    /**
+     * 售罄状态广播交换机
+     */
+    @Bean
+    public FanoutExchange soldOutExchange() {
+        return new FanoutExchange(MQConstants.STOCK_SOLD_OUT_EXCHANGE, true, false);
+    }
+    
+    /**
+     * 本实例的售罄状态队列，实例停止后自动删除
+     */
+    @Bean
+    public Queue soldOutQueue() {
+        return new AnonymousQueue();
+    }
+    
+    /**
+     * 售罄状态绑定
+     */
+    @Bean
+    public Binding soldOutBinding() {
+        return BindingBuilder.bind(soldOutQueue()).to(soldOutExchange());
+    }
+    
     /**
      * 消息转换器
      */
@@ -0,0 +1,59 @@
+package com.example.skillsystem.config;
+
+import com.example.skillsystem.service.ReadYourWritesTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离数据源配置，app.read-replica.enabled=true 时启用
+ * 主库沿用 spring.datasource.* 的配置，从库的用户名密码未配置时与主库相同
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.read-replica", name = "enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, AppConfig appConfig,
+                                                             ReadYourWritesTracker readYourWritesTracker) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+
+        List<DataSource> replicas = new ArrayList<>();
+        List<AppConfig.Replica> configs = appConfig.getReadReplica().getReplicas();
+        for (int i = 0; i < configs.size(); i++) {
+            AppConfig.Replica config = configs.get(i);
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(config.getUrl());
+            replica.setUsername(config.getUsername() != null ? config.getUsername() : properties.determineUsername());
+            replica.setPassword(config.getPassword() != null ? config.getPassword() : properties.determinePassword());
+            replica.setReadOnly(true);
+            // 从库不可用时不阻止应用启动，由健康检查标记
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, readYourWritesTracker);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    /**
+     * 事务开始时还不知道是否只读，延迟到第一条语句执行时再取连接，路由才能看到事务的只读标记
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
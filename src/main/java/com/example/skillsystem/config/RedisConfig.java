@@ -10,6 +10,8 @@ import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSeriali
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.scripting.support.ResourceScriptSource;
 
+import java.util.List;
+
 @Configuration
 public class RedisConfig {
     
@@ -41,4 +43,61 @@ public class RedisConfig {
         redisScript.setResultType(Long.class);
         return redisScript;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 下单锁定库存Lua脚本（按订单号幂等）
+     */
+    @Bean
+    public DefaultRedisScript<Long> stockLockScript() {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/stock_lock.lua")));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+    
+    /**
+     * 带用户限购的下单锁定库存Lua脚本
+     */
+    @Bean
+    public DefaultRedisScript<Long> stockLockLimitScript() {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/stock_lock_limit.lua")));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+    
+    /**
+     * 同一商品多个订单的批量锁定Lua脚本
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public DefaultRedisScript<List> stockLockBatchScript() {
+        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/stock_lock_batch.lua")));
+        redisScript.setResultType(List.class);
+        return redisScript;
+    }
+    
+    /**
+     * 多商品订单一次锁定所有商品库存的Lua脚本
+     */
+    @Bean
+    @SuppressWarnings("rawtypes")
+    public DefaultRedisScript<List> stockLockMultiScript() {
+        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/stock_lock_multi.lua")));
+        redisScript.setResultType(List.class);
+        return redisScript;
+    }
+    
+    /**
+     * 集群准入控制的令牌桶Lua脚本
+     */
+    @Bean
+    public DefaultRedisScript<Long> tokenBucketScript() {
+        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/token_bucket.lua")));
+        redisScript.setResultType(Long.class);
+        return redisScript;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.skillsystem.config;
+
+import com.example.skillsystem.service.ReadYourWritesTracker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 读写分离数据源
+ * 声明为 @Transactional(readOnly = true) 的业务查询轮流使用健康的从库，其余全部使用主库。
+ * Spring Data 仓库方法自带的只读事务不走从库：库存加载、订单状态检查等直接调用仓库的读取
+ * 需要看到最新数据，只有业务代码明确声明的只读查询才允许读到复制延迟内的旧数据。
+ * 从库连接失败时标记为不可用并改用主库，由健康检查在恢复后重新启用
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    // Spring Data 仓库默认只读事务的名称前缀
+    private static final String REPOSITORY_TRANSACTION_PREFIX = "org.springframework.data.";
+
+    private final DataSource primary;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final Map<String, DataSource> replicas = new HashMap<>();
+    // 各从库是否可用，1-可用，0-不可用
+    private final AtomicIntegerArray healthy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources,
+                                    ReadYourWritesTracker readYourWritesTracker) {
+        this.primary = primary;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.healthy = new AtomicIntegerArray(replicaDataSources.size());
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            String key = "replica-" + i;
+            replicaKeys.add(key);
+            replicas.put(key, replicaDataSources.get(i));
+            targets.put(key, replicaDataSources.get(i));
+            healthy.set(i, 1);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        String transactionName = TransactionSynchronizationManager.getCurrentTransactionName();
+        if ((transactionName != null && transactionName.startsWith(REPOSITORY_TRANSACTION_PREFIX))
+                || readYourWritesTracker.isPinnedToPrimary()) {
+            return PRIMARY;
+        }
+
+        // 从上次的位置开始轮询，跳过不可用的从库
+        int count = replicaKeys.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % count;
+            if (healthy.get(index) == 1) {
+                return replicaKeys.get(index);
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return primary.getConnection();
+        }
+        try {
+            return replicas.get(key).getConnection();
+        } catch (SQLException e) {
+            markDown((String) key, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * 检查各从库连接，恢复的从库重新启用
+     */
+    public void checkHealth(int timeoutSeconds) {
+        for (int i = 0; i < replicaKeys.size(); i++) {
+            String key = replicaKeys.get(i);
+            boolean valid;
+            try (Connection connection = replicas.get(key).getConnection()) {
+                valid = connection.isValid(timeoutSeconds);
+            } catch (SQLException e) {
+                valid = false;
+            }
+            int previous = healthy.getAndSet(i, valid ? 1 : 0);
+            if (previous == 1 && !valid) {
+                log.warn("从库健康检查失败，只读查询改用其他从库或主库: {}", key);
+            } else if (previous == 0 && valid) {
+                log.info("从库恢复，重新接收只读查询: {}", key);
+            }
+        }
+    }
+
+    private void markDown(String key, SQLException e) {
+        int index = replicaKeys.indexOf(key);
+        if (healthy.getAndSet(index, 0) == 1) {
+            log.error("从库连接失败，改用主库: {}, error={}", key, e.getMessage());
+        }
+    }
+}
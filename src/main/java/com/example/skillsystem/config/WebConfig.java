@@ -0,0 +1,50 @@
+package com.example.skillsystem.config;
+
+import com.example.skillsystem.service.ReadYourWritesTracker;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+
+    private static final String USER_ID_HEADER = "X-User-Id";
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final AppConfig appConfig;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (!appConfig.getReadReplica().getEnabled()) {
+            return;
+        }
+        // 绑定当前请求的用户，用户刚有写操作时只读查询走主库
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                String userId = request.getHeader(USER_ID_HEADER);
+                if (userId == null) {
+                    userId = request.getParameter("userId");
+                }
+                if (userId != null) {
+                    try {
+                        readYourWritesTracker.bind(Long.valueOf(userId.trim()));
+                    } catch (NumberFormatException ignored) {
+                        // 非法的用户ID按匿名请求处理
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                readYourWritesTracker.clear();
+            }
+        }).addPathPatterns("/api/**");
+    }
+}
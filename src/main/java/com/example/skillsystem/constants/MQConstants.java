@@ -31,4 +31,9 @@ public class MQConstants {
      * 库存回滚路由键
      */
     public static final String STOCK_ROLLBACK_ROUTING_KEY = "stock.rollback";
+    
+    /**
+     * 售罄状态广播交换机（fanout，每个实例绑定自己的临时队列）
+     */
+    public static final String STOCK_SOLD_OUT_EXCHANGE = "stock.soldout.exchange";
 } 
\ No newline at end of file
@@ -12,13 +12,48 @@ public class RedisKeyPrefix {
      */
     public static final String PRODUCT_STOCK = "product:stock:";
     
+    /**
+     * 分段库存子计数器后缀，完整键为 product:stock:{id}:seg:{i}
+     */
+    public static final String STOCK_SEGMENT = ":seg:";
+    
+    /**
+     * 订单库存锁定标记前缀
+     */
+    public static final String STOCK_LOCK = "stock:lock:";
+    
+    /**
+     * 用户限购计数前缀，完整键为 purchase:limit:{productId}:{userId}
+     */
+    public static final String PURCHASE_LIMIT = "purchase:limit:";
+    
     /**
      * 订单信息缓存前缀
      */
     public static final String ORDER_INFO = "order:info:";
     
+    /**
+     * 异步下单失败令牌前缀
+     */
+    public static final String ORDER_TOKEN_FAILED = "order:token:failed:";
+    
+    /**
+     * 订单号生成器机器ID占用前缀，完整键为 order:worker:{机器ID}
+     */
+    public static final String ORDER_WORKER = "order:worker:";
+    
+    /**
+     * 幂等请求结果前缀，完整键为 idempotency:{操作}:{幂等键}
+     */
+    public static final String IDEMPOTENCY = "idempotency:";
+    
     /**
      * 订单支付状态前缀
      */
     public static final String ORDER_PAYMENT = "order:payment:";
-} 
\ No newline at end of file
+    
+    /**
+     * 集群准入令牌桶前缀
+     */
+    public static final String ADMISSION_BUCKET = "admission:bucket:";
+}
@@ -1,12 +1,30 @@
 package com.example.skillsystem.controller;
 
+import com.example.skillsystem.dto.CursorPage;
 import com.example.skillsystem.dto.OrderDTO;
+import com.example.skillsystem.dto.OrderSummaryDTO;
+import com.example.skillsystem.dto.OrderTokenStatusDTO;
+import com.example.skillsystem.service.AdmissionControlService;
+import com.example.skillsystem.service.IdempotencyService;
+import com.example.skillsystem.service.OrderExportService;
 import com.example.skillsystem.service.OrderService;
+import com.example.skillsystem.service.SoldOutRegistry;
 import com.example.skillsystem.vo.OrderRequest;
 import com.example.skillsystem.vo.PaymentRequest;
 import com.example.skillsystem.vo.Result;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -14,19 +32,125 @@ import org.springframework.web.bind.annotation.*;
 public class OrderController {
     
     private final OrderService orderService;
+    private final SoldOutRegistry soldOutRegistry;
+    private final AdmissionControlService admissionControlService;
+    private final IdempotencyService idempotencyService;
+    private final OrderExportService orderExportService;
+    
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    
+    /**
+     * 按创建时间倒序分页查询订单，后续页传入上一页返回的 nextCursorTime 和 nextCursorId
+     */
+    @GetMapping
+    public Result<CursorPage<OrderSummaryDTO>> getOrders(
+            @RequestParam(required = false) Integer status,
+            @RequestParam(required = false) @DateTimeFormat(pattern = CursorPage.CURSOR_TIME_PATTERN,
+                    fallbackPatterns = "yyyy-MM-dd HH:mm:ss") LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return Result.success(orderService.getOrderPage(status, cursorTime, cursorId, size));
+        } catch (Exception e) {
+            return Result.error("查询订单失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 导出订单CSV，边读边写，不在内存中保留全部订单
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(required = false) Integer status) {
+        StreamingResponseBody body = outputStream -> orderExportService.exportCsv(status, outputStream);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=orders.csv")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
     
     @PostMapping
-    public Result<OrderDTO> createOrder(@RequestBody OrderRequest request) {
-        return orderService.createOrder(request);
+    public ResponseEntity<Result<OrderDTO>> createOrder(@RequestBody OrderRequest request,
+                                                        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        // 已成功的重试请求直接返回原结果，不占用下单令牌
+        Result<OrderDTO> completed = idempotencyService.findCompleted("order:create", idempotencyKey, request);
+        if (completed != null) {
+            return ResponseEntity.ok(completed);
+        }
+        // 售罄商品在准入控制之前拒绝，售罄后的请求不占用其他商品的下单令牌
+        if (request.getProductId() != null && soldOutRegistry.isSoldOut(request.getProductId())) {
+            return ResponseEntity.ok(Result.error("商品已售罄"));
+        }
+        long waitMillis = admissionControlService.tryAcquireOrder(request.getProductId());
+        if (waitMillis > 0) {
+            return tooManyRequests(waitMillis);
+        }
+        return ResponseEntity.ok(idempotencyService.execute("order:create", idempotencyKey, request,
+                () -> orderService.createOrder(request)));
+    }
+    
+    /**
+     * 多商品下单，所有商品的库存全部锁定成功才创建订单
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Result<List<OrderDTO>>> createBatchOrder(@RequestBody OrderRequest request,
+                                                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        Result<List<OrderDTO>> completed = idempotencyService.findCompleted("order:batch", idempotencyKey, request);
+        if (completed != null) {
+            return ResponseEntity.ok(completed);
+        }
+        // 每个商品项各占一个令牌，购物车不能绕过单个商品的限流；含售罄商品时在准入控制之前拒绝
+        List<Long> productIds = new ArrayList<>();
+        if (request.getItems() != null) {
+            for (OrderRequest.Item item : request.getItems()) {
+                if (item.getProductId() != null && soldOutRegistry.isSoldOut(item.getProductId())) {
+                    return ResponseEntity.ok(Result.error("商品已售罄: " + item.getProductId()));
+                }
+                productIds.add(item.getProductId());
+            }
+        }
+        long waitMillis = admissionControlService.tryAcquireOrders(productIds);
+        if (waitMillis > 0) {
+            return tooManyRequests(waitMillis);
+        }
+        return ResponseEntity.ok(idempotencyService.execute("order:batch", idempotencyKey, request,
+                () -> orderService.createBatchOrder(request)));
+    }
+    
+    /**
+     * 查询下单令牌状态，异步下单时客户端轮询此接口
+     */
+    @GetMapping("/{token}/status")
+    public Result<OrderTokenStatusDTO> getOrderStatus(@PathVariable String token) {
+        return Result.success(orderService.getOrderTokenStatus(token));
     }
     
     @PostMapping("/payment")
-    public Result<Boolean> payOrder(@RequestBody PaymentRequest request) {
-        return orderService.payOrder(request);
+    public ResponseEntity<Result<Boolean>> payOrder(@RequestBody PaymentRequest request,
+                                                    @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        Result<Boolean> completed = idempotencyService.findCompleted("order:pay", idempotencyKey, request);
+        if (completed != null) {
+            return ResponseEntity.ok(completed);
+        }
+        long waitMillis = admissionControlService.tryAcquirePayment();
+        if (waitMillis > 0) {
+            return tooManyRequests(waitMillis);
+        }
+        return ResponseEntity.ok(idempotencyService.execute("order:pay", idempotencyKey, request,
+                () -> orderService.payOrder(request)));
     }
     
     @PostMapping("/cancel/{orderNo}")
     public Result<Boolean> cancelOrder(@PathVariable String orderNo) {
         return orderService.cancelOrder(orderNo);
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 准入控制拒绝时返回429，Retry-After以秒为单位，至少1秒
+     */
+    private <T> ResponseEntity<Result<T>> tooManyRequests(long waitMillis) {
+        long retryAfterSeconds = Math.max(1, (waitMillis + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Result.error(429, "请求过多，请稍后重试"));
+    }
+}
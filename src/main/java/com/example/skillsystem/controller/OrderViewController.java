@@ -1,8 +1,11 @@
 package com.example.skillsystem.controller;
 
+import com.example.skillsystem.dto.CursorPage;
 import com.example.skillsystem.dto.OrderDTO;
+import com.example.skillsystem.dto.OrderSummaryDTO;
 import com.example.skillsystem.service.OrderService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,7 +13,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
-import java.util.List;
+import java.time.LocalDateTime;
 
 @Controller
 @RequestMapping("/order")
@@ -18,17 +21,21 @@ import java.util.List;
 public class OrderViewController {
 
     private final OrderService orderService;
+    
+    private static final int PAGE_SIZE = 20;
 
     @GetMapping("/list")
-    public String orderList(@RequestParam(required = false) Integer status, Model model) {
-        List<OrderDTO> orders;
-        if (status != null) {
-            orders = orderService.getOrdersByStatus(status);
-        } else {
-            orders = orderService.getAllOrders();
-        }
-        model.addAttribute("orders", orders);
+    public String orderList(@RequestParam(required = false) Integer status,
+                            @RequestParam(required = false) @DateTimeFormat(pattern = CursorPage.CURSOR_TIME_PATTERN,
+                                    fallbackPatterns = "yyyy-MM-dd HH:mm:ss") LocalDateTime cursorTime,
+                            @RequestParam(required = false) Long cursorId,
+                            Model model) {
+        // 每次只渲染一页，下一页从本页最后一条订单之后开始
+        CursorPage<OrderSummaryDTO> page = orderService.getOrderPage(status, cursorTime, cursorId, PAGE_SIZE);
+        model.addAttribute("orders", page.getContent());
+        model.addAttribute("page", page);
         model.addAttribute("currentStatus", status);
+        model.addAttribute("firstPage", cursorTime == null);
         return "order/list";
     }
     
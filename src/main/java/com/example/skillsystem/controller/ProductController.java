@@ -1,20 +1,31 @@
 package com.example.skillsystem.controller;
 
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.dto.ProductBatchDTO;
 import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.ProductSnapshot;
+import com.example.skillsystem.dto.ProductView;
+import com.example.skillsystem.service.ProductListingService;
 import com.example.skillsystem.service.ProductService;
 import com.example.skillsystem.service.StockManagementService;
 import com.example.skillsystem.service.MockRedisService;
+import com.example.skillsystem.service.StockCounterService;
 import com.example.skillsystem.service.impl.ProductServiceImpl;
 import com.example.skillsystem.constants.RedisKeyPrefix;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import com.example.skillsystem.vo.Result;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -27,26 +38,115 @@ public class ProductController {
     private final ProductService productService;
     private final StockManagementService stockManagementService;
     private final MockRedisService mockRedisService;
+    private final StockCounterService stockCounterService;
+    private final ProductListingService productListingService;
+    private final AppConfig appConfig;
+    
+    private static final int MAX_PAGE_SIZE = 100;
     
     /**
      * 获取商品详情
+     * 响应包含实时库存，使用强ETag（商品版本号 + 库存）并要求每次协商，未变化时返回304
      */
     @GetMapping("/{id}")
-    public Result<ProductDTO> getProduct(@PathVariable Long id) {
-        ProductDTO product = productService.getProductById(id);
-        if (product != null) {
-            return Result.success(product);
+    public ResponseEntity<Result<ProductView>> getProduct(@PathVariable Long id, WebRequest webRequest) {
+        ProductView product = productService.getProductById(id);
+        if (product == null) {
+            return ResponseEntity.ok(Result.error("商品不存在"));
+        }
+        
+        String etag = "\"p" + product.getId() + "-v" + product.getSnapshot().getVersion() + "-s" + product.getStock() + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
         }
-        return Result.error("商品不存在");
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(Result.success(product));
     }
     
     /**
-     * 获取所有上架商品
+     * 批量获取商品详情，如 /api/products?ids=1,2,3
+     */
+    @GetMapping(params = "ids")
+    public Result<ProductBatchDTO> getProductsByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > MAX_PAGE_SIZE) {
+            return Result.fail("商品ID数量必须在1到" + MAX_PAGE_SIZE + "之间");
+        }
+        return Result.success(productService.getProductsByIds(ids));
+    }
+    
+    /**
+     * 获取商品静态信息（不含库存）
+     * 只随商品版本变化，允许客户端和CDN短时间缓存
+     */
+    @GetMapping("/{id}/info")
+    public ResponseEntity<Result<ProductSnapshot>> getProductInfo(@PathVariable Long id, WebRequest webRequest) {
+        ProductView product = productService.getProductById(id);
+        if (product == null) {
+            return ResponseEntity.ok(Result.error("商品不存在"));
+        }
+        
+        ProductSnapshot snapshot = product.getSnapshot();
+        String etag = "\"p" + snapshot.getId() + "-v" + snapshot.getVersion() + "\"";
+        long lastModified = snapshot.getUpdateTime() != null
+                ? snapshot.getUpdateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : -1;
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(appConfig.getProductInfoMaxAge(), TimeUnit.SECONDS).cachePublic())
+                .eTag(etag);
+        if (lastModified > 0) {
+            builder.lastModified(lastModified);
+        }
+        return builder.body(Result.success(snapshot));
+    }
+    
+    /**
+     * 获取商品列表
+     * 传入size时按商品ID游标分页，afterId为上一页最后一个商品ID
+     * ETag由列表视图版本号和本页库存计算，未变化时返回304
      */
     @GetMapping
-    public Result<List<ProductDTO>> getAllProducts() {
-        List<ProductDTO> products = productService.getAllProducts();
-        return Result.success(products);
+    public ResponseEntity<Result<List<ProductView>>> getAllProducts(
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) Integer status,
+            WebRequest webRequest) {
+        long listingVersion = productListingService.getListingVersion();
+        List<ProductView> products;
+        if (size != null) {
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            products = productService.getProductPage(afterId, pageSize, status);
+        } else {
+            products = status != null
+                    ? productService.getProductsByStatus(status)
+                    : productService.getAllProducts();
+        }
+        
+        String etag = "\"l" + listingVersion + "-" + Long.toHexString(stockHash(products)) + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(Result.success(products));
+    }
+    
+    /**
+     * 计算一页商品的摘要，库存变化不会改变视图版本号，需要单独计入
+     */
+    private long stockHash(List<ProductView> products) {
+        long hash = 1125899906842597L;
+        for (ProductView product : products) {
+            hash = 31 * hash + product.getId();
+            hash = 31 * hash + product.getSnapshot().getVersion();
+            hash = 31 * hash + (product.getStock() != null ? product.getStock() : -1);
+        }
+        return hash;
     }
     
     /**
@@ -94,9 +194,11 @@ public class ProductController {
      * 获取Redis中的库存
      */
     @GetMapping("/{id}/redis-stock")
-    public Result<Integer> getRedisStock(@PathVariable Long id) {
+    public ResponseEntity<Result<Integer>> getRedisStock(@PathVariable Long id) {
         Integer stock = ((ProductServiceImpl) productService).getRedisStock(id);
-        return Result.success(stock);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(Result.success(stock));
     }
 
 
@@ -114,9 +216,11 @@ public class ProductController {
      * 获取Redis中的可用库存
      */
     @GetMapping("/{id}/available-stock")
-    public Result<Integer> getAvailableStock(@PathVariable Long id) {
+    public ResponseEntity<Result<Integer>> getAvailableStock(@PathVariable Long id) {
         Integer availableStock = stockManagementService.getAvailableStock(id);
-        return Result.success(availableStock != null ? availableStock : 0);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(Result.success(availableStock != null ? availableStock : 0));
     }
 
     /**
@@ -150,11 +254,10 @@ public class ProductController {
             boolean productCached = mockRedisService.exists(productKey);
 
             // 检查库存缓存
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + id;
-            boolean stockCached = mockRedisService.exists(stockKey);
+            boolean stockCached = stockCounterService.isCached(id);
 
-            // 获取缓存的库存值
-            Object stockValue = mockRedisService.get(stockKey);
+            // 获取缓存的库存值，分段商品为各段之和
+            Integer stockValue = stockCounterService.getStock(id);
 
             status.put("productCached", productCached);
             status.put("stockCached", stockCached);
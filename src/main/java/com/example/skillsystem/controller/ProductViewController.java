@@ -1,6 +1,6 @@
 package com.example.skillsystem.controller;
 
-import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.ProductView;
 import com.example.skillsystem.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -21,7 +21,7 @@ public class ProductViewController {
 
     @GetMapping("/list")
     public String productList(@RequestParam(required = false) Integer status, Model model) {
-        List<ProductDTO> products;
+        List<ProductView> products;
         if (status != null) {
             products = productService.getProductsByStatus(status);
         } else {
@@ -34,7 +34,7 @@ public class ProductViewController {
 
     @GetMapping("/detail/{id}")
     public String productDetail(@PathVariable Long id, Model model) {
-        ProductDTO product = productService.getProductById(id);
+        ProductView product = productService.getProductById(id);
         model.addAttribute("product", product);
         return "product/detail";
     }
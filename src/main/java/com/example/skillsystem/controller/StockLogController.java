@@ -1,19 +1,18 @@
 package com.example.skillsystem.controller;
 
+import com.example.skillsystem.dto.CursorPage;
 import com.example.skillsystem.entity.StockLog;
-import com.example.skillsystem.repository.StockLogRepository;
+import com.example.skillsystem.service.StockLogQueryService;
+import com.example.skillsystem.service.StockLogStatistics;
 import com.example.skillsystem.vo.Result;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
-import jakarta.persistence.criteria.Predicate;
-import java.util.ArrayList;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,10 +21,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class StockLogController {
 
-    private final StockLogRepository stockLogRepository;
+    private final StockLogQueryService stockLogQueryService;
+    private final StockLogStatistics stockLogStatistics;
 
     /**
      * 分页查询库存流水
+     * 页码越大数据库需要跳过的行越多，翻页较深时使用 /scroll
      */
     @GetMapping
     public Result<Page<StockLog>> getStockLogs(
@@ -36,58 +37,51 @@ public class StockLogController {
             @RequestParam(required = false) String orderId) {
         
         try {
-            // 创建分页对象，按创建时间倒序
-            Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createTime"));
-            
-            // 构建查询条件
-            Specification<StockLog> spec = (root, query, criteriaBuilder) -> {
-                List<Predicate> predicates = new ArrayList<>();
-                
-                if (productId != null) {
-                    predicates.add(criteriaBuilder.equal(root.get("productId"), productId));
-                }
-                
-                if (operationType != null && !operationType.trim().isEmpty()) {
-                    predicates.add(criteriaBuilder.equal(root.get("operationType"), operationType));
-                }
-                
-                if (orderId != null && !orderId.trim().isEmpty()) {
-                    predicates.add(criteriaBuilder.like(root.get("orderId"), "%" + orderId + "%"));
-                }
-                
-                return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
-            };
-            
-            Page<StockLog> stockLogs = stockLogRepository.findAll(spec, pageable);
-            return Result.success(stockLogs);
-            
+            return Result.success(stockLogQueryService.page(page, size, productId, operationType, orderId));
         } catch (Exception e) {
             return Result.error("查询库存流水失败: " + e.getMessage());
         }
     }
 
     /**
-     * 获取库存流水统计信息
+     * 游标分页查询库存流水
+     * 第一页不传游标，之后传入上一页返回的 nextCursorTime 和 nextCursorId；
+     * 查询条件直接从游标位置沿索引往后读 size+1 行，不统计总数，深翻页的耗时与第一页相同
+     */
+    @GetMapping("/scroll")
+    public Result<CursorPage<StockLog>> scrollStockLogs(
+            @RequestParam(required = false) @DateTimeFormat(pattern = CursorPage.CURSOR_TIME_PATTERN,
+                    fallbackPatterns = "yyyy-MM-dd HH:mm:ss") LocalDateTime cursorTime,
+            @RequestParam(required = false) Long cursorId,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) String operationType,
+            @RequestParam(required = false) String orderId) {
+        
+        try {
+            return Result.success(stockLogQueryService.scroll(cursorTime, cursorId, size, productId, operationType, orderId));
+        } catch (Exception e) {
+            return Result.error("查询库存流水失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取库存流水统计信息，数据来自内存计数，不扫描库存流水表
      */
     @GetMapping("/statistics")
     public Result<Map<String, Long>> getStatistics() {
         try {
+            Map<String, Long> totals = stockLogStatistics.getTotals();
             Map<String, Long> statistics = new HashMap<>();
             
             // 总记录数
-            long total = stockLogRepository.count();
-            statistics.put("total", total);
+            statistics.put("total", totals.values().stream().mapToLong(Long::longValue).sum());
             
             // 各类型操作统计
-            long deductCount = stockLogRepository.countByOperationType("DEDUCT");
-            long increaseCount = stockLogRepository.countByOperationType("INCREASE");
-            long rollbackCount = stockLogRepository.countByOperationType("ROLLBACK");
-            long syncCount = stockLogRepository.countByOperationType("SYNC");
-            
-            statistics.put("deduct", deductCount);
-            statistics.put("increase", increaseCount);
-            statistics.put("rollback", rollbackCount);
-            statistics.put("sync", syncCount);
+            statistics.put("deduct", totals.getOrDefault("DEDUCT", 0L));
+            statistics.put("increase", totals.getOrDefault("INCREASE", 0L));
+            statistics.put("rollback", totals.getOrDefault("ROLLBACK", 0L));
+            statistics.put("sync", totals.getOrDefault("SYNC", 0L));
             
             return Result.success(statistics);
             
@@ -96,13 +90,29 @@ public class StockLogController {
         }
     }
 
+    /**
+     * 获取最近5分钟、1小时、24小时内各操作类型的流水条数
+     */
+    @GetMapping("/statistics/windows")
+    public Result<Map<String, Map<String, Long>>> getWindowStatistics() {
+        try {
+            Map<String, Map<String, Long>> statistics = new LinkedHashMap<>();
+            statistics.put("5m", stockLogStatistics.getWindow(5));
+            statistics.put("1h", stockLogStatistics.getWindow(60));
+            statistics.put("24h", stockLogStatistics.getWindow(24 * 60));
+            return Result.success(statistics);
+        } catch (Exception e) {
+            return Result.error("获取统计信息失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 根据商品ID获取库存流水
      */
     @GetMapping("/product/{productId}")
     public Result<List<StockLog>> getStockLogsByProductId(@PathVariable Long productId) {
         try {
-            List<StockLog> stockLogs = stockLogRepository.findByProductIdOrderByCreateTimeDesc(productId);
+            List<StockLog> stockLogs = stockLogQueryService.findByProductId(productId);
             return Result.success(stockLogs);
         } catch (Exception e) {
             return Result.error("查询商品库存流水失败: " + e.getMessage());
@@ -115,7 +125,7 @@ public class StockLogController {
     @GetMapping("/order/{orderNo}")
     public Result<List<StockLog>> getStockLogsByOrderNo(@PathVariable String orderNo) {
         try {
-            List<StockLog> stockLogs = stockLogRepository.findByOrderIdOrderByCreateTimeDesc(orderNo);
+            List<StockLog> stockLogs = stockLogQueryService.findByOrderNo(orderNo);
             return Result.success(stockLogs);
         } catch (Exception e) {
             return Result.error("查询订单库存流水失败: " + e.getMessage());
@@ -1,5 +1,6 @@
 package com.example.skillsystem.controller;
 
+import com.example.skillsystem.service.ProductCacheStatistics;
 import com.example.skillsystem.service.StockSyncService;
 import com.example.skillsystem.vo.Result;
 import lombok.RequiredArgsConstructor;
@@ -21,6 +22,7 @@ import java.util.Map;
 public class StockMonitorController {
 
     private final StockSyncService stockSyncService;
+    private final ProductCacheStatistics productCacheStatistics;
     
     /**
      * 库存监控页面
@@ -86,4 +88,23 @@ public class StockMonitorController {
             return Result.fail("处理失败: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 商品二级缓存命中率
+     */
+    @GetMapping("/cache/product")
+    @ResponseBody
+    public Result<Map<String, Object>> getProductCacheStatistics() {
+        return Result.success(productCacheStatistics.getStatistics());
+    }
+    
+    /**
+     * 重置商品二级缓存统计
+     */
+    @PostMapping("/cache/product/reset")
+    @ResponseBody
+    public Result<Void> resetProductCacheStatistics() {
+        productCacheStatistics.reset();
+        return Result.success();
+    }
+}
@@ -1,6 +1,6 @@
 package com.example.skillsystem.controller;
 
-import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.ProductView;
 import com.example.skillsystem.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -24,13 +24,13 @@ public class TestController {
 
     @GetMapping("/product/{id}")
     @ResponseBody
-    public ProductDTO testProduct(@PathVariable Long id) {
+    public ProductView testProduct(@PathVariable Long id) {
         return productService.getProductById(id);
     }
 
     @GetMapping("/product-page/{id}")
     public String testProductPage(@PathVariable Long id, Model model) {
-        ProductDTO product = productService.getProductById(id);
+        ProductView product = productService.getProductById(id);
         model.addAttribute("product", product);
         model.addAttribute("debug", true);
         return "test/product-debug";
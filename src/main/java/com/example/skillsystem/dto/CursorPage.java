@@ -0,0 +1,34 @@
+package com.example.skillsystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 按 (创建时间, ID) 倒序翻页，下一页从本页最后一条之后开始，查询第几页的耗时都一样
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 游标时间的格式，保留到微秒（MySQL时间类型的最高精度），截断到秒会跳过同一秒内排在游标之后的记录
+     */
+    public static final String CURSOR_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss.SSSSSS";
+
+    private List<T> content;
+    private boolean hasNext;
+    // 下一页的游标，作为 cursorTime 和 cursorId 参数传回，没有下一页时为空
+    @JsonFormat(pattern = CURSOR_TIME_PATTERN)
+    private LocalDateTime nextCursorTime;
+    private Long nextCursorId;
+}
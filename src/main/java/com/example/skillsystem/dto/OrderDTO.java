@@ -12,6 +12,8 @@ public class OrderDTO implements Serializable {
     
     private Long id;
     private String orderNo;
+    private Long userId;
+    private String batchNo;
     private Long productId;
     private String productName;
     private BigDecimal productPrice;
@@ -0,0 +1,32 @@
+package com.example.skillsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单列表使用的订单摘要，查询时只读取这些列
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private Long id;
+    private String orderNo;
+    private Long userId;
+    private Long productId;
+    private String productName;
+    private BigDecimal productPrice;
+    private Integer quantity;
+    private BigDecimal totalAmount;
+    private Integer status;
+    private LocalDateTime createTime;
+    private LocalDateTime paymentTime;
+}
@@ -0,0 +1,21 @@
+package com.example.skillsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderTokenStatusDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private String token;
+    private String status;
+    private String message;
+    // 订单已创建时返回订单信息
+    private OrderDTO order;
+}
@@ -0,0 +1,26 @@
+package com.example.skillsystem.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量查询商品结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductBatchDTO {
+
+    /**
+     * 查到的商品，顺序与请求中的ID顺序一致
+     */
+    private List<ProductView> products;
+
+    /**
+     * 不存在的商品ID
+     */
+    private List<Long> missingIds;
+}
@@ -0,0 +1,58 @@
+package com.example.skillsystem.dto;
+
+import com.example.skillsystem.entity.Product;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Value;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商品快照（不可变）
+ * 缓存中只保存该对象，所有并发读取共享同一个实例，读取方不得也无法修改它。
+ * 实时库存不在快照里维护，由 {@link ProductView} 在读取时叠加。
+ */
+@Value
+public class ProductSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+    String name;
+    String description;
+    BigDecimal price;
+    /**
+     * 生成快照时数据库中的库存，仅在缓存中没有库存计数器时兜底使用，不对外输出
+     */
+    @JsonIgnore
+    Integer stock;
+    String imageUrl;
+    Integer status;
+    /**
+     * 商品信息版本号，缓存只接受不低于当前版本的写入
+     */
+    Long version;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime createTime;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime updateTime;
+
+    public static ProductSnapshot from(Product product) {
+        return new ProductSnapshot(
+                product.getId(),
+                product.getName(),
+                product.getDescription(),
+                product.getPrice(),
+                product.getStock(),
+                product.getImageUrl(),
+                product.getStatus(),
+                product.getVersion(),
+                product.getCreateTime(),
+                product.getUpdateTime()
+        );
+    }
+}
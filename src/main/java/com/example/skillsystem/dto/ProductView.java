@@ -0,0 +1,75 @@
+package com.example.skillsystem.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 商品读视图
+ * 由共享的不可变快照和本次读取到的实时库存组合而成，不复制快照字段。
+ */
+public final class ProductView {
+
+    private final ProductSnapshot snapshot;
+    private final Integer stock;
+
+    private ProductView(ProductSnapshot snapshot, Integer stock) {
+        this.snapshot = snapshot;
+        this.stock = stock;
+    }
+
+    /**
+     * 组合快照与实时库存
+     *
+     * @param snapshot 商品快照
+     * @param liveStock 缓存中的实时库存，为null时使用快照中的数据库库存
+     */
+    public static ProductView of(ProductSnapshot snapshot, Integer liveStock) {
+        return new ProductView(snapshot, liveStock != null ? liveStock : snapshot.getStock());
+    }
+
+    @JsonIgnore
+    public ProductSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public Long getId() {
+        return snapshot.getId();
+    }
+
+    public String getName() {
+        return snapshot.getName();
+    }
+
+    public String getDescription() {
+        return snapshot.getDescription();
+    }
+
+    public BigDecimal getPrice() {
+        return snapshot.getPrice();
+    }
+
+    public Integer getStock() {
+        return stock;
+    }
+
+    public String getImageUrl() {
+        return snapshot.getImageUrl();
+    }
+
+    public Integer getStatus() {
+        return snapshot.getStatus();
+    }
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    public LocalDateTime getCreateTime() {
+        return snapshot.getCreateTime();
+    }
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    public LocalDateTime getUpdateTime() {
+        return snapshot.getUpdateTime();
+    }
+}
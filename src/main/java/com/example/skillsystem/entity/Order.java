@@ -21,6 +21,12 @@ public class Order implements Serializable {
     @Column(nullable = false)
     private String orderNo;
 
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "batch_no")
+    private String batchNo; // 多商品订单的批次号，单商品订单为空
+
     @Column(nullable = false)
     private Long productId;
 
@@ -3,17 +3,32 @@ package com.example.skillsystem.entity;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+/**
+ * 商品
+ * 启用二级缓存（区域 product，配置见 ehcache.xml），读写策略保证事务提交前其他会话读不到修改中的数据。
+ * 库存更新语句只声明 product_stock 查询空间，不清空整个区域，更新后由 ProductEntityCache 逐个失效；
+ * 库存判断和写入缓存计数器时请使用 findSellableStockById 直接查询
+ */
 @Data
 @Entity
 @Table(name = "product")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Product.CACHE_REGION)
 public class Product implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final String CACHE_REGION = "product";
+    public static final String QUERY_CACHE_REGION = "product-query";
+    // 库存更新语句的查询空间，不包含商品表，执行后不使整个商品缓存区域和按状态的查询缓存失效
+    public static final String STOCK_QUERY_SPACE = "product_stock";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -36,6 +51,9 @@ public class Product implements Serializable {
     @Column(nullable = false)
     private Integer status = 1; // 1-上架，0-下架
 
+    @Column(nullable = false)
+    private Long version = 0L; // 商品信息版本号，缓存按版本写入
+
     @Column(name = "create_time", nullable = false)
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime createTime;
@@ -50,4 +50,7 @@ public class StockLock {
 
     @Column(length = 255)
     private String remark;
+
+    @Column
+    private Long flushBatch; // 0-已扣减待写回商品库存，大于0-写回批次号，为空表示无需写回
 }
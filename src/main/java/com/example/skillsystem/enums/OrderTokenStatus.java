@@ -0,0 +1,23 @@
+package com.example.skillsystem.enums;
+
+import lombok.Getter;
+
+/**
+ * 异步下单令牌状态
+ */
+@Getter
+public enum OrderTokenStatus {
+    
+    PENDING("PENDING", "订单处理中"),
+    CREATED("CREATED", "订单已创建"),
+    FAILED("FAILED", "订单创建失败，库存已退回"),
+    NOT_FOUND("NOT_FOUND", "订单不存在");
+    
+    private final String code;
+    private final String desc;
+    
+    OrderTokenStatus(String code, String desc) {
+        this.code = code;
+        this.desc = desc;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.skillsystem.mq;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SoldOutMessage implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private Long productId;
+    private Boolean soldOut;
+    // 发送方实例ID，实例忽略自己发出的消息
+    private String instanceId;
+}
@@ -2,7 +2,10 @@ package com.example.skillsystem.mq;
 
 import com.example.skillsystem.constants.MQConstants;
 import com.example.skillsystem.repository.ProductRepository;
+import com.example.skillsystem.service.ProductEntityCache;
 import com.example.skillsystem.service.ProductService;
+import com.example.skillsystem.service.SoldOutRegistry;
+import com.example.skillsystem.service.StockMismatchTracker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
@@ -15,7 +18,10 @@ import org.springframework.transaction.annotation.Transactional;
 public class StockConsumer {
 
     private final ProductRepository productRepository;
+    private final ProductEntityCache productEntityCache;
+    private final StockMismatchTracker stockMismatchTracker;
     private final ProductService productService;
+    private final SoldOutRegistry soldOutRegistry;
     
     /**
      * 处理库存扣减消息
@@ -29,6 +35,8 @@ public class StockConsumer {
             // 更新数据库库存
             int rows = productRepository.deductStock(message.getProductId(), message.getQuantity());
             if (rows > 0) {
+                productEntityCache.evict(message.getProductId());
+                stockMismatchTracker.markDirtyAfterCommit(message.getProductId());
                 log.info("数据库库存扣减成功, productId: {}, quantity: {}", message.getProductId(), message.getQuantity());
             } else {
                 log.warn("数据库库存扣减失败, productId: {}, quantity: {}", message.getProductId(), message.getQuantity());
@@ -65,4 +73,12 @@ public class StockConsumer {
             log.error("处理库存回滚消息异常", e);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 处理其他实例广播的售罄状态
+     */
+    @RabbitListener(queues = "#{soldOutQueue.name}")
+    public void handleSoldOut(SoldOutMessage message) {
+        soldOutRegistry.apply(message);
+    }
+}
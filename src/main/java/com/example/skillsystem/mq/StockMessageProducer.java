@@ -104,6 +104,23 @@ public class StockMessageProducer {
         }
     }
 
+    /**
+     * 广播售罄状态
+     * Mock模式下只有单个实例，本地登记即可，不需要广播
+     */
+    public void sendSoldOutMessage(SoldOutMessage message) {
+        if (rabbitTemplate == null) {
+            log.debug("🔧 [Mock模式] 单实例运行，跳过售罄状态广播: {}", message);
+            return;
+        }
+        try {
+            rabbitTemplate.convertAndSend(MQConstants.STOCK_SOLD_OUT_EXCHANGE, "", message);
+            log.info("🐰 [RabbitMQ] 广播售罄状态: productId={}, soldOut={}", message.getProductId(), message.getSoldOut());
+        } catch (Exception e) {
+            log.error("🐰 [RabbitMQ] 广播售罄状态失败: productId={}, error={}", message.getProductId(), e.getMessage());
+        }
+    }
+
     /**
      * 发送库存同步消息
      * 用于触发库存同步操作
@@ -1,6 +1,8 @@
 package com.example.skillsystem.repository;
 
+import com.example.skillsystem.dto.OrderSummaryDTO;
 import com.example.skillsystem.entity.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -28,6 +30,34 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      */
     List<Order> findByStatus(Integer status);
     
+    /**
+     * 订单摘要列表第一页，按创建时间倒序
+     * 
+     * @param status 订单状态，为null时不过滤
+     * @param pageable 只使用每页数量
+     * @return 订单摘要列表
+     */
+    @Query("SELECT new com.example.skillsystem.dto.OrderSummaryDTO(o.id, o.orderNo, o.userId, o.productId, o.productName, " +
+           "o.productPrice, o.quantity, o.totalAmount, o.status, o.createTime, o.paymentTime) FROM Order o " +
+           "WHERE (:status IS NULL OR o.status = :status) ORDER BY o.createTime DESC, o.id DESC")
+    List<OrderSummaryDTO> findSummaries(Integer status, Pageable pageable);
+    
+    /**
+     * 订单摘要列表的后续页，从游标位置 (创建时间, ID) 之后开始读取，走 idx_status_create_time 或 idx_create_time
+     * 
+     * @param status 订单状态，为null时不过滤
+     * @param cursorTime 上一页最后一条的创建时间
+     * @param cursorId 上一页最后一条的ID
+     * @param pageable 只使用每页数量
+     * @return 订单摘要列表
+     */
+    @Query("SELECT new com.example.skillsystem.dto.OrderSummaryDTO(o.id, o.orderNo, o.userId, o.productId, o.productName, " +
+           "o.productPrice, o.quantity, o.totalAmount, o.status, o.createTime, o.paymentTime) FROM Order o " +
+           "WHERE (:status IS NULL OR o.status = :status) " +
+           "AND (o.createTime < :cursorTime OR (o.createTime = :cursorTime AND o.id < :cursorId)) " +
+           "ORDER BY o.createTime DESC, o.id DESC")
+    List<OrderSummaryDTO> findSummariesAfter(Integer status, LocalDateTime cursorTime, Long cursorId, Pageable pageable);
+    
     /**
      * 更新订单为已支付状态
      * 
@@ -69,4 +99,16 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      * @return 订单列表
      */
     List<Order> findByStatusAndCreateTimeLessThan(Integer status, LocalDateTime createTime);
+
+    /**
+     * 统计商品每个下过单的用户已购买（含待支付）的数量，用于校正限购计数
+     * 订单全部取消的用户也会返回，数量为0
+     *
+     * @param productId 商品ID
+     * @param statuses 计入限购的订单状态
+     * @return 每行为 [userId, 购买数量]
+     */
+    @Query("SELECT o.userId, SUM(CASE WHEN o.status IN :statuses THEN o.quantity ELSE 0 END) FROM Order o " +
+           "WHERE o.productId = :productId AND o.userId IS NOT NULL GROUP BY o.userId")
+    List<Object[]> sumQuantityByUser(Long productId, List<Integer> statuses);
 } 
\ No newline at end of file
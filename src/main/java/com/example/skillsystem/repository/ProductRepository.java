@@ -1,23 +1,39 @@
 package com.example.skillsystem.repository;
 
 import com.example.skillsystem.entity.Product;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     
     /**
-     * 根据状态查询商品
+     * 根据状态查询商品，结果进入查询缓存，商品表有更新时自动失效
      * 
      * @param status 商品状态
      * @return 商品列表
      */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Product.QUERY_CACHE_REGION)
+    })
     List<Product> findByStatus(Integer status);
+
+    /**
+     * 查询全部商品ID
+     * 
+     * @return 商品ID列表
+     */
+    @Query("SELECT p.id FROM Product p")
+    List<Long> findAllIds();
     
     /**
      * 扣减库存
@@ -26,8 +42,10 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * @param quantity 扣减数量
      * @return 影响行数
      */
-    @Modifying
-    @Query("UPDATE Product p SET p.stock = p.stock - :quantity, p.updateTime = CURRENT_TIMESTAMP WHERE p.id = :id AND p.stock >= :quantity")
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = Product.STOCK_QUERY_SPACE))
+    @Query(value = "UPDATE product SET stock = stock - :quantity, update_time = NOW() WHERE id = :id AND stock >= :quantity",
+           nativeQuery = true)
     int deductStock(Long id, Integer quantity);
     
     /**
@@ -37,7 +55,50 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * @param quantity 增加数量
      * @return 影响行数
      */
-    @Modifying
-    @Query("UPDATE Product p SET p.stock = p.stock + :quantity, p.updateTime = CURRENT_TIMESTAMP WHERE p.id = :id")
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = Product.STOCK_QUERY_SPACE))
+    @Query(value = "UPDATE product SET stock = stock + :quantity, update_time = NOW() WHERE id = :id", nativeQuery = true)
     int increaseStock(Long id, Integer quantity);
-} 
\ No newline at end of file
+    
+    /**
+     * 减少库存，不检查库存是否足够；用于写回已在缓存中锁定并已支付的数量
+     * 
+     * @param id 商品ID
+     * @param quantity 减少数量
+     * @return 影响行数
+     */
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = Product.STOCK_QUERY_SPACE))
+    @Query(value = "UPDATE product SET stock = stock - :quantity, update_time = NOW() WHERE id = :id", nativeQuery = true)
+    int subtractStock(Long id, Integer quantity);
+    
+    /**
+     * 查询商品当前库存
+     * 
+     * @param id 商品ID
+     * @return 库存，商品不存在时为null
+     */
+    @Query("SELECT p.stock FROM Product p WHERE p.id = :id")
+    Integer findStockById(Long id);
+    
+    /**
+     * 查询商品可售库存：数据库库存减去已支付但尚未写回的数量（flush_batch=0 的锁定记录）
+     * 开启写回合并时商品库存落后于已支付的扣减，初始化或重置缓存中的库存计数器必须使用此值
+     * 
+     * @param id 商品ID
+     * @return 可售库存，商品不存在时为null
+     */
+    @Query("SELECT CAST(p.stock - COALESCE((SELECT SUM(sl.lockedQuantity) FROM StockLock sl " +
+           "WHERE sl.productId = p.id AND sl.flushBatch = 0), 0) AS Integer) FROM Product p WHERE p.id = :id")
+    Integer findSellableStockById(Long id);
+    
+    /**
+     * 批量查询商品可售库存
+     * 
+     * @param ids 商品ID
+     * @return 每行为 [商品ID, 可售库存]
+     */
+    @Query("SELECT p.id, CAST(p.stock - COALESCE((SELECT SUM(sl.lockedQuantity) FROM StockLock sl " +
+           "WHERE sl.productId = p.id AND sl.flushBatch = 0), 0) AS Integer) FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findSellableStocksByIds(Collection<Long> ids);
+}
@@ -1,8 +1,13 @@
 package com.example.skillsystem.repository;
 
+import com.example.skillsystem.entity.Product;
 import com.example.skillsystem.entity.StockLock;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -39,4 +44,70 @@ public interface StockLockRepository extends JpaRepository<StockLock, Long> {
      * 根据订单号和状态查找库存锁定记录
      */
     List<StockLock> findByOrderNoAndStatus(String orderNo, Integer status);
+
+    /**
+     * 按状态条件更新锁定状态，只有当前状态为fromStatus时才更新，并发的支付和取消只有一个能成功
+     *
+     * @return 影响行数，0表示状态已被其他操作改变
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StockLock sl SET sl.status = :toStatus, sl.releaseTime = :releaseTime, sl.remark = :remark " +
+           "WHERE sl.orderNo = :orderNo AND sl.status = :fromStatus")
+    int updateStatus(@Param("orderNo") String orderNo, @Param("fromStatus") Integer fromStatus,
+                     @Param("toStatus") Integer toStatus, @Param("releaseTime") LocalDateTime releaseTime,
+                     @Param("remark") String remark);
+
+    /**
+     * 支付时一条语句完成：锁定记录从锁定中改为已扣减，同时扣减商品库存
+     * 锁定状态不对或库存不足时两张表都不修改
+     *
+     * @return 影响行数，成功时为2（锁定记录和商品各一行），失败时为0
+     */
+    @Modifying(flushAutomatically = true)
+    // 声明修改的表，商品表只声明库存查询空间，不清空商品缓存区域，由调用方按商品ID失效
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_lock"),
+            @QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = Product.STOCK_QUERY_SPACE)
+    })
+    @Query(value = "UPDATE stock_lock sl JOIN product p ON p.id = sl.product_id " +
+                   "SET p.stock = p.stock - sl.locked_quantity, p.update_time = NOW(), " +
+                   "sl.status = :toStatus, sl.release_time = NOW(), sl.remark = :remark " +
+                   "WHERE sl.order_no = :orderNo AND sl.status = :fromStatus AND p.stock >= sl.locked_quantity",
+           nativeQuery = true)
+    int deductLockedStock(@Param("orderNo") String orderNo, @Param("fromStatus") Integer fromStatus,
+                          @Param("toStatus") Integer toStatus, @Param("remark") String remark);
+
+    /**
+     * 查询订单锁定的商品、数量和商品当前库存
+     *
+     * @return 每行为 [productId, lockedQuantity, stock]
+     */
+    @Query("SELECT sl.productId, sl.lockedQuantity, p.stock FROM StockLock sl, Product p " +
+           "WHERE p.id = sl.productId AND sl.orderNo = :orderNo")
+    List<Object[]> findLockedQuantityAndStock(@Param("orderNo") String orderNo);
+
+    /**
+     * 支付时按状态条件把锁定记录改为已扣减并标记为待写回，商品库存由写回任务合并更新
+     *
+     * @return 影响行数，0表示状态已被其他操作改变
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StockLock sl SET sl.status = :toStatus, sl.releaseTime = CURRENT_TIMESTAMP, sl.remark = :remark, " +
+           "sl.flushBatch = 0 WHERE sl.orderNo = :orderNo AND sl.status = :fromStatus")
+    int markDeductedPendingFlush(@Param("orderNo") String orderNo, @Param("fromStatus") Integer fromStatus,
+                                 @Param("toStatus") Integer toStatus, @Param("remark") String remark);
+
+    /**
+     * 把所有待写回的锁定记录归入一个写回批次
+     *
+     * @return 归入批次的记录数
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE StockLock sl SET sl.flushBatch = :batch WHERE sl.flushBatch = 0")
+    int claimPendingFlush(@Param("batch") Long batch);
+
+    /**
+     * 查询一个写回批次中的锁定记录，按商品和记录ID排序
+     */
+    List<StockLock> findByFlushBatchOrderByProductIdAscIdAsc(Long flushBatch);
 }
@@ -21,6 +21,11 @@ public interface StockLogRepository extends JpaRepository<StockLog, Long>, JpaSp
     
     List<StockLog> findByCreateTimeBetween(LocalDateTime start, LocalDateTime end);
 
+    long countBySyncedFalse();
+
+    // 统计时间范围内的日志数，走 idx_create_time
+    long countByCreateTimeGreaterThanEqualAndCreateTimeLessThan(LocalDateTime start, LocalDateTime end);
+
     // 按操作类型统计
     long countByOperationType(String operationType);
 
@@ -0,0 +1,241 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 下单准入控制
+ * 请求进入下单流程前先从令牌桶取令牌，取不到直接拒绝并告知客户端多久后重试，
+ * 过载时多余的请求不会占用线程等待库存锁定和数据库事务。
+ * 本地令牌桶分为全局桶和单个商品的桶；开启集群限流时再从缓存中的共享桶取令牌。
+ * 全局桶中预留一部分令牌只给支付使用，下单请求用不到这部分，过载时支付仍然可以通过。
+ * 多商品下单每个商品项各取一个令牌，一个购物车占用的令牌与逐个下单相同
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdmissionControlService {
+
+    private final MockRedisService mockRedisService;
+    private final AppConfig appConfig;
+
+    private static final String CLUSTER_BUCKET_KEY = RedisKeyPrefix.ADMISSION_BUCKET + "global";
+
+    private volatile TokenBucket globalBucket;
+    private final Map<Long, TokenBucket> productBuckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejectedOrders = new AtomicLong();
+    private final AtomicLong rejectedPayments = new AtomicLong();
+
+    /**
+     * 下单请求取令牌
+     * @return 0表示放行，否则为建议客户端等待的毫秒数
+     */
+    public long tryAcquireOrder(Long productId) {
+        List<Long> productIds = new ArrayList<>(1);
+        productIds.add(productId);
+        return tryAcquireOrders(productIds);
+    }
+
+    /**
+     * 多商品下单取令牌，每个商品项从对应商品的桶和全局桶各取一个，全部取到才放行
+     * @param productIds 各商品项的商品ID，可以重复
+     * @return 0表示放行，否则为建议客户端等待的毫秒数
+     */
+    public long tryAcquireOrders(List<Long> productIds) {
+        AppConfig.Admission config = appConfig.getAdmission();
+        if (!config.getEnabled()) {
+            return 0;
+        }
+
+        // 按商品ID顺序从各商品的桶取令牌，同一商品的多个商品项一次取出
+        Map<Long, Integer> permitsByProduct = new TreeMap<>();
+        for (Long productId : productIds) {
+            if (productId != null) {
+                permitsByProduct.merge(productId, 1, Integer::sum);
+            }
+        }
+        Map<TokenBucket, Integer> acquired = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> entry : permitsByProduct.entrySet()) {
+            TokenBucket productBucket = productBucket(entry.getKey());
+            if (productBucket == null) {
+                continue;
+            }
+            long wait = productBucket.tryAcquire(entry.getValue(), 0);
+            if (wait > 0) {
+                releaseAll(acquired);
+                return reject(rejectedOrders, wait);
+            }
+            acquired.put(productBucket, entry.getValue());
+        }
+
+        int permits = Math.max(1, productIds.size());
+        TokenBucket global = globalBucket();
+        long wait = global.tryAcquire(permits, global.capacity * config.getPaymentReserve());
+        if (wait == 0 && config.getClusterEnabled()) {
+            wait = acquireClusterToken(permits, (int) (config.getClusterRate() * config.getPaymentReserve()));
+            if (wait > 0) {
+                global.release(permits);
+            }
+        }
+        if (wait > 0) {
+            // 后面的桶没有放行，退回已经取到的令牌
+            releaseAll(acquired);
+            return reject(rejectedOrders, wait);
+        }
+        return 0;
+    }
+
+    /**
+     * 支付请求取令牌，可以使用为支付预留的令牌
+     * @return 0表示放行，否则为建议客户端等待的毫秒数
+     */
+    public long tryAcquirePayment() {
+        AppConfig.Admission config = appConfig.getAdmission();
+        if (!config.getEnabled()) {
+            return 0;
+        }
+
+        TokenBucket global = globalBucket();
+        long wait = global.tryAcquire(1, 0);
+        if (wait == 0 && config.getClusterEnabled()) {
+            wait = acquireClusterToken(1, 0);
+            if (wait > 0) {
+                global.release(1);
+            }
+        }
+        return wait > 0 ? reject(rejectedPayments, wait) : 0;
+    }
+
+    public long getRejectedOrders() {
+        return rejectedOrders.get();
+    }
+
+    public long getRejectedPayments() {
+        return rejectedPayments.get();
+    }
+
+    private long reject(AtomicLong counter, long waitMillis) {
+        long count = counter.incrementAndGet();
+        if (count % 1000 == 1) {
+            log.warn("准入控制拒绝请求, 累计拒绝下单: {}, 拒绝支付: {}", rejectedOrders.get(), rejectedPayments.get());
+        }
+        return waitMillis;
+    }
+
+    private static void releaseAll(Map<TokenBucket, Integer> acquired) {
+        acquired.forEach(TokenBucket::release);
+    }
+
+    private long acquireClusterToken(int permits, int reserve) {
+        int rate = appConfig.getAdmission().getClusterRate();
+        try {
+            return mockRedisService.acquireToken(CLUSTER_BUCKET_KEY, rate, rate, Math.max(1, Math.min(permits, rate - reserve)), reserve);
+        } catch (Exception e) {
+            // 缓存不可用时只按本地令牌桶限流
+            log.error("集群令牌桶不可用，按本地限流放行: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private TokenBucket globalBucket() {
+        TokenBucket bucket = globalBucket;
+        if (bucket == null) {
+            synchronized (this) {
+                bucket = globalBucket;
+                if (bucket == null) {
+                    AppConfig.Admission config = appConfig.getAdmission();
+                    bucket = new TokenBucket(config.getGlobalBurst(), config.getGlobalRate());
+                    globalBucket = bucket;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private TokenBucket productBucket(Long productId) {
+        if (productId == null) {
+            return null;
+        }
+        Integer rate = appConfig.getAdmission().getProductRates().get(productId);
+        if (rate == null || rate <= 0) {
+            return null;
+        }
+        return productBuckets.computeIfAbsent(productId, id -> new TokenBucket(rate, rate));
+    }
+
+    /**
+     * 无锁令牌桶，桶状态整体放在一个不可变对象中用CAS替换
+     */
+    private static class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private final AtomicReference<State> state;
+
+        private TokenBucket(int capacity, int ratePerSecond) {
+            this.capacity = capacity;
+            this.tokensPerNano = ratePerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+            this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+        }
+
+        /**
+         * 取permits个令牌，超过桶中可用上限时按上限取，大购物车不会永远取不到
+         * @param reserve 取完后桶中至少保留的令牌数
+         * @return 0表示取到令牌，否则为令牌补足需要的毫秒数
+         */
+        private long tryAcquire(int permits, double reserve) {
+            double need = Math.max(1, Math.min(permits, capacity - reserve));
+            while (true) {
+                State current = state.get();
+                long now = System.nanoTime();
+                double tokens = Math.min(capacity, current.tokens + (now - current.timestamp) * tokensPerNano);
+                if (tokens - need < reserve) {
+                    long waitNanos = (long) Math.ceil((need + reserve - tokens) / tokensPerNano);
+                    return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                }
+                if (state.compareAndSet(current, new State(tokens - need, now))) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * 退回permits个令牌
+         */
+        private void release(int permits) {
+            while (true) {
+                State current = state.get();
+                State next = new State(Math.min(capacity, current.tokens + permits), current.timestamp);
+                if (state.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 令牌桶状态：剩余令牌数和上次补充令牌的时间
+     */
+    private static class State {
+        private final double tokens;
+        private final long timestamp;
+
+        private State(double tokens, long timestamp) {
+            this.tokens = tokens;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.skillsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据库写入失败时使用的备用文件，每行一条JSON记录
+ * 导入时先把备用文件改名为 .replaying 再分批写入数据库，导入期间新的失败记录继续追加到备用文件。
+ * 数据库不可用时保留尚未导入的行等待下次导入；无法解析或数据本身有问题的行移到 .bad 文件，
+ * 不影响后面的行继续导入
+ */
+@Slf4j
+public class FallbackFile {
+
+    private final String name;
+    private final Path file;
+    private final Path replayingFile;
+    private final Path quarantineFile;
+    private final Object monitor = new Object();
+
+    /**
+     * @param name 记录名称，用于日志
+     * @param path 备用文件路径
+     */
+    public FallbackFile(String name, String path) {
+        this.name = name;
+        this.file = Paths.get(path);
+        this.replayingFile = Paths.get(path + ".replaying");
+        this.quarantineFile = Paths.get(path + ".bad");
+    }
+
+    /**
+     * 追加记录并同步到磁盘
+     * @return 是否写入成功
+     */
+    public boolean append(List<String> lines) {
+        synchronized (monitor) {
+            try {
+                write(file, lines);
+                return true;
+            } catch (IOException e) {
+                log.error("写入{}备用文件失败，丢失 {} 条记录: {}", name, lines.size(), e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 把备用文件中的记录重新写入数据库
+     * @param batchSize 每批写入的行数
+     * @param parser 把一行解析为记录
+     * @param writer 写入一批记录
+     * @return 导入的记录条数
+     */
+    public <T> int replay(int batchSize, Parser<T> parser, Writer<T> writer) {
+        synchronized (monitor) {
+            try {
+                // 上次导入失败留下的文件优先导入，新的备用文件之后再处理
+                if (!Files.exists(replayingFile)) {
+                    if (!Files.exists(file)) {
+                        return 0;
+                    }
+                    Files.move(file, replayingFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                log.error("准备导入{}备用文件失败: {}", name, e.getMessage());
+                return 0;
+            }
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(replayingFile, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("读取{}备用文件失败: {}", name, e.getMessage());
+            return 0;
+        }
+
+        int imported = 0;
+        for (int from = 0; from < lines.size(); from += batchSize) {
+            List<String> chunk = lines.subList(from, Math.min(lines.size(), from + batchSize));
+            List<String> parsedLines = new ArrayList<>(chunk.size());
+            List<T> records = new ArrayList<>(chunk.size());
+            for (String line : chunk) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    records.add(parser.parse(line));
+                    parsedLines.add(line);
+                } catch (Exception e) {
+                    quarantine(line, e);
+                }
+            }
+            if (records.isEmpty()) {
+                continue;
+            }
+
+            try {
+                writer.write(records);
+                imported += records.size();
+                continue;
+            } catch (Exception e) {
+                if (!isPermanent(e)) {
+                    log.error("导入{}备用文件失败，已导入 {} 条: {}", name, imported, e.getMessage());
+                    keepRemaining(parsedLines, lines.subList(from + chunk.size(), lines.size()));
+                    return imported;
+                }
+                log.warn("批量导入{}失败，改为逐条导入: {}", name, e.getMessage());
+            }
+
+            // 整批因数据问题失败时逐条导入，只隔离有问题的行
+            for (int i = 0; i < records.size(); i++) {
+                try {
+                    writer.write(List.of(records.get(i)));
+                    imported++;
+                } catch (Exception e) {
+                    if (!isPermanent(e)) {
+                        log.error("导入{}备用文件失败，已导入 {} 条: {}", name, imported, e.getMessage());
+                        keepRemaining(parsedLines.subList(i, parsedLines.size()),
+                                lines.subList(from + chunk.size(), lines.size()));
+                        return imported;
+                    }
+                    quarantine(parsedLines.get(i), e);
+                }
+            }
+        }
+
+        try {
+            Files.deleteIfExists(replayingFile);
+        } catch (IOException e) {
+            log.error("删除已导入的{}备用文件失败: {}", name, e.getMessage());
+        }
+        log.info("{}备用文件导入完成，共 {} 条", name, imported);
+        return imported;
+    }
+
+    /**
+     * 数据本身有问题、重试也不会成功的异常；连接失败等其他异常视为数据库暂时不可用
+     */
+    private static boolean isPermanent(Exception e) {
+        return e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException);
+    }
+
+    /**
+     * 只保留尚未导入的部分，下次从这里继续
+     */
+    private void keepRemaining(List<String> current, List<String> rest) {
+        List<String> remaining = new ArrayList<>(current.size() + rest.size());
+        remaining.addAll(current);
+        remaining.addAll(rest);
+        try {
+            Files.write(replayingFile, remaining, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.error("保存未导入的{}失败: {}", name, e.getMessage());
+        }
+    }
+
+    private void quarantine(String line, Exception cause) {
+        log.error("{}备用文件中的记录无法导入，移到 {}: {}", name, quarantineFile, cause.getMessage());
+        try {
+            write(quarantineFile, List.of(line));
+        } catch (IOException e) {
+            log.error("隔离{}记录失败，丢弃该记录: {}", name, line);
+        }
+    }
+
+    private static void write(Path target, List<String> lines) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(target, lines, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+
+    @FunctionalInterface
+    public interface Parser<T> {
+        T parse(String line) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Writer<T> {
+        void write(List<T> records) throws Exception;
+    }
+}
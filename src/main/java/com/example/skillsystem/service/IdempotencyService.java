@@ -0,0 +1,268 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.vo.Result;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 幂等请求处理
+ * 客户端超时重试时带上相同的Idempotency-Key，成功结果在有效期内直接返回，不会重复锁定库存。
+ * 同一个键的请求仍在处理时，重复请求等待原请求的结果而不是再执行一次。
+ * 失败结果不保留：失败的请求没有锁定库存，重试可以重新执行。
+ * 开启共享存储时结果同时写入缓存，重试落到其他实例也能拿到结果。
+ * 每个幂等键记录请求内容的摘要，同一个键带着不同的请求内容重用时直接拒绝，不返回其他请求的结果
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+
+    private final MockRedisService mockRedisService;
+    private final ObjectMapper objectMapper;
+    private final AppConfig appConfig;
+
+    // 共享存储中表示请求正在其他实例处理的占位值前缀，后接请求摘要
+    private static final String PROCESSING = "PROCESSING:";
+
+    // 请求处理期间定期续期共享占位
+    private final ScheduledExecutorService placeholderRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 幂等键 -> 请求结果，处理中的请求结果尚未完成
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 按幂等键执行请求，没有幂等键时直接执行
+     * @param scope 操作名称，不同操作的相同幂等键互不影响
+     * @param request 请求内容，用于识别同一个幂等键被不同请求重用
+     */
+    public <T> Result<T> execute(String scope, String idempotencyKey, Object request, Supplier<Result<T>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = RedisKeyPrefix.IDEMPOTENCY + scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        AppConfig.Order config = appConfig.getOrder();
+        long now = System.currentTimeMillis();
+
+        Entry entry = new Entry(fingerprint, now + TimeUnit.SECONDS.toMillis(config.getIdempotencyTtl()));
+        Entry existing = entries.putIfAbsent(key, entry);
+        if (existing != null && existing.expireAt < now) {
+            entries.remove(key, existing);
+            existing = entries.putIfAbsent(key, entry);
+        }
+        if (existing != null) {
+            if (!existing.fingerprint.equals(fingerprint)) {
+                return keyReused(key);
+            }
+            log.info("重复请求，等待原请求结果: key={}", key);
+            return await(existing);
+        }
+        if (entries.size() > config.getIdempotencyMaxEntries()) {
+            evictExpired();
+        }
+
+        Result<T> result;
+        try {
+            result = executeShared(key, fingerprint, action);
+        } catch (RuntimeException e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        // 失败结果和超出容量的结果不保留，正在等待的重复请求仍然拿到这次的结果
+        if (!isSuccess(result) || entries.size() > config.getIdempotencyMaxEntries()) {
+            entries.remove(key, entry);
+        }
+        entry.future.complete(result);
+        return result;
+    }
+
+    /**
+     * 查询幂等键已完成的成功结果，不执行请求
+     * 重试请求在准入控制之前先调用，已有结果时直接返回，不再占用下单令牌
+     * @return 已完成的结果，没有幂等键、没有结果或仍在处理中时返回null；请求内容与原请求不同时返回拒绝结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Result<T> findCompleted(String scope, String idempotencyKey, Object request) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return null;
+        }
+        String key = RedisKeyPrefix.IDEMPOTENCY + scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expireAt >= System.currentTimeMillis() && entry.future.isDone()
+                && !entry.future.isCompletedExceptionally()) {
+            Result<?> result = entry.future.getNow(null);
+            if (isSuccess(result)) {
+                return entry.fingerprint.equals(fingerprint) ? (Result<T>) result : keyReused(key);
+            }
+        }
+        if (appConfig.getOrder().getIdempotencySharedEnabled()) {
+            Object stored = mockRedisService.get(key);
+            if (stored instanceof StoredResult) {
+                StoredResult storedResult = (StoredResult) stored;
+                return storedResult.fingerprint.equals(fingerprint) ? (Result<T>) storedResult.result : keyReused(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 清理过期的幂等结果
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.expireAt < now && entry.future.isDone());
+        return before - entries.size();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        placeholderRenewer.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Result<T> executeShared(String key, String fingerprint, Supplier<Result<T>> action) {
+        AppConfig.Order config = appConfig.getOrder();
+        if (!config.getIdempotencySharedEnabled()) {
+            return action.get();
+        }
+
+        Object stored = mockRedisService.get(key);
+        if (stored instanceof StoredResult) {
+            StoredResult storedResult = (StoredResult) stored;
+            if (!storedResult.fingerprint.equals(fingerprint)) {
+                return keyReused(key);
+            }
+            log.info("重复请求，返回其他实例的处理结果: key={}", key);
+            return (Result<T>) storedResult.result;
+        }
+        // 占位只在等待时间内有效，处理期间按一半的间隔续期：处理实例宕机时占位很快过期，
+        // 处理时间超过等待时间时占位也不会提前过期让重复请求再执行一次
+        String placeholder = PROCESSING + fingerprint;
+        long placeholderTtl = config.getIdempotencyWaitTimeout();
+        if (!mockRedisService.setIfAbsent(key, placeholder, placeholderTtl, TimeUnit.MILLISECONDS)) {
+            Object current = mockRedisService.get(key);
+            if (current instanceof String && !placeholder.equals(current)
+                    || current instanceof StoredResult && !((StoredResult) current).fingerprint.equals(fingerprint)) {
+                return keyReused(key);
+            }
+            return Result.error(409, "请求正在处理中，请稍后重试");
+        }
+        long renewInterval = Math.max(1, placeholderTtl / 2);
+        ScheduledFuture<?> renewal = placeholderRenewer.scheduleAtFixedRate(() -> {
+            try {
+                mockRedisService.compareAndSet(key, placeholder, placeholder, placeholderTtl, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("续期幂等占位失败: key={}, error={}", key, e.getMessage());
+            }
+        }, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+
+        Result<T> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            mockRedisService.delete(key);
+            throw e;
+        } finally {
+            renewal.cancel(false);
+        }
+        if (isSuccess(result)) {
+            mockRedisService.set(key, new StoredResult(fingerprint, result), config.getIdempotencyTtl(), TimeUnit.SECONDS);
+        } else {
+            mockRedisService.delete(key);
+        }
+        return result;
+    }
+
+    /**
+     * 请求内容的摘要，序列化后计算SHA-256
+     */
+    private String fingerprint(Object request) {
+        try {
+            byte[] body = request == null ? new byte[0] : objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (Exception e) {
+            // 无法序列化时退化为按对象内容的散列，仍能区分大多数不同请求
+            return Integer.toHexString(Objects.hashCode(request));
+        }
+    }
+
+    private <T> Result<T> keyReused(String key) {
+        log.warn("幂等键被内容不同的请求重用: key={}", key);
+        return Result.error(422, "幂等键已用于内容不同的请求");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Result<T> await(Entry entry) {
+        try {
+            return (Result<T>) entry.future.get(appConfig.getOrder().getIdempotencyWaitTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return Result.error(409, "请求正在处理中，请稍后重试");
+        } catch (ExecutionException e) {
+            return Result.error("请求处理失败: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.error("请求处理被中断");
+        }
+    }
+
+    private static boolean isSuccess(Result<?> result) {
+        return result != null && Integer.valueOf(200).equals(result.getCode());
+    }
+
+    /**
+     * 一个幂等键的请求结果
+     */
+    private static class Entry {
+        private final CompletableFuture<Result<?>> future = new CompletableFuture<>();
+        private final String fingerprint;
+        private final long expireAt;
+
+        private Entry(String fingerprint, long expireAt) {
+            this.fingerprint = fingerprint;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 共享存储中的成功结果及其请求摘要
+     */
+    private static class StoredResult {
+        private final String fingerprint;
+        private final Result<?> result;
+
+        private StoredResult(String fingerprint, Result<?> result) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.example.skillsystem.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -16,6 +19,8 @@ public class MockRedisService {
     // 模拟Redis存储
     private final ConcurrentHashMap<String, Object> storage = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, Long> expireTime = new ConcurrentHashMap<>();
+    // 版本水位：记录每个键见过的最高版本，删除值后仍然保留，用于拒绝过期数据回填
+    private final ConcurrentHashMap<String, VersionMark> versionMarks = new ConcurrentHashMap<>();
     
     /**
      * 设置值
@@ -49,6 +54,112 @@ public class MockRedisService {
         return value;
     }
     
+    /**
+     * 键不存在时才设置值（SET NX EX）
+     * @return 是否设置成功
+     */
+    public boolean setIfAbsent(String key, Object value, long timeout, TimeUnit unit) {
+        boolean[] written = {false};
+        storage.compute(key, (k, current) -> {
+            if (current != null && !isExpired(k)) {
+                return current;
+            }
+            expireTime.put(k, System.currentTimeMillis() + unit.toMillis(timeout));
+            written[0] = true;
+            return value;
+        });
+        log.debug("MockRedis SETNX: {} = {}, written={}", key, value, written[0]);
+        return written[0];
+    }
+    
+    /**
+     * 按版本写入（比较并设置）
+     * 只有当版本不低于该键已知的最高版本时才写入，用于防止读到旧数据的请求把旧值回填到缓存
+     * @return 是否写入成功
+     */
+    public boolean setIfNewer(String key, Object value, long version, long timeout, TimeUnit unit) {
+        boolean[] written = {false};
+        long expireAt = System.currentTimeMillis() + unit.toMillis(timeout);
+        versionMarks.compute(key, (k, mark) -> {
+            if (mark != null && !mark.isExpired() && mark.version > version) {
+                return mark;
+            }
+            storage.put(k, value);
+            expireTime.put(k, expireAt);
+            written[0] = true;
+            return new VersionMark(version, expireAt);
+        });
+        log.debug("MockRedis SET IF NEWER: {} version={}, written={}", key, version, written[0]);
+        return written[0];
+    }
+    
+    /**
+     * 按版本失效：删除值并把版本水位提升到指定版本
+     * 之后低于该版本的写入都会被拒绝
+     */
+    public void invalidate(String key, long version, long timeout, TimeUnit unit) {
+        long expireAt = System.currentTimeMillis() + unit.toMillis(timeout);
+        versionMarks.compute(key, (k, mark) -> {
+            storage.remove(k);
+            expireTime.remove(k);
+            if (mark != null && !mark.isExpired() && mark.version >= version) {
+                return mark;
+            }
+            return new VersionMark(version, expireAt);
+        });
+        log.debug("MockRedis INVALIDATE: {} version={}", key, version);
+    }
+    
+    /**
+     * 批量获取值（MGET），结果顺序与键顺序一致，不存在的键返回null
+     * 与Redis的MGET一样整体原子读取，读取期间不会穿插执行脚本
+     */
+    public synchronized List<Object> multiGet(List<String> keys) {
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (isExpired(key)) {
+                delete(key);
+                values.add(null);
+            } else {
+                values.add(storage.get(key));
+            }
+        }
+        log.debug("MockRedis MGET: {} keys", keys.size());
+        return values;
+    }
+    
+    /**
+     * 批量按版本写入，每个键的语义与 {@link #setIfNewer} 相同
+     * @param values 键值对
+     * @param versions 每个键对应的版本号
+     * @return 写入成功的键数量
+     */
+    public int multiSetIfNewer(Map<String, Object> values, Map<String, Long> versions, long timeout, TimeUnit unit) {
+        int written = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (setIfNewer(entry.getKey(), entry.getValue(), versions.get(entry.getKey()), timeout, unit)) {
+                written++;
+            }
+        }
+        log.debug("MockRedis MSET IF NEWER: {} keys, written={}", values.size(), written);
+        return written;
+    }
+    
+    /**
+     * 批量写入不存在的键，每个键的语义与 {@link #setIfAbsent} 相同
+     * @return 写入成功的键数量
+     */
+    public int multiSetIfAbsent(Map<String, Object> values, long timeout, TimeUnit unit) {
+        int written = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (setIfAbsent(entry.getKey(), entry.getValue(), timeout, unit)) {
+                written++;
+            }
+        }
+        log.debug("MockRedis MSETNX: {} keys, written={}", values.size(), written);
+        return written;
+    }
+    
     /**
      * 删除键
      */
@@ -185,6 +296,267 @@ public class MockRedisService {
         }
     }
 
+    /**
+     * 原子扣减至多quantity（模拟Lua脚本），不足时取走全部剩余
+     * @param key 键
+     * @param quantity 最多扣减数量
+     * @return 实际扣减数量，键不存在或已为0时返回0
+     */
+    public synchronized Long decrUpTo(String key, Integer quantity) {
+        if (isExpired(key)) {
+            delete(key);
+            return 0L;
+        }
+        
+        Object value = storage.get(key);
+        if (!(value instanceof Number)) {
+            return 0L;
+        }
+        
+        int currentValue = ((Number) value).intValue();
+        int taken = Math.min(currentValue, quantity);
+        if (taken <= 0) {
+            return 0L;
+        }
+        storage.put(key, currentValue - taken);
+        log.debug("MockRedis DECRUPTO: {} = {} - {}", key, currentValue, taken);
+        return (long) taken;
+    }
+
+    /**
+     * 原子转移至多quantity（模拟Lua脚本），从源键扣减后加到目标键，两个键的合计不变
+     * @param sourceKey 源键
+     * @param targetKey 目标键
+     * @param quantity 最多转移数量
+     * @return 实际转移数量，源键不存在或已为0时返回0
+     */
+    public synchronized Long moveUpTo(String sourceKey, String targetKey, Integer quantity) {
+        long moved = decrUpTo(sourceKey, quantity);
+        if (moved > 0) {
+            incrBy(targetKey, (int) moved);
+            log.debug("MockRedis MOVEUPTO: {} -> {} {}", sourceKey, targetKey, moved);
+        }
+        return moved;
+    }
+
+    /**
+     * 从多个键合计扣减quantity（模拟Lua脚本），合计不足时不扣减任何键
+     * 按键的顺序依次取走，前面的键不够时继续取后面的键
+     * @param keys 键列表
+     * @param quantity 扣减数量
+     * @return 扣减后各键的合计；合计不足返回-1，所有键都不存在返回-2
+     */
+    public synchronized Long decrAcross(List<String> keys, Integer quantity) {
+        int[] current = new int[keys.size()];
+        int total = 0;
+        boolean exists = false;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (isExpired(key)) {
+                delete(key);
+                continue;
+            }
+            Object value = storage.get(key);
+            if (value instanceof Number) {
+                exists = true;
+                current[i] = ((Number) value).intValue();
+                total += current[i];
+            }
+        }
+        if (!exists) {
+            return -2L;
+        }
+        if (total < quantity) {
+            log.debug("MockRedis DECRACROSS: insufficient stock, total={}, required={}, returning -1", total, quantity);
+            return -1L;
+        }
+        int remaining = quantity;
+        for (int i = 0; i < keys.size() && remaining > 0; i++) {
+            int taken = Math.min(current[i], remaining);
+            if (taken > 0) {
+                storage.put(keys.get(i), current[i] - taken);
+                remaining -= taken;
+            }
+        }
+        log.debug("MockRedis DECRACROSS: {} keys - {} = {}", keys.size(), quantity, total - quantity);
+        return (long) (total - quantity);
+    }
+
+    /**
+     * 原子锁定库存（模拟Lua脚本 lua/stock_lock.lua）
+     * 幂等检查、库存检查、扣减和写入锁定标记一次完成
+     * @param stockKey 库存键
+     * @param lockKey 订单锁定标记键
+     * @param quantity 锁定数量
+     * @return 扣减后的库存；库存不存在返回-1，库存不足返回-2，该订单已锁定返回-3
+     */
+    public synchronized Long lockStock(String stockKey, String lockKey, Integer quantity, long lockTimeout, TimeUnit unit) {
+        if (exists(lockKey)) {
+            log.debug("MockRedis LOCKSTOCK: {} already locked, returning -3", lockKey);
+            return -3L;
+        }
+        
+        if (isExpired(stockKey)) {
+            delete(stockKey);
+        }
+        Object value = storage.get(stockKey);
+        if (!(value instanceof Number)) {
+            log.debug("MockRedis LOCKSTOCK: key {} not exists, returning -1", stockKey);
+            return -1L;
+        }
+        
+        long currentValue = ((Number) value).longValue();
+        if (currentValue < quantity) {
+            log.debug("MockRedis LOCKSTOCK: insufficient stock, current={}, required={}, returning -2", currentValue, quantity);
+            return -2L;
+        }
+        
+        long newValue = currentValue - quantity;
+        storage.put(stockKey, (int) newValue);
+        set(lockKey, quantity, lockTimeout, unit);
+        log.debug("MockRedis LOCKSTOCK: {} = {} - {} = {}, lock={}", stockKey, currentValue, quantity, newValue, lockKey);
+        return newValue;
+    }
+
+    /**
+     * 带用户限购的原子锁定库存（模拟Lua脚本 lua/stock_lock_limit.lua）
+     * @return 扣减后的库存；库存不存在返回-1，库存不足返回-2，该订单已锁定返回-3，超过限购返回-4
+     */
+    public synchronized Long lockStockWithLimit(String stockKey, String lockKey, String limitKey, Integer quantity,
+                                               Integer limit, long lockTimeout, long limitTimeout, TimeUnit unit) {
+        if (exists(lockKey)) {
+            return -3L;
+        }
+        
+        Object purchasedValue = get(limitKey);
+        long purchased = purchasedValue instanceof Number ? ((Number) purchasedValue).longValue() : 0;
+        if (purchased + quantity > limit) {
+            log.debug("MockRedis LOCKSTOCKLIMIT: {} purchased={}, required={}, limit={}, returning -4", limitKey, purchased, quantity, limit);
+            return -4L;
+        }
+        
+        Long result = lockStock(stockKey, lockKey, quantity, lockTimeout, unit);
+        if (result >= 0) {
+            set(limitKey, (int) (purchased + quantity), limitTimeout, unit);
+        }
+        return result;
+    }
+    
+    /**
+     * 值等于期望值时才设置（模拟Lua脚本），期望值为null表示键不存在
+     * @return 是否设置成功
+     */
+    public synchronized boolean compareAndSet(String key, Object expected, Object value, long timeout, TimeUnit unit) {
+        Object current = get(key);
+        if (current == null ? expected != null : !current.equals(expected)) {
+            return false;
+        }
+        set(key, value, timeout, unit);
+        return true;
+    }
+    
+    /**
+     * 在上限内原子增加（模拟Lua脚本）
+     * @return 增加后的值，超过上限时不修改并返回-4
+     */
+    public synchronized Long incrWithinLimit(String key, Integer quantity, Integer limit, long timeout, TimeUnit unit) {
+        Object value = get(key);
+        long current = value instanceof Number ? ((Number) value).longValue() : 0;
+        if (current + quantity > limit) {
+            return -4L;
+        }
+        set(key, (int) (current + quantity), timeout, unit);
+        return current + quantity;
+    }
+    
+    /**
+     * 一次锁定多个商品的库存（模拟Lua脚本 lua/stock_lock_multi.lua），全部成功或全部不变
+     * @return 成功时为每个商品扣减后的库存；失败时为两个元素：失败码（与{@link #lockStock}一致）和失败的位置
+     */
+    public synchronized List<Long> lockStockMulti(List<String> stockKeys, List<String> lockKeys, List<Integer> quantities,
+                                                  long lockTimeout, TimeUnit unit) {
+        List<Long> remaining = new ArrayList<>(stockKeys.size());
+        for (int i = 0; i < stockKeys.size(); i++) {
+            if (exists(lockKeys.get(i))) {
+                return List.of(-3L, (long) i);
+            }
+            if (isExpired(stockKeys.get(i))) {
+                delete(stockKeys.get(i));
+            }
+            Object value = storage.get(stockKeys.get(i));
+            if (!(value instanceof Number)) {
+                return List.of(-1L, (long) i);
+            }
+            long stock = ((Number) value).longValue();
+            if (stock < quantities.get(i)) {
+                return List.of(-2L, (long) i);
+            }
+            remaining.add(stock - quantities.get(i));
+        }
+        
+        for (int i = 0; i < stockKeys.size(); i++) {
+            storage.put(stockKeys.get(i), remaining.get(i).intValue());
+            set(lockKeys.get(i), quantities.get(i), lockTimeout, unit);
+        }
+        log.debug("MockRedis LOCKSTOCKMULTI: {} keys, remaining={}", stockKeys.size(), remaining);
+        return remaining;
+    }
+    
+    /**
+     * 令牌桶取令牌（模拟Lua脚本 lua/token_bucket.lua）
+     * @param capacity 桶容量
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param permits 需要的令牌数
+     * @param reserve 取完后桶中至少保留的令牌数
+     * @return 0表示取到令牌，否则为需要等待的毫秒数
+     */
+    public synchronized Long acquireToken(String key, int capacity, int ratePerSecond, int permits, int reserve) {
+        long now = System.currentTimeMillis();
+        Object value = get(key);
+        double[] bucket = value instanceof double[] ? (double[]) value : new double[]{capacity, now};
+        double tokens = Math.min(capacity, bucket[0] + (now - bucket[1]) * ratePerSecond / 1000.0);
+        if (tokens - permits < reserve) {
+            storage.put(key, new double[]{tokens, now});
+            return Math.max(1L, (long) Math.ceil((permits + reserve - tokens) * 1000.0 / ratePerSecond));
+        }
+        storage.put(key, new double[]{tokens - permits, now});
+        return 0L;
+    }
+    
+    /**
+     * 批量锁定同一商品的多个订单（模拟Lua脚本 lua/stock_lock_batch.lua）
+     * 按顺序逐个判断，每个订单的返回值含义与{@link #lockStock}一致
+     */
+    public synchronized List<Long> lockStockBatch(String stockKey, List<String> lockKeys, List<Integer> quantities,
+                                                  long lockTimeout, TimeUnit unit) {
+        if (isExpired(stockKey)) {
+            delete(stockKey);
+        }
+        Object value = storage.get(stockKey);
+        Long stock = value instanceof Number ? ((Number) value).longValue() : null;
+        
+        List<Long> results = new ArrayList<>(lockKeys.size());
+        for (int i = 0; i < lockKeys.size(); i++) {
+            int quantity = quantities.get(i);
+            if (exists(lockKeys.get(i))) {
+                results.add(-3L);
+            } else if (stock == null) {
+                results.add(-1L);
+            } else if (stock < quantity) {
+                results.add(-2L);
+            } else {
+                stock -= quantity;
+                set(lockKeys.get(i), quantity, lockTimeout, unit);
+                results.add(stock);
+            }
+        }
+        if (stock != null) {
+            storage.put(stockKey, stock.intValue());
+        }
+        log.debug("MockRedis LOCKSTOCKBATCH: {} orders, results={}", lockKeys.size(), results);
+        return results;
+    }
+
     /**
      * 原子增加操作
      * @param key 键
@@ -221,6 +593,24 @@ public class MockRedisService {
     public void clear() {
         storage.clear();
         expireTime.clear();
+        versionMarks.clear();
         log.info("MockRedis 已清空所有数据");
     }
+
+    /**
+     * 版本水位
+     */
+    private static class VersionMark {
+        private final long version;
+        private final long expireAt;
+        
+        VersionMark(long version, long expireAt) {
+            this.version = version;
+            this.expireAt = expireAt;
+        }
+        
+        boolean isExpired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
 }
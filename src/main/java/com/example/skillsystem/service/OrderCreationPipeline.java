@@ -0,0 +1,231 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.entity.Order;
+import com.example.skillsystem.enums.OrderTokenStatus;
+import com.example.skillsystem.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步下单流水线
+ * 库存锁定成功后订单进入有界队列，后台线程批量写入数据库，请求线程不等待数据库。
+ * 订单写入失败时退回锁定的库存并记录失败状态，客户端凭订单号轮询结果。
+ * 队列满时退化为调用方同步写入。
+ */
+@Slf4j
+@Service
+public class OrderCreationPipeline {
+
+    private final OrderRepository orderRepository;
+    private final StockManagementService stockManagementService;
+    private final MockRedisService mockRedisService;
+    private final PurchaseLimitService purchaseLimitService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private final BlockingQueue<PendingOrder> queue;
+    // 已受理但尚未写入数据库的订单，按订单号索引
+    private final ConcurrentHashMap<String, PendingOrder> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private static final long AWAIT_TIMEOUT_MS = 5000;
+    // 失败状态的保留时间，足够客户端轮询到结果
+    private static final long FAILED_STATUS_TTL_MINUTES = 30;
+
+    private volatile boolean running = true;
+    private Thread writerThread;
+
+    public OrderCreationPipeline(OrderRepository orderRepository,
+                                 StockManagementService stockManagementService,
+                                 MockRedisService mockRedisService,
+                                 PurchaseLimitService purchaseLimitService,
+                                 PlatformTransactionManager transactionManager,
+                                 AppConfig appConfig) {
+        this.orderRepository = orderRepository;
+        this.stockManagementService = stockManagementService;
+        this.mockRedisService = mockRedisService;
+        this.purchaseLimitService = purchaseLimitService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = appConfig.getOrder().getPipelineBatchSize();
+        this.queue = new ArrayBlockingQueue<>(appConfig.getOrder().getPipelineQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::runLoop, "order-pipeline-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 提交一个已锁定库存的订单
+     */
+    public void submit(Order order) {
+        PendingOrder pendingOrder = new PendingOrder(order);
+        pending.put(order.getOrderNo(), pendingOrder);
+        if (!queue.offer(pendingOrder)) {
+            log.warn("下单队列已满，同步写入订单: orderNo={}", order.getOrderNo());
+            write(List.of(pendingOrder));
+        }
+    }
+
+    /**
+     * 查询下单令牌状态，令牌即订单号
+     */
+    public OrderTokenStatus getStatus(String token) {
+        if (pending.containsKey(token)) {
+            return OrderTokenStatus.PENDING;
+        }
+        if (mockRedisService.exists(RedisKeyPrefix.ORDER_TOKEN_FAILED + token)) {
+            return OrderTokenStatus.FAILED;
+        }
+        return orderRepository.findByOrderNo(token).isPresent() ? OrderTokenStatus.CREATED : OrderTokenStatus.NOT_FOUND;
+    }
+
+    /**
+     * 等待指定订单写入数据库
+     * 支付或取消时若订单尚未落库，先调用此方法。订单由写入线程批量写入，
+     * 这里只等待该订单的写入结果，不在调用方线程写入其他订单
+     * @return 订单是否已处理完成（写入成功或已补偿），超时返回false
+     */
+    public boolean awaitPersisted(String orderNo) {
+        PendingOrder pendingOrder = pending.get(orderNo);
+        if (pendingOrder == null) {
+            return true;
+        }
+        try {
+            pendingOrder.persisted.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("等待订单写入超时: orderNo={}", orderNo);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 立即把队列中的订单写入数据库
+     */
+    public void flush() {
+        List<PendingOrder> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        flush();
+        log.info("异步下单流水线已停止");
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                PendingOrder first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingOrder> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("异步下单写入线程异常", e);
+            }
+        }
+    }
+
+    private void write(List<PendingOrder> batch) {
+        List<Order> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pendingOrder : batch) {
+            orders.add(pendingOrder.order);
+        }
+        writeLock.lock();
+        try {
+            try {
+                transactionTemplate.executeWithoutResult(status -> orderRepository.saveAll(orders));
+                log.debug("批量写入订单 {} 条", orders.size());
+            } catch (Exception e) {
+                // 批量写入失败时逐条写入，只对写入失败的订单做补偿
+                log.error("批量写入订单失败，改为逐条写入: {}", e.getMessage());
+                for (Order order : orders) {
+                    writeOne(order);
+                }
+            }
+        } finally {
+            for (PendingOrder pendingOrder : batch) {
+                pending.remove(pendingOrder.order.getOrderNo(), pendingOrder);
+                pendingOrder.persisted.complete(null);
+            }
+            writeLock.unlock();
+        }
+    }
+
+    private void writeOne(Order order) {
+        try {
+            order.setId(null);
+            transactionTemplate.executeWithoutResult(status -> orderRepository.save(order));
+        } catch (Exception e) {
+            log.error("写入订单失败，退回锁定库存: orderNo={}, error={}", order.getOrderNo(), e.getMessage());
+            compensate(order);
+        }
+    }
+
+    /**
+     * 订单写入失败的补偿：退回锁定的库存和用户限购数量，并记录失败状态供客户端查询
+     */
+    private void compensate(Order order) {
+        mockRedisService.set(RedisKeyPrefix.ORDER_TOKEN_FAILED + order.getOrderNo(), order.getProductId(),
+                FAILED_STATUS_TTL_MINUTES, TimeUnit.MINUTES);
+        purchaseLimitService.release(order);
+        try {
+            if (!stockManagementService.rollbackRedisStock(order.getOrderNo())) {
+                log.error("订单写入失败后退回库存失败，等待锁定过期清理: orderNo={}", order.getOrderNo());
+            }
+        } catch (Exception e) {
+            log.error("订单写入失败后退回库存异常，等待锁定过期清理: orderNo={}", order.getOrderNo(), e);
+        }
+    }
+
+    /**
+     * 等待写入的订单
+     */
+    private static class PendingOrder {
+        private final Order order;
+        // 订单写入数据库或完成补偿后完成
+        private final CompletableFuture<Void> persisted = new CompletableFuture<>();
+
+        private PendingOrder(Order order) {
+            this.order = order;
+        }
+    }
+}
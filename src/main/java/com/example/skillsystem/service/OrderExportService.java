@@ -0,0 +1,126 @@
+package com.example.skillsystem.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+/**
+ * 订单导出
+ * 通过数据库游标按批读取订单，每读一行写一行CSV，内存中只保留一批数据，导出全部订单也不会占满内存。
+ * 导出在只读事务中执行，开启读写分离时由从库承担
+ */
+@Slf4j
+@Service
+public class OrderExportService {
+
+    // 每次从数据库游标取回的行数，需要连接参数 useCursorFetch=true
+    private static final int FETCH_SIZE = 500;
+
+    private static final String HEADER = "订单号,用户ID,商品ID,商品名称,商品价格,购买数量,订单金额,订单状态,创建时间,支付时间";
+
+    private static final String SELECT_SQL = "SELECT order_no, user_id, product_id, product_name, product_price, quantity, "
+            + "total_amount, status, create_time, payment_time FROM `order`";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public OrderExportService(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * 按创建时间倒序导出订单
+     * @param status 订单状态，为null时导出全部
+     * @return 导出的订单数
+     */
+    public long exportCsv(Integer status, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        // UTF-8 BOM，Excel打开时才能正确识别中文
+        writer.write('\uFEFF');
+        writer.write(HEADER);
+        writer.write('\n');
+
+        String sql = SELECT_SQL + (status != null ? " WHERE status = ?" : "") + " ORDER BY create_time DESC, id DESC";
+        Object[] args = status != null ? new Object[]{status} : new Object[0];
+        long[] count = new long[1];
+        try {
+            transactionTemplate.executeWithoutResult(tx -> jdbcTemplate.query(sql, rs -> {
+                try {
+                    writer.write(csv(rs.getString(1)));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(2)));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(3)));
+                    writer.write(',');
+                    writer.write(csv(text(rs.getString(4))));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(5)));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(6)));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(7)));
+                    writer.write(',');
+                    writer.write(csv(rs.getString(8)));
+                    writer.write(',');
+                    writer.write(csv(format(rs.getTimestamp(9))));
+                    writer.write(',');
+                    writer.write(csv(format(rs.getTimestamp(10))));
+                    writer.write('\n');
+                    count[0]++;
+                } catch (IOException e) {
+                    // 客户端断开时停止读取
+                    throw new UncheckedIOException(e);
+                }
+            }, args));
+        } catch (UncheckedIOException e) {
+            log.warn("导出订单中断，已写出 {} 条: {}", count[0], e.getMessage());
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("导出订单完成, 状态: {}, 条数: {}", status, count[0]);
+        return count[0];
+    }
+
+    private static String format(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime().toString().replace('T', ' ') : null;
+    }
+
+    /**
+     * 用户可编辑的文本字段以 = + - @ 开头时加单引号前缀，避免在表格软件中被当作公式执行
+     */
+    private static String text(String value) {
+        if (value == null || value.isEmpty()) {
+            return value;
+        }
+        char first = value.charAt(0);
+        if (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r') {
+            return "'" + value;
+        }
+        return value;
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 订单号生成器（Snowflake）
+ * 64位ID由 41位毫秒时间戳 + 10位机器ID + 12位序号 组成，按时间递增，
+ * 写入订单号唯一索引时集中在索引末尾，不会像随机UUID那样分散到各个页。
+ * 分配过程无锁：上次分配的时间和序号放在一个原子变量中用CAS推进，同一毫秒序号用完时借用下一毫秒。
+ * 时钟回拨不超过配置值时沿用上次的时间继续递增，超过则拒绝生成。
+ * 机器ID可以配置，也可以启动时在缓存中申请一个未被占用的ID并定时续期。
+ * 自动申请的机器ID只在确认占用有效的期间内使用：申请失败、续期失败超过有效期或发现被其他实例占用时
+ * 拒绝生成，直到重新申请成功，避免两个实例使用同一个机器ID生成重复的订单号
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderIdGenerator {
+
+    private final MockRedisService mockRedisService;
+    private final AppConfig appConfig;
+
+    // 时间戳起点 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+
+    // 机器ID占用的有效期，续期间隔为其三分之一
+    private static final long WORKER_LEASE_SECONDS = 60;
+    // 本实例认为占用有效的时长，比缓存中的有效期短，留出时钟误差
+    private static final long WORKER_LEASE_SAFE_MILLIS = (WORKER_LEASE_SECONDS - 10) * 1000;
+
+    // 上次分配的 时间戳 << 12 | 序号
+    private final AtomicLong last = new AtomicLong();
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile int workerId = -1;
+    // 自动申请的机器ID占用的确认有效截止时间
+    private volatile long leaseValidUntil;
+    // 当前时间的毫秒数，测试时可以替换为可控的时钟
+    private volatile LongSupplier clock = System::currentTimeMillis;
+
+    @PostConstruct
+    public void init() {
+        int configured = appConfig.getOrder().getWorkerId();
+        if (configured >= 0) {
+            if (configured > MAX_WORKER_ID) {
+                throw new IllegalArgumentException("订单号机器ID超出范围 0-" + MAX_WORKER_ID + ": " + configured);
+            }
+            workerId = configured;
+            leaseValidUntil = Long.MAX_VALUE;
+        } else {
+            assignWorkerId();
+        }
+        log.info("订单号生成器机器ID: {}", workerId);
+    }
+
+    /**
+     * 生成下一个订单号
+     */
+    public String nextOrderNo() {
+        return String.valueOf(nextId());
+    }
+
+    /**
+     * 生成下一个ID，同一实例内严格递增
+     * @throws IllegalStateException 时钟回拨超过允许值或机器ID占用未确认
+     */
+    public long nextId() {
+        int currentWorkerId = workerId;
+        if (currentWorkerId < 0 || clock.getAsLong() >= leaseValidUntil) {
+            throw new IllegalStateException("订单号机器ID占用未确认，暂停生成订单号");
+        }
+        long maxClockBackward = appConfig.getOrder().getMaxClockBackward();
+        while (true) {
+            long now = clock.getAsLong() - EPOCH;
+            long previous = last.get();
+            long previousTime = previous >>> SEQUENCE_BITS;
+
+            long next;
+            if (now > previousTime) {
+                next = now << SEQUENCE_BITS;
+            } else if (previousTime - now <= maxClockBackward) {
+                // 同一毫秒、序号借用到了下一毫秒、或时钟小幅回拨：在上次的基础上递增，序号溢出时进位到时间戳
+                next = previous + 1;
+            } else {
+                throw new IllegalStateException("系统时钟回拨 " + (previousTime - now) + " 毫秒，暂停生成订单号");
+            }
+
+            if (last.compareAndSet(previous, next)) {
+                long time = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (time << (WORKER_ID_BITS + SEQUENCE_BITS)) | ((long) currentWorkerId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 续期自动申请的机器ID，尚未申请到或占用已经丢失时重新申请
+     * 续期失败时继续使用到确认有效截止时间为止
+     */
+    public void renewWorkerLease() {
+        if (appConfig.getOrder().getWorkerId() >= 0) {
+            return;
+        }
+        int current = workerId;
+        if (current < 0) {
+            assignWorkerId();
+            return;
+        }
+        String key = RedisKeyPrefix.ORDER_WORKER + current;
+        long attemptTime = clock.getAsLong();
+        try {
+            if (mockRedisService.compareAndSet(key, instanceId, instanceId, WORKER_LEASE_SECONDS, TimeUnit.SECONDS)
+                    || mockRedisService.setIfAbsent(key, instanceId, WORKER_LEASE_SECONDS, TimeUnit.SECONDS)) {
+                leaseValidUntil = attemptTime + WORKER_LEASE_SAFE_MILLIS;
+                return;
+            }
+        } catch (Exception e) {
+            log.error("续期订单号机器ID失败，{} 毫秒后暂停生成订单号: workerId={}, error={}",
+                    Math.max(0, leaseValidUntil - clock.getAsLong()), current, e.getMessage());
+            return;
+        }
+        // 已被其他实例占用：立即停止使用，再重新申请
+        workerId = -1;
+        leaseValidUntil = 0;
+        log.warn("订单号机器ID已被其他实例占用，重新申请: {}", current);
+        assignWorkerId();
+    }
+
+    @PreDestroy
+    public void releaseWorkerId() {
+        if (appConfig.getOrder().getWorkerId() >= 0) {
+            return;
+        }
+        try {
+            String key = RedisKeyPrefix.ORDER_WORKER + workerId;
+            if (instanceId.equals(mockRedisService.get(key))) {
+                mockRedisService.delete(key);
+            }
+        } catch (Exception e) {
+            log.warn("释放订单号机器ID失败: workerId={}, error={}", workerId, e.getMessage());
+        }
+    }
+
+    /**
+     * 在缓存中申请一个未被占用的机器ID，失败时保持未分配状态，由续期任务重试
+     */
+    private void assignWorkerId() {
+        // 从实例ID散列出的位置开始依次尝试，避免各实例都从0开始争抢
+        int start = instanceId.hashCode() & MAX_WORKER_ID;
+        try {
+            for (int i = 0; i <= MAX_WORKER_ID; i++) {
+                int candidate = (start + i) & MAX_WORKER_ID;
+                long attemptTime = clock.getAsLong();
+                if (mockRedisService.setIfAbsent(RedisKeyPrefix.ORDER_WORKER + candidate, instanceId,
+                        WORKER_LEASE_SECONDS, TimeUnit.SECONDS)) {
+                    leaseValidUntil = attemptTime + WORKER_LEASE_SAFE_MILLIS;
+                    workerId = candidate;
+                    log.info("申请到订单号机器ID: {}", candidate);
+                    return;
+                }
+            }
+            log.error("没有可用的订单号机器ID，暂停生成订单号");
+        } catch (Exception e) {
+            log.error("从缓存申请订单号机器ID失败，暂停生成订单号直到申请成功: {}", e.getMessage());
+        }
+    }
+}
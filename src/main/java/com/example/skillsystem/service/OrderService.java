@@ -1,10 +1,14 @@
 package com.example.skillsystem.service;
 
+import com.example.skillsystem.dto.CursorPage;
 import com.example.skillsystem.dto.OrderDTO;
+import com.example.skillsystem.dto.OrderSummaryDTO;
+import com.example.skillsystem.dto.OrderTokenStatusDTO;
 import com.example.skillsystem.vo.OrderRequest;
 import com.example.skillsystem.vo.PaymentRequest;
 import com.example.skillsystem.vo.Result;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface OrderService {
@@ -17,6 +21,14 @@ public interface OrderService {
      */
     Result<OrderDTO> createOrder(OrderRequest request);
     
+    /**
+     * 创建多商品订单，每个商品生成一个子订单，所有商品的库存全部锁定成功才下单
+     * 
+     * @param request 订单请求，商品列表在items中
+     * @return 结果，包含同一批次号的各子订单
+     */
+    Result<List<OrderDTO>> createBatchOrder(OrderRequest request);
+    
     /**
      * 支付订单
      * 
@@ -42,7 +54,9 @@ public interface OrderService {
      * 获取所有订单
      * 
      * @return 订单列表
+     * @deprecated 订单量大时一次加载全部订单，请使用 {@link #getOrderPage}
      */
+    @Deprecated
     List<OrderDTO> getAllOrders();
     
     /**
@@ -50,9 +64,22 @@ public interface OrderService {
      * 
      * @param status 订单状态
      * @return 订单列表
+     * @deprecated 订单量大时一次加载全部订单，请使用 {@link #getOrderPage}
      */
+    @Deprecated
     List<OrderDTO> getOrdersByStatus(Integer status);
     
+    /**
+     * 按创建时间倒序分页查询订单摘要
+     * 
+     * @param status 订单状态，为null时查询全部
+     * @param cursorTime 上一页返回的游标时间，第一页为null
+     * @param cursorId 上一页返回的游标ID，第一页为null
+     * @param size 每页数量
+     * @return 一页订单摘要和下一页的游标
+     */
+    CursorPage<OrderSummaryDTO> getOrderPage(Integer status, LocalDateTime cursorTime, Long cursorId, int size);
+    
     /**
      * 根据订单号获取订单
      * 
@@ -60,4 +87,12 @@ public interface OrderService {
      * @return 订单信息
      */
     OrderDTO getOrderByOrderNo(String orderNo);
+    
+    /**
+     * 查询异步下单令牌状态
+     * 
+     * @param token 下单令牌（订单号）
+     * @return 令牌状态，订单已创建时附带订单信息
+     */
+    OrderTokenStatusDTO getOrderTokenStatus(String token);
 } 
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.entity.Product;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 商品二级缓存命中率统计
+ * 数据来自 Hibernate 统计信息，均为本实例启动（或上次重置）以来的累计值
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductCacheStatistics {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * 商品实体缓存和查询缓存的命中、未命中、写入次数及命中率
+     */
+    public Map<String, Object> getStatistics() {
+        Statistics statistics = getHibernateStatistics();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", statistics.isStatisticsEnabled());
+        result.put("entity", regionStatistics(statistics.getDomainDataRegionStatistics(Product.CACHE_REGION)));
+        result.put("query", regionStatistics(statistics.getQueryRegionStatistics(Product.QUERY_CACHE_REGION)));
+
+        Map<String, Object> total = new LinkedHashMap<>();
+        total.put("hitCount", statistics.getSecondLevelCacheHitCount());
+        total.put("missCount", statistics.getSecondLevelCacheMissCount());
+        total.put("putCount", statistics.getSecondLevelCachePutCount());
+        total.put("hitRatio", hitRatio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()));
+        result.put("total", total);
+
+        result.put("since", statistics.getStartTime());
+        return result;
+    }
+
+    /**
+     * 重置统计，从当前开始重新计算命中率
+     */
+    public void reset() {
+        getHibernateStatistics().clear();
+    }
+
+    private Statistics getHibernateStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private Map<String, Object> regionStatistics(CacheRegionStatistics region) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        if (region == null) {
+            // 区域尚未使用过
+            item.put("hitCount", 0L);
+            item.put("missCount", 0L);
+            item.put("putCount", 0L);
+            item.put("hitRatio", 0.0);
+            return item;
+        }
+        item.put("hitCount", region.getHitCount());
+        item.put("missCount", region.getMissCount());
+        item.put("putCount", region.getPutCount());
+        item.put("hitRatio", hitRatio(region.getHitCount(), region.getMissCount()));
+        return item;
+    }
+
+    private double hitRatio(long hits, long misses) {
+        long total = hits + misses;
+        if (total == 0) {
+            return 0.0;
+        }
+        return Math.round(hits * 10000.0 / total) / 100.0;
+    }
+}
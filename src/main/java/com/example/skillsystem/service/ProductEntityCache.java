@@ -0,0 +1,40 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.entity.Product;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 商品二级缓存的逐个失效
+ * 库存更新语句只声明 {@link Product#STOCK_QUERY_SPACE} 查询空间，执行后不会清空整个商品缓存区域，
+ * 由调用方在更新后按商品ID失效对应的缓存条目
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductEntityCache {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * 立即失效商品的缓存条目，当前有事务时在事务提交后再失效一次，
+     * 避免提交前其他会话把修改前的库存重新放回缓存
+     */
+    public void evict(Long productId) {
+        evictNow(productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(productId);
+                }
+            });
+        }
+    }
+
+    private void evictNow(Long productId) {
+        entityManagerFactory.getCache().evict(Product.class, productId);
+    }
+}
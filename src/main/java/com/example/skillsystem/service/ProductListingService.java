@@ -0,0 +1,192 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.dto.ProductSnapshot;
+import com.example.skillsystem.dto.ProductView;
+import com.example.skillsystem.entity.Product;
+import com.example.skillsystem.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品列表物化视图
+ * 首次访问时从数据库加载一次，之后由本实例的商品创建、修改、下架、上架操作在事务提交后增量修补，
+ * 其他实例的修改由定时全量刷新合并进来，列表查询不再逐次访问数据库。
+ * 视图中只保存不可变的商品快照，库存在读取时按页叠加缓存中的实时库存，缓存中没有的按数据库可售库存，
+ * 库存变化不需要重建视图。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductListingService {
+
+    private final ProductRepository productRepository;
+    private final StockCounterService stockCounterService;
+    private final PlatformTransactionManager transactionManager;
+
+    // 按商品ID排序的快照视图，支持按ID的游标分页
+    private final ConcurrentSkipListMap<Long, ProductSnapshot> snapshots = new ConcurrentSkipListMap<>();
+
+    // 视图版本号，每次修补递增
+    private final AtomicLong listingVersion = new AtomicLong(0);
+
+    private volatile boolean loaded = false;
+
+    /**
+     * 获取全部商品
+     *
+     * @param status 商品状态，为null时不过滤
+     */
+    public List<ProductView> list(Integer status) {
+        ensureLoaded();
+        List<ProductSnapshot> matched = new ArrayList<>();
+        for (ProductSnapshot snapshot : snapshots.values()) {
+            if (status == null || status.equals(snapshot.getStatus())) {
+                matched.add(snapshot);
+            }
+        }
+        return withLiveStock(matched);
+    }
+
+    /**
+     * 按商品ID游标分页（keyset）
+     *
+     * @param afterId 上一页最后一个商品ID，为null时从头开始
+     * @param size 每页数量
+     * @param status 商品状态，为null时不过滤
+     */
+    public List<ProductView> page(Long afterId, int size, Integer status) {
+        ensureLoaded();
+        List<ProductSnapshot> matched = new ArrayList<>(size);
+        Iterable<ProductSnapshot> candidates = afterId == null
+                ? snapshots.values()
+                : snapshots.tailMap(afterId, false).values();
+        for (ProductSnapshot snapshot : candidates) {
+            if (matched.size() >= size) {
+                break;
+            }
+            if (status == null || status.equals(snapshot.getStatus())) {
+                matched.add(snapshot);
+            }
+        }
+        return withLiveStock(matched);
+    }
+
+    /**
+     * 修补视图中的单个商品，版本号较旧的快照不会覆盖较新的快照
+     * 在事务中调用时等事务提交后再修补，回滚的修改不会出现在视图中
+     */
+    public void upsertAfterCommit(Product product) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    upsert(product);
+                }
+            });
+        } else {
+            upsert(product);
+        }
+    }
+
+    /**
+     * 从数据库全量刷新视图，合并其他实例的修改并移除已删除的商品
+     * 视图尚未加载时不刷新，等首次访问时再加载
+     */
+    public void refresh() {
+        if (!loaded) {
+            return;
+        }
+        // 只移除加载前就在视图中、数据库里已不存在的商品，加载期间新建的商品保留
+        Set<Long> removed = new HashSet<>(snapshots.keySet());
+        List<Product> products = loadAll();
+        for (Product product : products) {
+            merge(ProductSnapshot.from(product));
+            removed.remove(product.getId());
+        }
+        snapshots.keySet().removeAll(removed);
+        listingVersion.incrementAndGet();
+        log.debug("商品列表视图已刷新, 商品数: {}", products.size());
+    }
+
+    /**
+     * 当前视图版本号
+     */
+    public long getListingVersion() {
+        return listingVersion.get();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            List<Product> products = loadAll();
+            for (Product product : products) {
+                merge(ProductSnapshot.from(product));
+            }
+            listingVersion.incrementAndGet();
+            loaded = true;
+            log.info("商品列表视图加载完成, 商品数: {}", products.size());
+        }
+    }
+
+    private void upsert(Product product) {
+        merge(ProductSnapshot.from(product));
+        listingVersion.incrementAndGet();
+        log.debug("商品列表视图已修补, productId: {}, version: {}", product.getId(), product.getVersion());
+    }
+
+    private List<Product> loadAll() {
+        // 全量加载放在只读事务中，开启读写分离时由从库承担
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> productRepository.findAll());
+    }
+
+    private void merge(ProductSnapshot snapshot) {
+        snapshots.merge(snapshot.getId(), snapshot,
+                (current, next) -> next.getVersion() >= current.getVersion() ? next : current);
+    }
+
+    /**
+     * 按页叠加实时库存：先批量读取缓存，缓存中没有的商品批量查询数据库可售库存，不使用快照中加载时的库存
+     */
+    private List<ProductView> withLiveStock(List<ProductSnapshot> page) {
+        List<Long> ids = new ArrayList<>(page.size());
+        for (ProductSnapshot snapshot : page) {
+            ids.add(snapshot.getId());
+        }
+        Map<Long, Integer> stocks = ids.isEmpty() ? Map.of() : stockCounterService.getStocks(ids);
+        List<Long> uncachedIds = ids.stream().filter(id -> !stocks.containsKey(id)).toList();
+        Map<Long, Integer> dbStocks = new HashMap<>();
+        if (!uncachedIds.isEmpty()) {
+            for (Object[] row : productRepository.findSellableStocksByIds(uncachedIds)) {
+                dbStocks.put((Long) row[0], (Integer) row[1]);
+            }
+        }
+
+        List<ProductView> views = new ArrayList<>(page.size());
+        for (ProductSnapshot snapshot : page) {
+            Integer stock = stocks.get(snapshot.getId());
+            views.add(ProductView.of(snapshot, stock != null ? stock : dbStocks.get(snapshot.getId())));
+        }
+        return views;
+    }
+}
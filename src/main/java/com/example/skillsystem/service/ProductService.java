@@ -1,6 +1,8 @@
 package com.example.skillsystem.service;
 
+import com.example.skillsystem.dto.ProductBatchDTO;
 import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.ProductView;
 import com.example.skillsystem.vo.Result;
 
 import java.util.List;
@@ -11,16 +13,25 @@ public interface ProductService {
      * 获取商品信息
      * 
      * @param id 商品ID
-     * @return 商品DTO
+     * @return 商品读视图（共享的不可变快照 + 实时库存）
      */
-    ProductDTO getProductById(Long id);
+    ProductView getProductById(Long id);
+    
+    /**
+     * 批量获取商品信息
+     * 一次批量读取缓存，未命中的商品一次性查询数据库并批量回填缓存
+     * 
+     * @param ids 商品ID列表
+     * @return 按请求顺序排列的商品及不存在的商品ID
+     */
+    ProductBatchDTO getProductsByIds(List<Long> ids);
     
     /**
      * 获取所有商品列表
      * 
      * @return 商品列表
      */
-    List<ProductDTO> getAllProducts();
+    List<ProductView> getAllProducts();
     
     /**
      * 根据状态获取商品列表
@@ -28,7 +39,17 @@ public interface ProductService {
      * @param status 商品状态（1-上架，0-下架）
      * @return 商品列表
      */
-    List<ProductDTO> getProductsByStatus(Integer status);
+    List<ProductView> getProductsByStatus(Integer status);
+    
+    /**
+     * 按商品ID游标分页获取商品列表
+     * 
+     * @param afterId 上一页最后一个商品ID，为null时从第一页开始
+     * @param size 每页数量
+     * @param status 商品状态，为null时不过滤
+     * @return 商品列表
+     */
+    List<ProductView> getProductPage(Long afterId, int size, Integer status);
     
     /**
      * 创建新商品
@@ -0,0 +1,120 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.entity.Order;
+import com.example.skillsystem.enums.OrderStatus;
+import com.example.skillsystem.repository.OrderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户限购
+ * 每个(商品, 用户)的已购数量保存在缓存中，与库存扣减在同一个原子脚本中检查和累加，
+ * 订单取消或超时时减回，并定期按数据库中的订单校正
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PurchaseLimitService {
+
+    private static final List<Integer> COUNTED_STATUSES =
+            List.of(OrderStatus.WAITING_PAYMENT.getCode(), OrderStatus.PAID.getCode());
+
+    private final MockRedisService mockRedisService;
+    private final OrderRepository orderRepository;
+    private final AppConfig appConfig;
+
+    // 上次校正时缓存计数高于数据库的记录：限购键 -> "缓存值:数据库值"
+    private final Map<String, String> pendingCorrections = new ConcurrentHashMap<>();
+
+    /**
+     * 限购计数的缓存键
+     */
+    public static String limitKey(Long productId, Long userId) {
+        return RedisKeyPrefix.PURCHASE_LIMIT + productId + ":" + userId;
+    }
+
+    /**
+     * 商品的限购数量，未限购返回null
+     */
+    public Integer getLimit(Long productId) {
+        return appConfig.getOrder().getPurchaseLimits().get(productId);
+    }
+
+    /**
+     * 用户再买quantity件是否会超过限购
+     */
+    public boolean isExceeded(Long productId, Long userId, Integer quantity) {
+        Integer limit = getLimit(productId);
+        if (limit == null || userId == null) {
+            return false;
+        }
+        return getPurchased(productId, userId) + quantity > limit;
+    }
+
+    /**
+     * 订单取消或超时后减回用户的已购数量
+     */
+    public void release(Order order) {
+        release(order.getProductId(), order.getUserId(), order.getQuantity());
+    }
+
+    /**
+     * 减回用户的已购数量，用于锁定库存后订单未能创建的补偿
+     */
+    public void release(Long productId, Long userId, Integer quantity) {
+        if (userId == null || getLimit(productId) == null) {
+            return;
+        }
+        mockRedisService.decrUpTo(limitKey(productId, userId), quantity);
+        log.info("释放用户限购数量: productId={}, userId={}, quantity={}", productId, userId, quantity);
+    }
+
+    /**
+     * 按数据库订单校正所有限购商品的计数
+     * 缓存低于数据库时直接修正；缓存高于数据库可能是订单尚未落库，连续两次校正看到相同差异才修正
+     */
+    public void reconcile() {
+        long ttl = appConfig.getProductCacheTtl();
+        for (Long productId : appConfig.getOrder().getPurchaseLimits().keySet()) {
+            List<Object[]> rows = orderRepository.sumQuantityByUser(productId, COUNTED_STATUSES);
+            int corrected = 0;
+            for (Object[] row : rows) {
+                Long userId = ((Number) row[0]).longValue();
+                int dbPurchased = row[1] != null ? ((Number) row[1]).intValue() : 0;
+                String key = limitKey(productId, userId);
+                Object cached = mockRedisService.get(key);
+                int cachedPurchased = cached instanceof Number ? ((Number) cached).intValue() : 0;
+
+                if (cachedPurchased == dbPurchased) {
+                    pendingCorrections.remove(key);
+                    continue;
+                }
+                if (cachedPurchased > dbPurchased) {
+                    String observed = cachedPurchased + ":" + dbPurchased;
+                    if (!observed.equals(pendingCorrections.put(key, observed))) {
+                        continue;
+                    }
+                }
+                if (mockRedisService.compareAndSet(key, cached, dbPurchased, ttl, TimeUnit.SECONDS)) {
+                    pendingCorrections.remove(key);
+                    corrected++;
+                    log.info("校正用户限购计数: productId={}, userId={}, {} -> {}", productId, userId, cachedPurchased, dbPurchased);
+                }
+            }
+            log.info("用户限购计数校正完成: productId={}, 用户数={}, 校正数={}", productId, rows.size(), corrected);
+        }
+    }
+
+    private int getPurchased(Long productId, Long userId) {
+        Object value = mockRedisService.get(limitKey(productId, userId));
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+}
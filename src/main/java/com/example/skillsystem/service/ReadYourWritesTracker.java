@@ -0,0 +1,70 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读己之写
+ * 用户下单、支付、取消后的一小段时间内，该用户的只读查询仍然走主库，
+ * 不会因为从库复制延迟看不到自己刚刚提交的订单。
+ * 当前请求的用户由拦截器从请求头 X-User-Id 或参数 userId 中取得
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadYourWritesTracker {
+
+    private final AppConfig appConfig;
+
+    private static final ThreadLocal<Long> CURRENT_USER = new ThreadLocal<>();
+
+    // 用户ID -> 只读查询走主库的截止时间
+    private final Map<Long, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * 绑定当前请求的用户
+     */
+    public void bind(Long userId) {
+        CURRENT_USER.set(userId);
+    }
+
+    public void clear() {
+        CURRENT_USER.remove();
+    }
+
+    /**
+     * 记录用户的写操作
+     */
+    public void markWritten(Long userId) {
+        int window = appConfig.getReadReplica().getStickyWindow();
+        if (userId == null || window <= 0 || !appConfig.getReadReplica().getEnabled()) {
+            return;
+        }
+        pinnedUntil.put(userId, System.currentTimeMillis() + window);
+    }
+
+    /**
+     * 当前请求的用户最近是否有写操作
+     */
+    public boolean isPinnedToPrimary() {
+        Long userId = CURRENT_USER.get();
+        if (userId == null) {
+            return false;
+        }
+        Long until = pinnedUntil.get(userId);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * 清理已过期的记录
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = pinnedUntil.size();
+        pinnedUntil.values().removeIf(until -> until <= now);
+        return before - pinnedUntil.size();
+    }
+}
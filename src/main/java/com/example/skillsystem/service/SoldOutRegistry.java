@@ -0,0 +1,100 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.mq.SoldOutMessage;
+import com.example.skillsystem.mq.StockMessageProducer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 售罄商品登记表
+ * 库存扣到0时登记，库存增加时清除，状态变化通过MQ广播给其他实例。
+ * 下单入口先查此表，售罄商品直接拒绝，不再访问缓存和数据库。
+ * 登记只是快速拒绝的提示，定时任务会按实际库存校正，避免消息乱序导致商品一直显示售罄
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SoldOutRegistry {
+
+    private final StockMessageProducer stockMessageProducer;
+
+    private final Set<Long> soldOutProducts = ConcurrentHashMap.newKeySet();
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * 商品是否已售罄
+     */
+    public boolean isSoldOut(Long productId) {
+        return soldOutProducts.contains(productId);
+    }
+
+    /**
+     * 当前登记为售罄的商品
+     */
+    public Set<Long> getSoldOutProducts() {
+        return Set.copyOf(soldOutProducts);
+    }
+
+    /**
+     * 登记售罄并广播
+     */
+    public void markSoldOut(Long productId) {
+        if (soldOutProducts.add(productId)) {
+            log.info("商品已售罄, productId: {}", productId);
+            broadcast(productId, true);
+        }
+    }
+
+    /**
+     * 只在本实例登记售罄，用于仅本实例无货的情况（如本地库存租约用完）
+     */
+    public void markSoldOutLocally(Long productId) {
+        soldOutProducts.add(productId);
+    }
+
+    /**
+     * 清除售罄登记并广播
+     */
+    public void clear(Long productId) {
+        if (soldOutProducts.remove(productId)) {
+            log.info("商品恢复可售, productId: {}", productId);
+            broadcast(productId, false);
+        }
+    }
+
+    /**
+     * 只清除本实例的售罄登记
+     */
+    public void clearLocally(Long productId) {
+        soldOutProducts.remove(productId);
+    }
+
+    /**
+     * 应用其他实例广播的售罄状态
+     */
+    public void apply(SoldOutMessage message) {
+        if (instanceId.equals(message.getInstanceId())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(message.getSoldOut())) {
+            soldOutProducts.add(message.getProductId());
+        } else {
+            soldOutProducts.remove(message.getProductId());
+        }
+        log.debug("收到售罄状态广播: {}", message);
+    }
+
+    private void broadcast(Long productId, boolean soldOut) {
+        try {
+            stockMessageProducer.sendSoldOutMessage(new SoldOutMessage(productId, soldOut, instanceId));
+        } catch (Exception e) {
+            log.warn("广播售罄状态失败, productId: {}, error: {}", productId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis库存计数器的统一入口
+ * 普通商品使用单个 product:stock:{id} 计数器；配置为分段的秒杀商品把库存拆到N个子计数器，
+ * 扣减按订单号散列到其中一段，减少对单个键的争用，对外读到的库存始终是各段之和。
+ * 分段商品扣减只返回所扣段的剩余，该段扣完时才读取各段之和，避免每次扣减都读取所有段
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockCounterService {
+
+    /**
+     * 库存未缓存
+     */
+    public static final long NOT_CACHED = -1L;
+
+    /**
+     * 库存不足
+     */
+    public static final long INSUFFICIENT = -2L;
+
+    /**
+     * 该订单已锁定过库存
+     */
+    public static final long ALREADY_LOCKED = -3L;
+
+    /**
+     * 超过用户限购数量
+     */
+    public static final long LIMIT_EXCEEDED = -4L;
+
+    private final MockRedisService mockRedisService;
+    private final SoldOutRegistry soldOutRegistry;
+    private final StockMismatchTracker stockMismatchTracker;
+    private final AppConfig appConfig;
+
+    /**
+     * 是否为分段库存商品
+     */
+    public boolean isSegmented(Long productId) {
+        return appConfig.getStock().getSegmentedProducts().contains(productId);
+    }
+
+    /**
+     * 读取库存总量，未缓存返回null
+     */
+    public Integer getStock(Long productId) {
+        return getStocks(List.of(productId)).get(productId);
+    }
+
+    /**
+     * 批量读取库存总量，一次批量读取所有相关的键，未缓存的商品不在结果中
+     */
+    public Map<Long, Integer> getStocks(List<Long> productIds) {
+        List<String> keys = new ArrayList<>();
+        for (Long productId : productIds) {
+            keys.addAll(stockKeys(productId));
+        }
+        List<Object> values = mockRedisService.multiGet(keys);
+
+        Map<Long, Integer> stocks = new HashMap<>();
+        int index = 0;
+        for (Long productId : productIds) {
+            int keyCount = isSegmented(productId) ? segmentCount() : 1;
+            Integer total = null;
+            for (int i = 0; i < keyCount; i++) {
+                Object value = values.get(index++);
+                if (value instanceof Number) {
+                    total = (total == null ? 0 : total) + ((Number) value).intValue();
+                }
+            }
+            if (total != null) {
+                stocks.put(productId, total);
+            }
+        }
+        return stocks;
+    }
+
+    /**
+     * 库存是否已缓存
+     */
+    public boolean isCached(Long productId) {
+        for (String key : stockKeys(productId)) {
+            if (mockRedisService.exists(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 覆盖写入库存，分段商品按段均分
+     */
+    public void setStock(Long productId, int stock) {
+        long ttl = appConfig.getProductCacheTtl();
+        if (!isSegmented(productId)) {
+            mockRedisService.set(RedisKeyPrefix.PRODUCT_STOCK + productId, stock, ttl, TimeUnit.SECONDS);
+        } else {
+            int[] shares = split(stock, segmentCount());
+            for (int i = 0; i < shares.length; i++) {
+                mockRedisService.set(segmentKey(productId, i), shares[i], ttl, TimeUnit.SECONDS);
+            }
+        }
+        stockMismatchTracker.markDirty(productId);
+        updateSoldOut(productId, stock);
+    }
+
+    /**
+     * 库存未缓存时初始化，已存在时不覆盖正在扣减中的实时库存
+     * @return 是否写入
+     */
+    public boolean initStock(Long productId, int stock) {
+        long ttl = appConfig.getProductCacheTtl();
+        boolean written;
+        if (!isSegmented(productId)) {
+            written = mockRedisService.setIfAbsent(RedisKeyPrefix.PRODUCT_STOCK + productId, stock, ttl, TimeUnit.SECONDS);
+        } else if (isCached(productId)) {
+            written = false;
+        } else {
+            int[] shares = split(stock, segmentCount());
+            Map<String, Object> values = new HashMap<>();
+            for (int i = 0; i < shares.length; i++) {
+                values.put(segmentKey(productId, i), shares[i]);
+            }
+            written = mockRedisService.multiSetIfAbsent(values, ttl, TimeUnit.SECONDS) > 0;
+        }
+        if (written) {
+            stockMismatchTracker.markDirty(productId);
+            updateSoldOut(productId, stock);
+        }
+        return written;
+    }
+
+    /**
+     * 批量初始化库存
+     */
+    public void initStocks(Map<Long, Integer> stocks) {
+        Map<String, Object> plainValues = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : stocks.entrySet()) {
+            if (isSegmented(entry.getKey())) {
+                initStock(entry.getKey(), entry.getValue());
+            } else {
+                plainValues.put(RedisKeyPrefix.PRODUCT_STOCK + entry.getKey(), entry.getValue());
+                stockMismatchTracker.markDirty(entry.getKey());
+            }
+        }
+        if (!plainValues.isEmpty()) {
+            // 批量回填只是缓存预热，不改变售罄登记
+            mockRedisService.multiSetIfAbsent(plainValues, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 删除库存缓存
+     */
+    public void deleteStock(Long productId) {
+        for (String key : stockKeys(productId)) {
+            mockRedisService.delete(key);
+        }
+        stockMismatchTracker.markDirty(productId);
+    }
+
+    /**
+     * 为订单锁定库存，同一订单只扣减一次
+     * @return 扣减后的库存总量，分段商品为所扣段的剩余、该段扣完时为总量；未缓存返回{@link #NOT_CACHED}，
+     *         库存不足返回{@link #INSUFFICIENT}，该订单已锁定返回{@link #ALREADY_LOCKED}
+     */
+    public long lock(Long productId, String orderNo, Integer quantity, long lockTimeout, TimeUnit unit) {
+        String lockKey = RedisKeyPrefix.STOCK_LOCK + orderNo;
+        long result;
+        if (!isSegmented(productId)) {
+            result = mockRedisService.lockStock(RedisKeyPrefix.PRODUCT_STOCK + productId, lockKey, quantity, lockTimeout, unit);
+        } else if (!mockRedisService.setIfAbsent(lockKey, quantity, lockTimeout, unit)) {
+            // 分段商品先占订单标记，扣减失败再释放
+            return ALREADY_LOCKED;
+        } else {
+            result = deductSegments(productId, quantity, orderNo);
+            if (result < 0) {
+                mockRedisService.delete(lockKey);
+            }
+        }
+        if (result >= 0) {
+            stockMismatchTracker.markDirty(productId);
+        }
+        if (result == 0) {
+            soldOutRegistry.markSoldOut(productId);
+        }
+        return result;
+    }
+
+    /**
+     * 一次锁定多个普通商品的库存，全部成功或全部不变；调用方按商品ID升序传入，各商品不能是分段商品
+     * @return 成功时为各商品扣减后的库存；失败时为失败码和失败的位置两个元素，失败码与{@link #lock}一致
+     */
+    public List<Long> lockAll(List<Long> productIds, List<String> orderNos, List<Integer> quantities,
+                              long lockTimeout, TimeUnit unit) {
+        List<String> stockKeys = new ArrayList<>(productIds.size());
+        List<String> lockKeys = new ArrayList<>(orderNos.size());
+        for (int i = 0; i < productIds.size(); i++) {
+            stockKeys.add(RedisKeyPrefix.PRODUCT_STOCK + productIds.get(i));
+            lockKeys.add(RedisKeyPrefix.STOCK_LOCK + orderNos.get(i));
+        }
+        List<Long> results = mockRedisService.lockStockMulti(stockKeys, lockKeys, quantities, lockTimeout, unit);
+        if (results.get(0) >= 0) {
+            for (int i = 0; i < results.size(); i++) {
+                stockMismatchTracker.markDirty(productIds.get(i));
+                if (results.get(i) == 0) {
+                    soldOutRegistry.markSoldOut(productIds.get(i));
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 为订单锁定库存并累加用户的已购数量，限购检查与库存扣减同时成功或同时失败
+     * @return 同{@link #lock}，超过限购返回{@link #LIMIT_EXCEEDED}
+     */
+    public long lockWithLimit(Long productId, String orderNo, Integer quantity, Long userId, Integer limit,
+                              long lockTimeout, TimeUnit unit) {
+        String limitKey = PurchaseLimitService.limitKey(productId, userId);
+        long limitTimeout = unit.convert(appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+        if (isSegmented(productId)) {
+            // 分段商品无法与各段放进同一个脚本，先占限购额度，锁定失败再退回
+            if (mockRedisService.incrWithinLimit(limitKey, quantity, limit, limitTimeout, unit) == LIMIT_EXCEEDED) {
+                return LIMIT_EXCEEDED;
+            }
+            long result = lock(productId, orderNo, quantity, lockTimeout, unit);
+            if (result < 0) {
+                mockRedisService.decrUpTo(limitKey, quantity);
+            }
+            return result;
+        }
+
+        long result = mockRedisService.lockStockWithLimit(RedisKeyPrefix.PRODUCT_STOCK + productId,
+                RedisKeyPrefix.STOCK_LOCK + orderNo, limitKey, quantity, limit, lockTimeout, limitTimeout, unit);
+        if (result >= 0) {
+            stockMismatchTracker.markDirty(productId);
+        }
+        if (result == 0) {
+            soldOutRegistry.markSoldOut(productId);
+        }
+        return result;
+    }
+
+    /**
+     * 直接扣减库存
+     * @param routingKey 分段商品按此散列选择扣减的段，通常为订单号，为空时随机选择
+     * @return 扣减后的库存总量，分段商品为所扣段的剩余、该段扣完时为总量；
+     *         未缓存返回{@link #NOT_CACHED}，库存不足返回{@link #INSUFFICIENT}
+     */
+    public long deduct(Long productId, Integer quantity, String routingKey) {
+        if (!isSegmented(productId)) {
+            // decrBy 返回-1表示库存不足，-2表示键不存在
+            Long result = mockRedisService.decrBy(RedisKeyPrefix.PRODUCT_STOCK + productId, quantity);
+            if (result == -1L) {
+                return INSUFFICIENT;
+            }
+            if (result == -2L) {
+                return NOT_CACHED;
+            }
+            stockMismatchTracker.markDirty(productId);
+            if (result == 0) {
+                soldOutRegistry.markSoldOut(productId);
+            }
+            return result;
+        }
+        long result = deductSegments(productId, quantity, routingKey);
+        if (result >= 0) {
+            stockMismatchTracker.markDirty(productId);
+        }
+        if (result == 0) {
+            soldOutRegistry.markSoldOut(productId);
+        }
+        return result;
+    }
+
+    /**
+     * 把{@link #lock}、{@link #deduct}成功时的返回值换算为商品的库存总量，用于库存日志
+     * 普通商品原样返回；分段商品的返回值只是所扣段的剩余，读取各段之和
+     */
+    public long totalAfter(Long productId, long result) {
+        if (result < 0 || !isSegmented(productId)) {
+            return result;
+        }
+        Integer total = getStock(productId);
+        return total != null ? total : result;
+    }
+
+    /**
+     * 取走至多quantity的库存，不足时取走全部剩余，用于实例预留库存租约
+     * @return 实际取走的数量；未缓存返回{@link #NOT_CACHED}
+     */
+    public long take(Long productId, Integer quantity) {
+        List<String> keys = stockKeys(productId);
+        int start = keys.size() > 1 ? homeSegment(null) : 0;
+        long taken = 0;
+        for (int i = 0; i < keys.size() && taken < quantity; i++) {
+            taken += mockRedisService.decrUpTo(keys.get((start + i) % keys.size()), (int) (quantity - taken));
+        }
+        if (taken == 0 && !isCached(productId)) {
+            return NOT_CACHED;
+        }
+        if (taken > 0) {
+            stockMismatchTracker.markDirty(productId);
+        }
+        return taken;
+    }
+
+    /**
+     * 归还库存，分段商品加回routingKey对应的段
+     * @param routingKey 分段商品按此散列选择归还的段，通常为订单号，为空时随机选择
+     * @return 增加后的库存总量
+     */
+    public long increase(Long productId, Integer quantity, String routingKey) {
+        long total;
+        if (!isSegmented(productId)) {
+            total = mockRedisService.incrBy(RedisKeyPrefix.PRODUCT_STOCK + productId, quantity);
+        } else {
+            mockRedisService.incrBy(segmentKey(productId, homeSegment(routingKey)), quantity);
+            Integer stock = getStock(productId);
+            total = stock != null ? stock : quantity;
+        }
+        stockMismatchTracker.markDirty(productId);
+        updateSoldOut(productId, total);
+        return total;
+    }
+
+    /**
+     * 在各段之间重新均分库存
+     * 每次从一段转到另一段都在同一个脚本中完成，转移过程中各段之和不变，
+     * 并发扣减不会因为库存暂时不在任何一段而失败
+     */
+    public void rebalance(Long productId) {
+        int count = segmentCount();
+        List<String> keys = segmentKeys(productId);
+        List<Object> values = mockRedisService.multiGet(keys);
+
+        int[] current = new int[count];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            Object value = values.get(i);
+            if (!(value instanceof Number)) {
+                return;
+            }
+            current[i] = ((Number) value).intValue();
+            total += current[i];
+        }
+
+        // 多余的段与不足的段两两配对转移；期间有并发扣减时源段剩余不足，只转移实际剩余的部分
+        int[] target = split(total, count);
+        int source = 0;
+        int sink = 0;
+        while (true) {
+            while (source < count && current[source] <= target[source]) {
+                source++;
+            }
+            while (sink < count && current[sink] >= target[sink]) {
+                sink++;
+            }
+            if (source >= count || sink >= count) {
+                break;
+            }
+            int share = Math.min(current[source] - target[source], target[sink] - current[sink]);
+            mockRedisService.moveUpTo(keys.get(source), keys.get(sink), share);
+            current[source] -= share;
+            current[sink] += share;
+        }
+        log.debug("分段库存再平衡完成, productId: {}, total: {}", productId, total);
+    }
+
+    /**
+     * 分段扣减：先扣routingKey对应的段，不足时依次尝试相邻段，都不够时跨段凑齐
+     * @return 所扣段的剩余库存，该段扣完时为各段之和
+     */
+    private long deductSegments(Long productId, Integer quantity, String routingKey) {
+        int count = segmentCount();
+        int home = homeSegment(routingKey);
+        List<String> keys = segmentKeys(productId);
+
+        boolean cached = false;
+        for (int i = 0; i < count; i++) {
+            Long result = mockRedisService.decrBy(keys.get((home + i) % count), quantity);
+            if (result > 0) {
+                return result;
+            }
+            if (result == 0) {
+                // 该段扣完时才读取总量，决定是否登记售罄
+                Integer total = getStock(productId);
+                return total != null ? total : 0;
+            }
+            if (result == -1L) {
+                cached = true;
+            }
+        }
+        if (!cached) {
+            return NOT_CACHED;
+        }
+
+        // 单段都不够，在同一个脚本中检查各段之和并跨段扣减，不会出现并发凑数时互相取走后都失败
+        List<String> ordered = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ordered.add(keys.get((home + i) % count));
+        }
+        long result = mockRedisService.decrAcross(ordered, quantity);
+        if (result == -1L) {
+            return INSUFFICIENT;
+        }
+        if (result == -2L) {
+            return NOT_CACHED;
+        }
+        return result;
+    }
+
+    private void updateSoldOut(Long productId, long stock) {
+        if (stock > 0) {
+            soldOutRegistry.clear(productId);
+        } else {
+            soldOutRegistry.markSoldOut(productId);
+        }
+    }
+
+    private List<String> stockKeys(Long productId) {
+        if (!isSegmented(productId)) {
+            return List.of(RedisKeyPrefix.PRODUCT_STOCK + productId);
+        }
+        return segmentKeys(productId);
+    }
+
+    private List<String> segmentKeys(Long productId) {
+        int count = segmentCount();
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(segmentKey(productId, i));
+        }
+        return keys;
+    }
+
+    private String segmentKey(Long productId, int segment) {
+        return RedisKeyPrefix.PRODUCT_STOCK + productId + RedisKeyPrefix.STOCK_SEGMENT + segment;
+    }
+
+    private int segmentCount() {
+        return Math.max(1, appConfig.getStock().getSegmentCount());
+    }
+
+    /**
+     * 同一订单的扣减和归还落在同一段；线程池线程数少于段数或线程ID分布不均时，
+     * 按线程散列会让部分段长期空闲，订单号分布均匀
+     */
+    private int homeSegment(String routingKey) {
+        if (routingKey == null) {
+            return ThreadLocalRandom.current().nextInt(segmentCount());
+        }
+        return Math.floorMod(routingKey.hashCode(), segmentCount());
+    }
+
+    private static int[] split(int stock, int count) {
+        int[] shares = new int[count];
+        for (int i = 0; i < count; i++) {
+            shares[i] = stock / count + (i < stock % count ? 1 : 0);
+        }
+        return shares;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 实例库存租约
+ * 租约商品由本实例一次从共享库存预留一批，下单在本地原子计数器上扣减，共享库存每批只访问一次。
+ * 租约大小按本地销售速度调整，超时或停机时未用完的库存归还共享库存，
+ * 因此售罄判断的误差不超过各实例持有的一个租约
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockLeaseService {
+
+    private final StockCounterService stockCounterService;
+    private final MockRedisService mockRedisService;
+    private final SoldOutRegistry soldOutRegistry;
+    private final AppConfig appConfig;
+
+    // 商品ID -> 本实例持有的租约
+    private final Map<Long, Lease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 是否为租约商品
+     */
+    public boolean isLeased(Long productId) {
+        return appConfig.getStock().getLeasedProducts().contains(productId);
+    }
+
+    /**
+     * 从本地租约为订单锁定库存，租约不足时续租一次
+     * 扣减租约前先占共享的订单锁定标记，同一订单重试到其他实例时也只扣减一次
+     * @return 估算的剩余库存总量（共享库存加本地租约）；返回码与{@link StockCounterService#lock}一致
+     */
+    public long lock(Long productId, String orderNo, Integer quantity, long lockTimeout, TimeUnit unit) {
+        String lockKey = RedisKeyPrefix.STOCK_LOCK + orderNo;
+        if (!mockRedisService.setIfAbsent(lockKey, quantity, lockTimeout, unit)) {
+            return StockCounterService.ALREADY_LOCKED;
+        }
+
+        Lease lease = leases.computeIfAbsent(productId, id -> new Lease(appConfig.getStock().getLeaseSize()));
+        long result = tryDeduct(lease, quantity);
+        if (result == StockCounterService.INSUFFICIENT) {
+            result = renewAndDeduct(productId, lease, quantity);
+        }
+        if (result < 0) {
+            mockRedisService.delete(lockKey);
+        }
+        return result;
+    }
+
+    /**
+     * 本地租约中剩余的库存
+     */
+    public int getLeasedStock(Long productId) {
+        Lease lease = leases.get(productId);
+        return lease != null ? lease.remaining.get() : 0;
+    }
+
+    /**
+     * 丢弃本地租约，不归还共享库存；用于库存被管理端重置之后
+     */
+    public void discard(Long productId) {
+        Lease lease = leases.remove(productId);
+        if (lease != null) {
+            lease.remaining.set(0);
+            log.info("丢弃库存租约, productId: {}", productId);
+        }
+    }
+
+    /**
+     * 归还超时未用完的租约
+     */
+    public void returnExpiredLeases() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (lease.renewedAt > 0 && now - lease.renewedAt > appConfig.getStock().getLeaseTimeout()) {
+                returnLease(entry.getKey(), lease);
+            }
+        }
+    }
+
+    /**
+     * 停机时归还所有租约
+     */
+    @PreDestroy
+    public void returnAllLeases() {
+        leases.forEach(this::returnLease);
+    }
+
+    private long tryDeduct(Lease lease, Integer quantity) {
+        while (true) {
+            int current = lease.remaining.get();
+            if (current < quantity) {
+                return StockCounterService.INSUFFICIENT;
+            }
+            if (lease.remaining.compareAndSet(current, current - quantity)) {
+                lease.sold.addAndGet(quantity);
+                return lease.sharedRemaining + current - quantity;
+            }
+        }
+    }
+
+    private long renewAndDeduct(Long productId, Lease lease, Integer quantity) {
+        synchronized (lease) {
+            // 其他线程可能已经续租
+            long result = tryDeduct(lease, quantity);
+            if (result != StockCounterService.INSUFFICIENT) {
+                return result;
+            }
+
+            int size = Math.max(nextLeaseSize(lease), quantity);
+            long taken = stockCounterService.take(productId, size);
+            if (taken == StockCounterService.NOT_CACHED) {
+                return StockCounterService.NOT_CACHED;
+            }
+            if (taken > 0) {
+                lease.remaining.addAndGet((int) taken);
+            } else if (lease.remaining.get() == 0) {
+                // 共享库存已取空，其他实例可能还有租约，只在本实例登记售罄
+                soldOutRegistry.markSoldOutLocally(productId);
+            }
+            lease.size = size;
+            lease.renewedAt = System.currentTimeMillis();
+            Integer shared = stockCounterService.getStock(productId);
+            lease.sharedRemaining = shared != null ? shared : 0;
+            log.info("续租库存, productId: {}, 申请: {}, 取得: {}, 共享库存剩余: {}", productId, size, taken, lease.sharedRemaining);
+
+            return tryDeduct(lease, quantity);
+        }
+    }
+
+    /**
+     * 按上一个租约期间的销售速度计算下一个租约大小，目标是一个租约大约覆盖半个租约有效期
+     */
+    private int nextLeaseSize(Lease lease) {
+        AppConfig.Stock config = appConfig.getStock();
+        if (lease.renewedAt == 0) {
+            return lease.size;
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - lease.renewedAt);
+        long sold = lease.sold.getAndSet(0);
+        long expected = sold * config.getLeaseTimeout() / 2 / elapsed;
+        return (int) Math.max(config.getLeaseMinSize(), Math.min(config.getLeaseMaxSize(), Math.max(expected, lease.size / 2)));
+    }
+
+    private void returnLease(Long productId, Lease lease) {
+        synchronized (lease) {
+            int unused = lease.remaining.getAndSet(0);
+            lease.renewedAt = System.currentTimeMillis();
+            if (unused > 0) {
+                stockCounterService.increase(productId, unused, null);
+                log.info("归还库存租约, productId: {}, 数量: {}", productId, unused);
+            }
+        }
+    }
+
+    /**
+     * 本实例持有的租约
+     */
+    private static class Lease {
+        private final AtomicInteger remaining = new AtomicInteger(0);
+        private final AtomicLong sold = new AtomicLong(0);
+        private volatile int size;
+        // 0表示尚未续租过
+        private volatile long renewedAt;
+        private volatile long sharedRemaining;
+
+        private Lease(int size) {
+            this.size = size;
+        }
+    }
+}
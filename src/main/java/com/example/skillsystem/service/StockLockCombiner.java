@@ -0,0 +1,158 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+/**
+ * 同一商品的库存锁定请求合并器（flat combining）
+ * 并发请求先进入商品的等待队列，抢到合并权的线程把队列中的请求作为一批，
+ * 用一次原子脚本按到达顺序逐个批准或拒绝，再把批准的锁定记录一次提交批量写入，其余线程只等待结果。
+ * 逐个判断库存，不会超卖
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockLockCombiner {
+
+    private final MockRedisService mockRedisService;
+    private final StockLockRecordWriter stockLockRecordWriter;
+    private final SoldOutRegistry soldOutRegistry;
+    private final AppConfig appConfig;
+
+    // 等待线程的最长休眠时间，合并线程完成后会主动唤醒
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Map<Long, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * 锁定库存，返回值含义与{@link StockCounterService#lock}一致
+     * @param recordBuilder 按扣减后的库存生成锁定记录，锁定成功时由合并线程随整批一起提交
+     */
+    public long lock(Long productId, String orderNo, Integer quantity, long lockTimeout, TimeUnit unit,
+                     LongFunction<StockLockRecordWriter.PendingRecord> recordBuilder) {
+        Slot slot = slots.computeIfAbsent(productId, id -> new Slot());
+        Request request = new Request(orderNo, quantity, recordBuilder, Thread.currentThread());
+        slot.queue.add(request);
+
+        while (!request.done) {
+            if (slot.combining.compareAndSet(false, true)) {
+                try {
+                    combine(productId, slot, lockTimeout, unit);
+                } finally {
+                    slot.combining.set(false);
+                }
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+        }
+
+        if (request.error != null) {
+            throw new IllegalStateException("批量锁定库存失败: " + request.error.getMessage(), request.error);
+        }
+        return request.result;
+    }
+
+    private void combine(Long productId, Slot slot, long lockTimeout, TimeUnit unit) {
+        int maxBatch = appConfig.getStock().getCombineMaxBatch();
+
+        // 上一批有多个请求说明是热点商品，稍等片刻让更多请求进入同一批
+        if (slot.lastBatchSize > 1 && slot.queue.size() < maxBatch) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(appConfig.getStock().getCombineWindowMicros()));
+        }
+
+        List<Request> batch = new ArrayList<>();
+        Request next;
+        while (batch.size() < maxBatch && (next = slot.queue.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        slot.lastBatchSize = batch.size();
+
+        List<String> lockKeys = new ArrayList<>(batch.size());
+        List<Integer> quantities = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            lockKeys.add(RedisKeyPrefix.STOCK_LOCK + request.orderNo);
+            quantities.add(request.quantity);
+        }
+
+        try {
+            List<Long> results = mockRedisService.lockStockBatch(RedisKeyPrefix.PRODUCT_STOCK + productId,
+                    lockKeys, quantities, lockTimeout, unit);
+
+            List<StockLockRecordWriter.PendingRecord> records = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Request request = batch.get(i);
+                request.result = results.get(i);
+                if (request.result >= 0) {
+                    records.add(request.recordBuilder.apply(request.result));
+                }
+            }
+            if (results.contains(0L)) {
+                soldOutRegistry.markSoldOut(productId);
+            }
+            // 先提交记录再返回结果，调用方随后的支付或回滚能看到待写入的记录
+            if (!records.isEmpty()) {
+                stockLockRecordWriter.submitAll(records);
+            }
+            if (batch.size() > 1) {
+                log.debug("合并锁定库存, productId: {}, 请求数: {}, 成功: {}", productId, batch.size(), records.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("合并锁定库存失败, productId: {}, 请求数: {}", productId, batch.size(), e);
+            for (Request request : batch) {
+                request.error = e;
+            }
+        } finally {
+            for (Request request : batch) {
+                request.done = true;
+                LockSupport.unpark(request.thread);
+            }
+        }
+    }
+
+    /**
+     * 单个商品的等待队列
+     */
+    private static class Slot {
+        private final Queue<Request> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean combining = new AtomicBoolean(false);
+        private volatile int lastBatchSize;
+    }
+
+    /**
+     * 等待合并的锁定请求
+     */
+    private static class Request {
+        private final String orderNo;
+        private final Integer quantity;
+        private final LongFunction<StockLockRecordWriter.PendingRecord> recordBuilder;
+        private final Thread thread;
+        private long result;
+        private RuntimeException error;
+        private volatile boolean done;
+
+        private Request(String orderNo, Integer quantity,
+                        LongFunction<StockLockRecordWriter.PendingRecord> recordBuilder, Thread thread) {
+            this.orderNo = orderNo;
+            this.quantity = quantity;
+            this.recordBuilder = recordBuilder;
+            this.thread = thread;
+        }
+    }
+}
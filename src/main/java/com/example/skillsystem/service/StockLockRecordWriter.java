@@ -0,0 +1,308 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.entity.StockLock;
+import com.example.skillsystem.entity.StockLog;
+import com.example.skillsystem.repository.StockLockRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 库存锁定记录异步写入器
+ * 下单锁定库存只等待缓存中的原子操作，锁定记录和库存日志由后台线程批量写入数据库。
+ * 队列满时退化为调用方同步写入。
+ * 缓存中的库存已经扣减，锁定记录不能丢：写入失败的记录追加到备用文件，由定时任务重新导入，
+ * 导入前记录一直处于等待写入状态。锁定记录落库后过期清理才能退回这部分库存
+ */
+@Slf4j
+@Service
+public class StockLockRecordWriter {
+
+    private final StockLockRepository stockLockRepository;
+    private final StockLogJournal stockLogJournal;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final FallbackFile fallbackFile;
+    private final int batchSize;
+
+    private final BlockingQueue<PendingRecord> queue;
+    // 已提交但尚未写入数据库的记录，按订单号索引
+    private final ConcurrentHashMap<String, PendingRecord> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private static final long AWAIT_TIMEOUT_MS = 5000;
+
+    private volatile boolean running = true;
+    private Thread writerThread;
+
+    public StockLockRecordWriter(StockLockRepository stockLockRepository,
+                                 StockLogJournal stockLogJournal,
+                                 ObjectMapper objectMapper,
+                                 PlatformTransactionManager transactionManager,
+                                 AppConfig appConfig) {
+        this.stockLockRepository = stockLockRepository;
+        this.stockLogJournal = stockLogJournal;
+        this.objectMapper = objectMapper;
+        // 队列满时在调用方线程写入，锁定记录不能随调用方的事务回滚
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.fallbackFile = new FallbackFile("库存锁定记录", appConfig.getStock().getLockWriterFallbackFile());
+        this.batchSize = appConfig.getStock().getLockWriterBatchSize();
+        this.queue = new ArrayBlockingQueue<>(appConfig.getStock().getLockWriterQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::runLoop, "stock-lock-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 提交一条锁定记录及其库存日志
+     */
+    public void submit(StockLock stockLock, StockLog stockLog) {
+        submitAll(List.of(new PendingRecord(stockLock, stockLog)));
+    }
+
+    /**
+     * 批量提交锁定记录，同一批记录会在同一次批量插入中写入
+     */
+    public void submitAll(List<PendingRecord> records) {
+        List<PendingRecord> overflow = new ArrayList<>();
+        for (PendingRecord record : records) {
+            pending.put(record.stockLock.getOrderNo(), record);
+            if (!queue.offer(record)) {
+                overflow.add(record);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            log.warn("库存锁定记录队列已满，同步写入 {} 条记录", overflow.size());
+            write(overflow);
+        }
+    }
+
+    /**
+     * 订单的锁定记录是否仍在等待写入
+     */
+    public boolean isPending(String orderNo) {
+        return pending.containsKey(orderNo);
+    }
+
+    /**
+     * 等待指定订单的锁定记录写入数据库
+     * 回滚或支付时若锁定记录尚未落库，先调用此方法。记录由写入线程在自己的事务中写入，
+     * 这里只等待该订单的写入结果，不在调用方的事务中写入其他订单的记录
+     * @return 锁定记录是否已写入数据库，超时或记录在备用文件中等待导入时返回false
+     */
+    public boolean awaitPersisted(String orderNo) {
+        PendingRecord record = pending.get(orderNo);
+        if (record == null) {
+            return true;
+        }
+        try {
+            record.persisted.get(AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            log.warn("等待库存锁定记录写入超时: orderNo={}", orderNo);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 把备用文件中的锁定记录重新写入数据库
+     * @return 导入的记录条数
+     */
+    public int replayFallback() {
+        return fallbackFile.replay(batchSize, this::parse, records -> {
+            for (PendingRecord record : records) {
+                insert(record);
+                completed(record.stockLock.getOrderNo());
+            }
+        });
+    }
+
+    /**
+     * 立即把队列中的记录写入数据库
+     */
+    public void flush() {
+        List<PendingRecord> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        flush();
+        log.info("库存锁定记录写入器已停止");
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                PendingRecord first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<PendingRecord> batch = new ArrayList<>(batchSize);
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("库存锁定记录写入线程异常", e);
+            }
+        }
+    }
+
+    private void write(List<PendingRecord> batch) {
+        writeLock.lock();
+        try {
+            List<StockLock> locks = new ArrayList<>(batch.size());
+            List<StockLog> logs = new ArrayList<>(batch.size());
+            for (PendingRecord record : batch) {
+                locks.add(record.stockLock);
+                if (record.stockLog != null) {
+                    logs.add(record.stockLog);
+                }
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> stockLockRepository.saveAll(locks));
+                // 锁定记录写入成功后日志交给库存日志写入器批量插入
+                stockLogJournal.appendAll(logs);
+                for (PendingRecord record : batch) {
+                    completed(record);
+                }
+                log.debug("批量写入库存锁定记录 {} 条", locks.size());
+            } catch (Exception e) {
+                // 批量写入失败时逐条写入，避免一条异常记录拖累整批
+                log.error("批量写入库存锁定记录失败，改为逐条写入: {}", e.getMessage());
+                for (PendingRecord record : batch) {
+                    writeOne(record);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeOne(PendingRecord record) {
+        try {
+            // 整批失败时部分实体可能已分配ID，重新按新记录插入
+            record.stockLock.setId(null);
+            insert(record);
+            completed(record);
+        } catch (Exception e) {
+            // 记录保持等待写入状态，由定时任务从备用文件导入
+            log.error("写入库存锁定记录失败，写入备用文件: orderNo={}, error={}",
+                    record.stockLock.getOrderNo(), e.getMessage());
+            writeFallback(record);
+        }
+    }
+
+    /**
+     * 插入一条锁定记录，订单号已存在说明之前的写入已经成功
+     */
+    private void insert(PendingRecord record) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> stockLockRepository.save(record.stockLock));
+        } catch (DataIntegrityViolationException e) {
+            if (stockLockRepository.findByOrderNo(record.stockLock.getOrderNo()).isEmpty()) {
+                throw e;
+            }
+            log.info("库存锁定记录已存在: orderNo={}", record.stockLock.getOrderNo());
+            return;
+        }
+        if (record.stockLog != null) {
+            stockLogJournal.append(record.stockLog);
+        }
+    }
+
+    private void completed(PendingRecord record) {
+        pending.remove(record.stockLock.getOrderNo(), record);
+        record.persisted.complete(null);
+    }
+
+    private void completed(String orderNo) {
+        PendingRecord record = pending.remove(orderNo);
+        if (record != null) {
+            record.persisted.complete(null);
+        }
+    }
+
+    private void writeFallback(PendingRecord record) {
+        try {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.set("stockLock", objectMapper.valueToTree(record.stockLock));
+            if (record.stockLog != null) {
+                node.set("stockLog", objectMapper.valueToTree(record.stockLog));
+            }
+            if (fallbackFile.append(List.of(objectMapper.writeValueAsString(node)))) {
+                return;
+            }
+        } catch (Exception e) {
+            log.error("序列化库存锁定记录失败: orderNo={}, error={}", record.stockLock.getOrderNo(), e.getMessage());
+        }
+        // 备用文件也无法写入时放回队列，由写入线程继续重试
+        if (!queue.offer(record)) {
+            log.error("库存锁定记录丢失，需人工核对库存: orderNo={}, productId={}, quantity={}",
+                    record.stockLock.getOrderNo(), record.stockLock.getProductId(), record.stockLock.getLockedQuantity());
+            completed(record);
+        }
+    }
+
+    private PendingRecord parse(String line) throws Exception {
+        JsonNode node = objectMapper.readTree(line);
+        StockLock stockLock = objectMapper.treeToValue(node.get("stockLock"), StockLock.class);
+        StockLog stockLog = node.hasNonNull("stockLog") ? objectMapper.treeToValue(node.get("stockLog"), StockLog.class) : null;
+        stockLock.setId(null);
+        return new PendingRecord(stockLock, stockLog);
+    }
+
+    /**
+     * 待写入的锁定记录
+     */
+    public static class PendingRecord {
+        private final StockLock stockLock;
+        private final StockLog stockLog;
+        // 记录写入数据库后完成
+        private final CompletableFuture<Void> persisted = new CompletableFuture<>();
+
+        public PendingRecord(StockLock stockLock, StockLog stockLog) {
+            this.stockLock = stockLock;
+            this.stockLog = stockLog;
+        }
+    }
+}
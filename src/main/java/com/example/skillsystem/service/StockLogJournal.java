@@ -0,0 +1,293 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.entity.StockLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 库存日志异步写入器
+ * 库存操作只把日志放入无锁环形缓冲区，后台线程批量取出后用一条多行INSERT写入数据库，
+ * 审计日志不再让每次库存操作多一次数据库往返。
+ * 在事务中追加的日志等事务提交后才进入缓冲区，业务回滚时不留下日志。
+ * 数据库写入失败或缓冲区满时日志追加到备用文件，由定时任务在数据库恢复后重新导入，
+ * 无法导入的行隔离到 .bad 文件，不阻塞后面的日志
+ */
+@Slf4j
+@Service
+public class StockLogJournal {
+
+    private static final String INSERT_SQL = "INSERT INTO stock_log (product_id, before_stock, after_stock, change_amount, "
+            + "operation_type, order_id, create_time, synced, remark) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 缓冲区为空时写入线程的休眠时间
+    private static final long IDLE_SLEEP_MS = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StockLogStatistics stockLogStatistics;
+    private final StockMismatchTracker stockMismatchTracker;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final FallbackFile fallbackFile;
+
+    private final RingBuffer buffer;
+    // 保证同一时间只有一个线程从缓冲区取日志
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    private volatile boolean running = true;
+    private Thread writerThread;
+
+    public StockLogJournal(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           StockLogStatistics stockLogStatistics, StockMismatchTracker stockMismatchTracker,
+                           ObjectMapper objectMapper, AppConfig appConfig) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stockLogStatistics = stockLogStatistics;
+        this.stockMismatchTracker = stockMismatchTracker;
+        this.objectMapper = objectMapper;
+        this.batchSize = appConfig.getStock().getJournalBatchSize();
+        this.fallbackFile = new FallbackFile("库存日志", appConfig.getStock().getJournalFallbackFile());
+        this.buffer = new RingBuffer(appConfig.getStock().getJournalCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        writerThread = new Thread(this::runLoop, "stock-log-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 追加一条库存日志，当前有事务时在事务提交后追加
+     */
+    public void append(StockLog stockLog) {
+        appendAll(List.of(stockLog));
+    }
+
+    /**
+     * 追加多条库存日志，当前有事务时在事务提交后追加
+     */
+    public void appendAll(List<StockLog> stockLogs) {
+        if (stockLogs.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(stockLogs);
+                }
+            });
+        } else {
+            enqueue(stockLogs);
+        }
+    }
+
+    /**
+     * 立即把缓冲区中的日志写入数据库
+     */
+    public void flush() {
+        drainLock.lock();
+        try {
+            List<StockLog> batch = new ArrayList<>(batchSize);
+            while (buffer.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * 缓冲区中等待写入的日志数量
+     */
+    public long getPendingCount() {
+        return buffer.size();
+    }
+
+    /**
+     * 把备用文件中的日志重新导入数据库
+     * @return 导入的日志条数
+     */
+    public int replayFallback() {
+        return fallbackFile.replay(batchSize, line -> objectMapper.readValue(line, StockLog.class), this::insert);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+        }
+        flush();
+        log.info("库存日志写入器已停止");
+    }
+
+    private void enqueue(List<StockLog> stockLogs) {
+        List<StockLog> overflow = null;
+        for (StockLog stockLog : stockLogs) {
+            // 每次库存变化都会记日志，日志进入缓冲区时相关事务已经提交
+            stockMismatchTracker.markDirty(stockLog.getProductId());
+            if (!buffer.offer(stockLog)) {
+                if (overflow == null) {
+                    overflow = new ArrayList<>();
+                }
+                overflow.add(stockLog);
+            }
+        }
+        if (overflow != null) {
+            // 数据库跟不上时不阻塞业务线程，直接写备用文件
+            log.warn("库存日志缓冲区已满，{} 条日志写入备用文件", overflow.size());
+            writeFallback(overflow);
+        }
+    }
+
+    private void runLoop() {
+        List<StockLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                int drained;
+                drainLock.lock();
+                try {
+                    drained = buffer.drainTo(batch, batchSize);
+                    if (drained > 0) {
+                        write(batch);
+                    }
+                } finally {
+                    batch.clear();
+                    drainLock.unlock();
+                }
+                if (drained == 0) {
+                    Thread.sleep(IDLE_SLEEP_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("库存日志写入线程异常", e);
+            }
+        }
+    }
+
+    private void write(List<StockLog> batch) {
+        try {
+            insert(batch);
+            log.debug("批量写入库存日志 {} 条", batch.size());
+        } catch (Exception e) {
+            log.error("批量写入库存日志失败，{} 条日志写入备用文件: {}", batch.size(), e.getMessage());
+            writeFallback(batch);
+        }
+    }
+
+    /**
+     * 开启rewriteBatchedStatements后驱动把整批参数合并为一条多行INSERT
+     * 日志提交后再累加统计汇总，汇总失败由统计自己重试，不会让已写入的日志再进入备用文件重复导入
+     */
+    private void insert(List<StockLog> batch) {
+        transactionTemplate.executeWithoutResult(status -> insertLogs(batch));
+        stockLogStatistics.rollup(batch);
+        stockLogStatistics.record(batch);
+    }
+
+    private void insertLogs(List<StockLog> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, stockLog) -> {
+            ps.setLong(1, stockLog.getProductId());
+            ps.setInt(2, stockLog.getBeforeStock());
+            ps.setInt(3, stockLog.getAfterStock());
+            ps.setInt(4, stockLog.getChangeAmount());
+            ps.setString(5, stockLog.getOperationType());
+            ps.setString(6, stockLog.getOrderId());
+            ps.setTimestamp(7, Timestamp.valueOf(stockLog.getCreateTime()));
+            ps.setObject(8, stockLog.getSynced());
+            ps.setString(9, stockLog.getRemark());
+        });
+    }
+
+    private void writeFallback(List<StockLog> stockLogs) {
+        List<String> lines = new ArrayList<>(stockLogs.size());
+        for (StockLog stockLog : stockLogs) {
+            try {
+                lines.add(objectMapper.writeValueAsString(stockLog));
+            } catch (Exception e) {
+                log.error("序列化库存日志失败，丢弃该日志: productId={}, orderId={}, error={}",
+                        stockLog.getProductId(), stockLog.getOrderId(), e.getMessage());
+            }
+        }
+        fallbackFile.append(lines);
+    }
+
+    /**
+     * 有界无锁环形缓冲区，多个线程写入，持有drainLock的单个线程读取
+     */
+    private static class RingBuffer {
+        private final AtomicReferenceArray<StockLog> slots;
+        private final int capacity;
+        private final int mask;
+        // 下一个写入位置，写入线程用CAS占位
+        private final AtomicLong head = new AtomicLong();
+        // 下一个读取位置，只有读取线程修改
+        private volatile long tail;
+
+        private RingBuffer(int requestedCapacity) {
+            int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.capacity = size;
+            this.mask = size - 1;
+        }
+
+        private boolean offer(StockLog stockLog) {
+            while (true) {
+                long position = head.get();
+                if (position - tail >= capacity) {
+                    return false;
+                }
+                if (head.compareAndSet(position, position + 1)) {
+                    slots.set((int) (position & mask), stockLog);
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 按顺序取出已写入的日志，遇到已占位但尚未写入的位置时停止
+         */
+        private int drainTo(List<StockLog> target, int max) {
+            long position = tail;
+            int count = 0;
+            while (count < max) {
+                int index = (int) (position & mask);
+                StockLog stockLog = slots.get(index);
+                if (stockLog == null) {
+                    break;
+                }
+                slots.set(index, null);
+                target.add(stockLog);
+                position++;
+                count++;
+            }
+            tail = position;
+            return count;
+        }
+
+        private long size() {
+            return head.get() - tail;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.dto.CursorPage;
+import com.example.skillsystem.entity.StockLog;
+import com.example.skillsystem.repository.StockLogRepository;
+import jakarta.persistence.criteria.Predicate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 库存流水查询
+ * 查询都在只读事务中执行，开启读写分离时由从库承担
+ */
+@Service
+@RequiredArgsConstructor
+public class StockLogQueryService {
+
+    private final StockLogRepository stockLogRepository;
+
+    // 游标翻页的排序，(create_time, id) 在 idx_create_time、idx_product_create_time 和
+    // idx_operation_type_create_time 中都是有序的
+    private static final Sort SCROLL_SORT = Sort.by(Sort.Direction.DESC, "createTime", "id");
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * 按页码分页查询，页码越大数据库需要跳过的行越多
+     */
+    @Transactional(readOnly = true)
+    public Page<StockLog> page(int page, int size, Long productId, String operationType, String orderId) {
+        Pageable pageable = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), SCROLL_SORT);
+        return stockLogRepository.findAll(filter(productId, operationType, orderId), pageable);
+    }
+
+    /**
+     * 游标分页查询，从游标位置沿索引往后读 size+1 行，不统计总数
+     *
+     * @param cursorTime 上一页最后一条的创建时间，第一页为null
+     * @param cursorId 上一页最后一条的ID，第一页为null
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<StockLog> scroll(LocalDateTime cursorTime, Long cursorId, int size,
+                                       Long productId, String operationType, String orderId) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Specification<StockLog> spec = filter(productId, operationType, orderId);
+        if (cursorTime != null && cursorId != null) {
+            spec = spec.and(after(cursorTime, cursorId));
+        }
+
+        // 多取一行判断是否还有下一页
+        List<StockLog> rows = stockLogRepository.findBy(spec, query -> query.sortBy(SCROLL_SORT).limit(limit + 1).all());
+        boolean hasNext = rows.size() > limit;
+        List<StockLog> content = hasNext ? rows.subList(0, limit) : rows;
+        StockLog last = hasNext ? content.get(content.size() - 1) : null;
+        return new CursorPage<>(content, hasNext,
+                last != null ? last.getCreateTime() : null, last != null ? last.getId() : null);
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockLog> findByProductId(Long productId) {
+        return stockLogRepository.findByProductIdOrderByCreateTimeDesc(productId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockLog> findByOrderNo(String orderNo) {
+        return stockLogRepository.findByOrderIdOrderByCreateTimeDesc(orderNo);
+    }
+
+    /**
+     * 查询条件：商品ID和操作类型精确匹配，订单号按前缀匹配，前缀匹配可以使用 idx_order_id
+     */
+    private Specification<StockLog> filter(Long productId, String operationType, String orderId) {
+        return (root, query, criteriaBuilder) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            if (productId != null) {
+                predicates.add(criteriaBuilder.equal(root.get("productId"), productId));
+            }
+
+            if (operationType != null && !operationType.trim().isEmpty()) {
+                predicates.add(criteriaBuilder.equal(root.get("operationType"), operationType));
+            }
+
+            if (orderId != null && !orderId.trim().isEmpty()) {
+                predicates.add(criteriaBuilder.like(root.get("orderId"), escapeLike(orderId.trim()) + "%", '\\'));
+            }
+
+            return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * 排在游标之后的记录：create_time < 游标时间，或时间相同且 id < 游标ID
+     */
+    private Specification<StockLog> after(LocalDateTime cursorTime, Long cursorId) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.or(
+                criteriaBuilder.lessThan(root.get("createTime"), cursorTime),
+                criteriaBuilder.and(
+                        criteriaBuilder.equal(root.get("createTime"), cursorTime),
+                        criteriaBuilder.lessThan(root.get("id"), cursorId)));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.entity.StockLog;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 库存日志统计
+ * 库存日志写入数据库后按 (日期, 商品, 操作类型) 累加到汇总表 stock_log_rollup，汇总在独立事务中写入，
+ * 写入失败的增量留在内存中与下一批合并重试，不影响日志本身的写入；
+ * 各操作类型的累计条数放在内存中直接返回，并定时从汇总表刷新以包含其他实例写入的日志。
+ * 最近5分钟、1小时、24小时的条数由按分钟分桶的环形计数器提供，启动时用最近24小时的日志补齐。
+ * 统计接口的耗时与库存日志表的大小无关
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockLogStatistics {
+
+    private static final String ROLLUP_SQL = "INSERT INTO stock_log_rollup (stat_date, product_id, operation_type, log_count, change_amount) "
+            + "VALUES (?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE log_count = log_count + VALUES(log_count), "
+            + "change_amount = change_amount + VALUES(change_amount)";
+
+    // 时间窗口计数器的分桶数，每分钟一个桶，覆盖24小时
+    private static final int WINDOW_MINUTES = 24 * 60;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    // 操作类型 -> 累计条数
+    private final Map<String, LongAdder> totals = new ConcurrentHashMap<>();
+    // 操作类型 -> 分钟计数器
+    private final Map<String, MinuteWindow> windows = new ConcurrentHashMap<>();
+    // 写入汇总表失败的增量，下次汇总时合并重试
+    private final Map<RollupKey, long[]> pendingRollup = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            reloadTotals();
+            loadRecentWindow();
+        } catch (Exception e) {
+            log.error("加载库存日志统计失败，统计从零开始: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把一批已写入的日志累加到汇总表，连同之前写入失败的增量一起在独立事务中写入
+     * 写入失败时不抛出异常，增量保留到下次重试
+     */
+    public void rollup(List<StockLog> batch) {
+        Map<RollupKey, long[]> delta;
+        synchronized (pendingRollup) {
+            delta = new LinkedHashMap<>(pendingRollup);
+            pendingRollup.clear();
+        }
+        merge(delta, aggregate(batch));
+        if (delta.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> args = new ArrayList<>(delta.size());
+        for (Map.Entry<RollupKey, long[]> entry : delta.entrySet()) {
+            RollupKey key = entry.getKey();
+            args.add(new Object[]{Date.valueOf(key.date), key.productId, key.operationType,
+                    entry.getValue()[0], entry.getValue()[1]});
+        }
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(
+                    status -> jdbcTemplate.batchUpdate(ROLLUP_SQL, args));
+        } catch (Exception e) {
+            log.error("写入库存日志汇总失败，{} 组增量等待重试: {}", delta.size(), e.getMessage());
+            synchronized (pendingRollup) {
+                merge(pendingRollup, delta);
+            }
+        }
+    }
+
+    /**
+     * 重试之前写入汇总表失败的增量
+     */
+    public void retryPendingRollup() {
+        rollup(List.of());
+    }
+
+    /**
+     * 日志写入成功后更新内存计数
+     */
+    public void record(List<StockLog> batch) {
+        for (StockLog stockLog : batch) {
+            totals.computeIfAbsent(stockLog.getOperationType(), type -> new LongAdder()).increment();
+            window(stockLog.getOperationType()).add(toEpochMinute(stockLog.getCreateTime()), 1);
+        }
+    }
+
+    /**
+     * 各操作类型的累计条数
+     */
+    public Map<String, Long> getTotals() {
+        Map<String, Long> result = new HashMap<>();
+        totals.forEach((type, count) -> result.put(type, count.sum()));
+        return result;
+    }
+
+    /**
+     * 最近若干分钟内各操作类型的条数，最长24小时
+     */
+    public Map<String, Long> getWindow(int minutes) {
+        int span = Math.max(1, Math.min(minutes, WINDOW_MINUTES));
+        long now = toEpochMinute(LocalDateTime.now());
+        Map<String, Long> result = new HashMap<>();
+        windows.forEach((type, window) -> result.put(type, window.sum(now, span)));
+        return result;
+    }
+
+    /**
+     * 从汇总表重新加载累计条数，汇总表的行数只与天数、商品数和操作类型数有关
+     */
+    public void reloadTotals() {
+        Map<String, Long> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT operation_type, SUM(log_count) FROM stock_log_rollup GROUP BY operation_type",
+                rs -> {
+                    loaded.put(rs.getString(1), rs.getLong(2));
+                });
+        loaded.forEach((type, count) -> {
+            LongAdder adder = totals.computeIfAbsent(type, t -> new LongAdder());
+            // 刷新期间本实例新增的计数可能重复或遗漏几条，下次刷新时修正
+            adder.add(count - adder.sum());
+        });
+    }
+
+    private void loadRecentWindow() {
+        // 只扫描最近24小时，走 idx_create_time
+        LocalDateTime since = LocalDateTime.now().minusMinutes(WINDOW_MINUTES);
+        jdbcTemplate.query("SELECT operation_type, DATE_FORMAT(create_time, '%Y-%m-%d %H:%i:00'), COUNT(*) FROM stock_log "
+                        + "WHERE create_time >= ? GROUP BY operation_type, DATE_FORMAT(create_time, '%Y-%m-%d %H:%i:00')",
+                rs -> {
+                    LocalDateTime minute = Timestamp.valueOf(rs.getString(2)).toLocalDateTime();
+                    window(rs.getString(1)).add(toEpochMinute(minute), rs.getLong(3));
+                }, Timestamp.valueOf(since));
+    }
+
+    private MinuteWindow window(String operationType) {
+        return windows.computeIfAbsent(operationType, type -> new MinuteWindow());
+    }
+
+    private static void merge(Map<RollupKey, long[]> target, Map<RollupKey, long[]> delta) {
+        delta.forEach((key, sums) -> {
+            long[] current = target.computeIfAbsent(key, k -> new long[2]);
+            current[0] += sums[0];
+            current[1] += sums[1];
+        });
+    }
+
+    private static Map<RollupKey, long[]> aggregate(List<StockLog> batch) {
+        Map<RollupKey, long[]> result = new LinkedHashMap<>();
+        for (StockLog stockLog : batch) {
+            RollupKey key = new RollupKey(stockLog.getCreateTime().toLocalDate(), stockLog.getProductId(),
+                    stockLog.getOperationType());
+            long[] sums = result.computeIfAbsent(key, k -> new long[2]);
+            sums[0]++;
+            sums[1] += stockLog.getChangeAmount();
+        }
+        return result;
+    }
+
+    private static long toEpochMinute(LocalDateTime time) {
+        return TimeUnit.MILLISECONDS.toMinutes(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * 按分钟分桶的环形计数器，每个桶记录所属的分钟，过期的桶在写入时重置
+     */
+    private static class MinuteWindow {
+        private final AtomicLongArray minutes = new AtomicLongArray(WINDOW_MINUTES);
+        private final AtomicLongArray counts = new AtomicLongArray(WINDOW_MINUTES);
+
+        private void add(long minute, long count) {
+            int index = (int) (minute % WINDOW_MINUTES);
+            while (true) {
+                long current = minutes.get(index);
+                if (current == minute) {
+                    counts.addAndGet(index, count);
+                    return;
+                }
+                if (current > minute) {
+                    // 超过24小时的旧日志不计入窗口
+                    return;
+                }
+                synchronized (this) {
+                    if (minutes.get(index) == current) {
+                        counts.set(index, 0);
+                        minutes.set(index, minute);
+                    }
+                }
+            }
+        }
+
+        private long sum(long now, int span) {
+            long total = 0;
+            for (long minute = now - span + 1; minute <= now; minute++) {
+                int index = (int) (minute % WINDOW_MINUTES);
+                if (minutes.get(index) == minute) {
+                    total += counts.get(index);
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 汇总表的主键
+     */
+    private static class RollupKey {
+        private final LocalDate date;
+        private final Long productId;
+        private final String operationType;
+
+        private RollupKey(LocalDate date, Long productId, String operationType) {
+            this.date = date;
+            this.productId = productId;
+            this.operationType = operationType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RollupKey)) {
+                return false;
+            }
+            RollupKey other = (RollupKey) o;
+            return date.equals(other.date) && productId.equals(other.productId) && operationType.equals(other.operationType);
+        }
+
+        @Override
+        public int hashCode() {
+            return (date.hashCode() * 31 + productId.hashCode()) * 31 + operationType.hashCode();
+        }
+    }
+}
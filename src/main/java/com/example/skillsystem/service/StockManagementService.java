@@ -1,5 +1,9 @@
 package com.example.skillsystem.service;
 
+import com.example.skillsystem.entity.Order;
+
+import java.util.List;
+
 /**
  * 库存管理服务接口
  * 实现策略：
@@ -18,6 +22,23 @@ public interface StockManagementService {
      */
     boolean lockRedisStock(Long productId, String orderNo, Integer quantity);
     
+    /**
+     * 下单时锁定Redis库存，限购商品同时检查并累加用户的已购数量
+     * @param productId 商品ID
+     * @param orderNo 订单号
+     * @param quantity 锁定数量
+     * @param userId 下单用户ID，为null时不检查限购
+     * @return 是否锁定成功
+     */
+    boolean lockRedisStock(Long productId, String orderNo, Integer quantity, Long userId);
+    
+    /**
+     * 多商品订单锁定Redis库存，所有子订单全部锁定成功或全部不锁定
+     * @param orders 子订单，每个商品一条
+     * @return 是否全部锁定成功
+     */
+    boolean lockRedisStock(List<Order> orders);
+    
     /**
      * 支付成功时扣减数据库库存
      * @param orderNo 订单号
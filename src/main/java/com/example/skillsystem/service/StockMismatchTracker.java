@@ -0,0 +1,107 @@
+package com.example.skillsystem.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 数据库与缓存库存不一致的商品集合
+ * 数据库或缓存库存变化时只登记商品ID，查询同步状态时只重新核对登记过的商品，
+ * 不必每次读取全部商品和全部缓存。
+ * 其他实例的库存变化不会登记到本实例，由定时任务要求全量核对一次来覆盖
+ */
+@Service
+public class StockMismatchTracker {
+
+    // 库存有变化、尚未重新核对的商品
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // 商品ID -> 不一致的详情，按商品ID排序
+    private final Map<Long, Map<String, Object>> mismatches = new ConcurrentSkipListMap<>();
+    // 启动后第一次查询时全量核对
+    private volatile boolean fullScanRequired = true;
+
+    /**
+     * 登记库存有变化的商品
+     */
+    public void markDirty(Long productId) {
+        dirty.add(productId);
+    }
+
+    /**
+     * 登记数据库库存有变化的商品，当前有事务时在事务提交后登记，避免核对时读到提交前的库存
+     */
+    public void markDirtyAfterCommit(Long productId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markDirty(productId);
+                }
+            });
+        } else {
+            markDirty(productId);
+        }
+    }
+
+    /**
+     * 要求下次查询时全量核对
+     */
+    public void requestFullScan() {
+        fullScanRequired = true;
+    }
+
+    /**
+     * 取出全量核对的要求，返回true时调用方负责登记全部商品
+     */
+    public boolean takeFullScan() {
+        if (!fullScanRequired) {
+            return false;
+        }
+        fullScanRequired = false;
+        return true;
+    }
+
+    /**
+     * 全量核对时去掉已不存在的商品
+     */
+    public void retainProducts(Collection<Long> productIds) {
+        mismatches.keySet().retainAll(Set.copyOf(productIds));
+    }
+
+    /**
+     * 取出待核对的商品
+     */
+    public List<Long> drainDirty() {
+        List<Long> drained = new ArrayList<>();
+        for (Long productId : dirty) {
+            if (dirty.remove(productId)) {
+                drained.add(productId);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 记录核对结果
+     * @param detail 不一致的详情，一致时为null
+     */
+    public void update(Long productId, Map<String, Object> detail) {
+        if (detail == null) {
+            mismatches.remove(productId);
+        } else {
+            mismatches.put(productId, detail);
+        }
+    }
+
+    public List<Map<String, Object>> getMismatches() {
+        return new ArrayList<>(mismatches.values());
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.entity.StockLock;
+import com.example.skillsystem.entity.StockLog;
+import com.example.skillsystem.enums.StockOperationType;
+import com.example.skillsystem.repository.ProductRepository;
+import com.example.skillsystem.repository.StockLockRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 支付扣减的数据库库存写回合并
+ * 支付时只把锁定记录标记为待写回（flush_batch=0），不更新商品行；
+ * 后台线程定时或在某个商品累计数量达到阈值时，把所有待写回记录归入一个批次，
+ * 按商品汇总后每个商品只执行一次 stock = stock - 合计，热点商品行的锁竞争从每单一次降为每批一次。
+ * 待写回记录保存在数据库中，进程崩溃后重启的第一次写回会处理上次遗留的记录；
+ * 归入批次、更新商品库存在同一个事务中完成，不会重复扣减也不会遗漏
+ */
+@Slf4j
+@Service
+public class StockWriteBehindFlusher {
+
+    private final StockLockRepository stockLockRepository;
+    private final ProductRepository productRepository;
+    private final ProductEntityCache productEntityCache;
+    private final StockLogJournal stockLogJournal;
+    private final OrderIdGenerator orderIdGenerator;
+    private final TransactionTemplate transactionTemplate;
+    private final AppConfig appConfig;
+
+    // 本实例已支付但尚未写回的数量，只用于阈值判断和监控，写回以数据库中的待写回记录为准
+    private final Map<Long, AtomicLong> pendingQuantities = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile boolean running = true;
+    private Thread flusherThread;
+
+    public StockWriteBehindFlusher(StockLockRepository stockLockRepository,
+                                   ProductRepository productRepository,
+                                   ProductEntityCache productEntityCache,
+                                   StockLogJournal stockLogJournal,
+                                   OrderIdGenerator orderIdGenerator,
+                                   PlatformTransactionManager transactionManager,
+                                   AppConfig appConfig) {
+        this.stockLockRepository = stockLockRepository;
+        this.productRepository = productRepository;
+        this.productEntityCache = productEntityCache;
+        this.stockLogJournal = stockLogJournal;
+        this.orderIdGenerator = orderIdGenerator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.appConfig = appConfig;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusherThread = new Thread(this::runLoop, "stock-write-behind");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    /**
+     * 是否启用写回合并
+     */
+    public boolean isEnabled() {
+        return appConfig.getStock().getWriteBehindEnabled();
+    }
+
+    /**
+     * 登记一笔已标记为待写回的支付扣减，当前有事务时在事务提交后登记
+     */
+    public void recordDeduction(Long productId, Integer quantity) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addPending(productId, quantity);
+                }
+            });
+        } else {
+            addPending(productId, quantity);
+        }
+    }
+
+    /**
+     * 本实例登记的待写回数量
+     */
+    public long getPendingQuantity(Long productId) {
+        AtomicLong pending = pendingQuantities.get(productId);
+        return pending != null ? pending.get() : 0;
+    }
+
+    /**
+     * 立即写回所有待写回的扣减
+     * @return 写回的锁定记录数
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            long batch = orderIdGenerator.nextId();
+            Map<Long, Integer> flushed = new LinkedHashMap<>();
+            Integer count = transactionTemplate.execute(status -> flushBatch(batch, flushed));
+            flushed.forEach((productId, quantity) -> addPending(productId, -quantity));
+            if (count != null && count > 0) {
+                log.info("库存写回完成, 批次: {}, 订单数: {}, 商品数: {}", batch, count, flushed.size());
+            }
+            return count != null ? count : 0;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (flusherThread != null) {
+            LockSupport.unpark(flusherThread);
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("停机时写回库存失败，重启后继续写回: {}", e.getMessage());
+        }
+    }
+
+    private void addPending(Long productId, long quantity) {
+        long pending = pendingQuantities.computeIfAbsent(productId, id -> new AtomicLong()).addAndGet(quantity);
+        if (quantity > 0 && pending >= appConfig.getStock().getWriteBehindThreshold() && flusherThread != null) {
+            LockSupport.unpark(flusherThread);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                // 启动时先写回上次遗留的记录，之后按间隔写回，达到阈值时被提前唤醒
+                if (isEnabled()) {
+                    flush();
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(appConfig.getStock().getWriteBehindInterval()));
+            } catch (Exception e) {
+                log.error("库存写回线程异常", e);
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(appConfig.getStock().getWriteBehindInterval()));
+            }
+        }
+    }
+
+    /**
+     * 归入批次、按商品汇总、更新商品库存并按订单记录库存日志，在调用方的事务中执行
+     */
+    private int flushBatch(long batch, Map<Long, Integer> flushed) {
+        if (stockLockRepository.claimPendingFlush(batch) == 0) {
+            return 0;
+        }
+        List<StockLock> locks = stockLockRepository.findByFlushBatchOrderByProductIdAscIdAsc(batch);
+
+        Map<Long, List<StockLock>> byProduct = new LinkedHashMap<>();
+        for (StockLock lock : locks) {
+            byProduct.computeIfAbsent(lock.getProductId(), id -> new ArrayList<>()).add(lock);
+        }
+
+        List<StockLog> logs = new ArrayList<>(locks.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, List<StockLock>> entry : byProduct.entrySet()) {
+            Long productId = entry.getKey();
+            int total = entry.getValue().stream().mapToInt(StockLock::getLockedQuantity).sum();
+            productRepository.subtractStock(productId, total);
+            productEntityCache.evict(productId);
+            Integer afterStock = productRepository.findStockById(productId);
+            if (afterStock == null) {
+                log.error("写回库存时商品不存在, productId: {}, 数量: {}", productId, total);
+                continue;
+            }
+            if (afterStock < 0) {
+                log.error("写回后数据库库存为负数, productId: {}, 库存: {}", productId, afterStock);
+            }
+            flushed.put(productId, total);
+
+            // 按订单顺序还原每单扣减前后的库存，审计日志仍然一单一条
+            int stock = afterStock + total;
+            for (StockLock lock : entry.getValue()) {
+                logs.add(StockLog.builder()
+                        .productId(productId)
+                        .beforeStock(stock)
+                        .afterStock(stock - lock.getLockedQuantity())
+                        .changeAmount(-lock.getLockedQuantity())
+                        .operationType(StockOperationType.DEDUCT.getCode())
+                        .orderId(lock.getOrderNo())
+                        .createTime(now)
+                        .synced(true)
+                        .remark("支付成功，合并写回数据库库存: " + lock.getLockedQuantity() + " 件")
+                        .build());
+                stock -= lock.getLockedQuantity();
+            }
+        }
+        stockLogJournal.appendAll(logs);
+        return locks.size();
+    }
+}
@@ -3,15 +3,25 @@ package com.example.skillsystem.service.impl;
 import com.example.skillsystem.config.AppConfig;
 
 import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.dto.CursorPage;
 import com.example.skillsystem.dto.OrderDTO;
-import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.OrderSummaryDTO;
+import com.example.skillsystem.dto.OrderTokenStatusDTO;
+import com.example.skillsystem.dto.ProductBatchDTO;
+import com.example.skillsystem.dto.ProductView;
 import com.example.skillsystem.entity.Order;
 import com.example.skillsystem.enums.OrderStatus;
+import com.example.skillsystem.enums.OrderTokenStatus;
 
 import com.example.skillsystem.repository.OrderRepository;
+import com.example.skillsystem.service.OrderCreationPipeline;
+import com.example.skillsystem.service.OrderIdGenerator;
 import com.example.skillsystem.service.OrderService;
 import com.example.skillsystem.service.ProductService;
+import com.example.skillsystem.service.PurchaseLimitService;
+import com.example.skillsystem.service.ReadYourWritesTracker;
 
+import com.example.skillsystem.service.StockLockRecordWriter;
 import com.example.skillsystem.service.StockManagementService;
 import com.example.skillsystem.vo.OrderRequest;
 import com.example.skillsystem.vo.PaymentRequest;
@@ -20,15 +30,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 
 @Slf4j
@@ -40,10 +56,22 @@ public class OrderServiceImpl implements OrderService {
     private final ProductService productService;
     private final StockManagementService stockManagementService;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final OrderCreationPipeline orderCreationPipeline;
+    private final PurchaseLimitService purchaseLimitService;
+    private final OrderIdGenerator orderIdGenerator;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final StockLockRecordWriter stockLockRecordWriter;
+    private final PlatformTransactionManager transactionManager;
     private final AppConfig appConfig;
     
+    // 订单列表每页最多条数
+    private static final int MAX_PAGE_SIZE = 200;
+    
+    /**
+     * 不在外层开启事务：订单保存失败时保存所在的事务已回滚，补偿在自己的事务中把锁定记录改为已释放，
+     * 不会随下单事务一起回滚而让过期清理再退回一次库存
+     */
     @Override
-    @Transactional
     public Result<OrderDTO> createOrder(OrderRequest request) {
         // 检查请求参数
         if (request.getProductId() == null || request.getQuantity() == null || request.getQuantity() <= 0) {
@@ -51,24 +79,37 @@ public class OrderServiceImpl implements OrderService {
         }
         
         // 获取商品信息
-        ProductDTO product = productService.getProductById(request.getProductId());
+        ProductView product = productService.getProductById(request.getProductId());
         if (product == null) {
             return Result.error("商品不存在");
         }
         
+        // 先生成订单号，生成失败时还没有锁定任何库存，直接返回
+        String orderNo;
+        try {
+            orderNo = orderIdGenerator.nextOrderNo();
+        } catch (IllegalStateException e) {
+            log.error("生成订单号失败: {}", e.getMessage());
+            return Result.error("系统繁忙，请稍后重试");
+        }
+        
+        boolean locked = false;
         try {
-            // 先生成订单号
-            String orderNo = UUID.randomUUID().toString().replace("-", "");
-
             // 下单扣Redis：快速锁定库存，保障并发性能
-            boolean lockResult = stockManagementService.lockRedisStock(request.getProductId(), orderNo, request.getQuantity());
+            boolean lockResult = stockManagementService.lockRedisStock(request.getProductId(), orderNo,
+                    request.getQuantity(), request.getUserId());
+            locked = lockResult;
             if (!lockResult) {
+                if (purchaseLimitService.isExceeded(request.getProductId(), request.getUserId(), request.getQuantity())) {
+                    return Result.error("超过限购数量，每人限购" + purchaseLimitService.getLimit(request.getProductId()) + "件");
+                }
                 return Result.error("库存不足，无法锁定");
             }
 
             // 创建订单
             Order order = new Order();
             order.setOrderNo(orderNo);
+            order.setUserId(request.getUserId());
             order.setProductId(request.getProductId());
             order.setProductName(product.getName());
             order.setProductPrice(product.getPrice());
@@ -79,6 +120,18 @@ public class OrderServiceImpl implements OrderService {
             order.setUpdateTime(LocalDateTime.now());
             // 设置超时时间，根据配置的超时毫秒数计算
             order.setExpireTime(LocalDateTime.now().plusNanos(appConfig.getOrderPaymentTimeout() * 1000000L));
+            readYourWritesTracker.markWritten(request.getUserId());
+            
+            if (Boolean.TRUE.equals(appConfig.getOrder().getAsyncEnabled())) {
+                // 异步模式：订单交给流水线批量写入，订单号即查询令牌
+                orderCreationPipeline.submit(order);
+                log.info("订单已受理，等待异步写入: orderNo={}, productId={}, quantity={}",
+                        orderNo, request.getProductId(), request.getQuantity());
+                
+                OrderDTO orderDTO = new OrderDTO();
+                BeanUtils.copyProperties(order, orderDTO);
+                return Result.success(orderDTO);
+            }
             
             // 保存订单到数据库
             order = orderRepository.save(order);
@@ -98,20 +151,127 @@ public class OrderServiceImpl implements OrderService {
             return Result.success(orderDTO);
         } catch (Exception e) {
             log.error("创建订单失败", e);
-            // 回滚Redis库存
-            productService.increaseStock(request.getProductId(), request.getQuantity());
+            // 与异步流水线的补偿一致：锁定成功时已累加的限购数量一并退回
+            if (locked) {
+                purchaseLimitService.release(request.getProductId(), request.getUserId(), request.getQuantity());
+            }
+            // 按锁定记录退回库存，锁定记录改为已释放后过期清理不会再退回一次
+            if (!stockManagementService.rollbackRedisStock(orderNo)) {
+                log.error("创建订单失败后退回库存失败，等待锁定过期清理: orderNo={}", orderNo);
+            }
+            return Result.error("创建订单失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 与单商品下单相同，不在外层开启事务，子订单由 saveAll 在同一个事务中写入
+     */
+    @Override
+    public Result<List<OrderDTO>> createBatchOrder(OrderRequest request) {
+        // 检查请求参数，同一商品的多行合并为一个子订单
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            return Result.error("请求参数不正确");
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderRequest.Item item : request.getItems()) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                return Result.error("请求参数不正确");
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        
+        // 一次批量获取所有商品信息
+        ProductBatchDTO products = productService.getProductsByIds(new ArrayList<>(quantities.keySet()));
+        if (!products.getMissingIds().isEmpty()) {
+            return Result.error("商品不存在: " + products.getMissingIds());
+        }
+        
+        String batchNo;
+        List<String> orderNos = new ArrayList<>(quantities.size());
+        try {
+            batchNo = orderIdGenerator.nextOrderNo();
+            for (int i = 0; i < quantities.size(); i++) {
+                orderNos.add(orderIdGenerator.nextOrderNo());
+            }
+        } catch (IllegalStateException e) {
+            log.error("生成订单号失败: {}", e.getMessage());
+            return Result.error("系统繁忙，请稍后重试");
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<Order> orders = new ArrayList<>(quantities.size());
+        for (ProductView product : products.getProducts()) {
+            Integer quantity = quantities.get(product.getId());
+            Order order = new Order();
+            order.setOrderNo(orderNos.get(orders.size()));
+            order.setBatchNo(batchNo);
+            order.setUserId(request.getUserId());
+            order.setProductId(product.getId());
+            order.setProductName(product.getName());
+            order.setProductPrice(product.getPrice());
+            order.setQuantity(quantity);
+            order.setTotalAmount(product.getPrice().multiply(new BigDecimal(quantity)));
+            order.setStatus(OrderStatus.WAITING_PAYMENT.getCode());
+            order.setCreateTime(now);
+            order.setUpdateTime(now);
+            order.setExpireTime(now.plusNanos(appConfig.getOrderPaymentTimeout() * 1000000L));
+            orders.add(order);
+        }
+        
+        // 所有商品的库存一次锁定，任一商品失败时都不锁定
+        if (!stockManagementService.lockRedisStock(orders)) {
+            for (Order order : orders) {
+                if (purchaseLimitService.isExceeded(order.getProductId(), request.getUserId(), order.getQuantity())) {
+                    return Result.error("超过限购数量，" + order.getProductName() + "每人限购"
+                            + purchaseLimitService.getLimit(order.getProductId()) + "件");
+                }
+            }
+            return Result.error("库存不足，无法锁定");
+        }
+        
+        try {
+            readYourWritesTracker.markWritten(request.getUserId());
+            if (Boolean.TRUE.equals(appConfig.getOrder().getAsyncEnabled())) {
+                // 异步模式：子订单交给流水线批量写入
+                orders.forEach(orderCreationPipeline::submit);
+                log.info("多商品订单已受理，等待异步写入: batchNo={}, 商品数={}", batchNo, orders.size());
+            } else {
+                // 所有子订单在同一个事务中一次写入
+                orders = orderRepository.saveAll(orders);
+                log.info("多商品订单创建成功: batchNo={}, 商品数={}", batchNo, orders.size());
+            }
+            
+            List<OrderDTO> orderDTOs = orders.stream()
+                    .map(order -> {
+                        OrderDTO dto = new OrderDTO();
+                        BeanUtils.copyProperties(order, dto);
+                        return dto;
+                    })
+                    .toList();
+            return Result.success(orderDTOs);
+        } catch (Exception e) {
+            log.error("创建多商品订单失败: batchNo={}", batchNo, e);
+            // 回滚所有子订单锁定的库存
+            for (Order order : orders) {
+                stockManagementService.rollbackRedisStock(order.getOrderNo());
+                purchaseLimitService.release(order);
+            }
             return Result.error("创建订单失败: " + e.getMessage());
         }
     }
     
     @Override
-    @Transactional
     public Result<Boolean> payOrder(PaymentRequest request) {
         // 检查请求参数
         if (request.getOrderNo() == null) {
             return Result.error("请求参数不正确");
         }
         
+        awaitPersisted(request.getOrderNo());
+        return new TransactionTemplate(transactionManager).execute(status -> doPayOrder(request));
+    }
+    
+    private Result<Boolean> doPayOrder(PaymentRequest request) {
         // 查询订单
         Optional<Order> orderOpt = orderRepository.findByOrderNo(request.getOrderNo());
         if (orderOpt.isEmpty()) {
@@ -148,6 +308,7 @@ public class OrderServiceImpl implements OrderService {
                 // 支付成功，从Redis中删除订单信息
                 String orderKey = RedisKeyPrefix.ORDER_INFO + request.getOrderNo();
                 redisTemplate.delete(orderKey);
+                readYourWritesTracker.markWritten(order.getUserId());
 
                 log.info("订单支付成功: orderNo={}", request.getOrderNo());
                 return Result.success(true);
@@ -164,13 +325,25 @@ public class OrderServiceImpl implements OrderService {
     }
     
     @Override
-    @Transactional
     public Result<Boolean> cancelOrder(String orderNo) {
         // 检查参数
         if (orderNo == null) {
             return Result.error("订单号不能为空");
         }
         
+        awaitPersisted(orderNo);
+        return new TransactionTemplate(transactionManager).execute(status -> doCancelOrder(orderNo));
+    }
+    
+    /**
+     * 异步下单的订单和锁定记录可能尚未落库，支付和取消前在事务外等待，等待期间不占用数据库连接
+     */
+    private void awaitPersisted(String orderNo) {
+        orderCreationPipeline.awaitPersisted(orderNo);
+        stockLockRecordWriter.awaitPersisted(orderNo);
+    }
+    
+    private Result<Boolean> doCancelOrder(String orderNo) {
         // 查询订单
         Optional<Order> orderOpt = orderRepository.findByOrderNo(orderNo);
         if (orderOpt.isEmpty()) {
@@ -199,9 +372,13 @@ public class OrderServiceImpl implements OrderService {
             );
 
             if (rows > 0) {
+                // 退回用户限购数量
+                purchaseLimitService.release(order);
+                
                 // 从Redis中删除订单信息
                 String orderKey = RedisKeyPrefix.ORDER_INFO + orderNo;
                 redisTemplate.delete(orderKey);
+                readYourWritesTracker.markWritten(order.getUserId());
 
                 log.info("订单取消成功: orderNo={}", orderNo);
                 return Result.success(true);
@@ -242,6 +419,7 @@ public class OrderServiceImpl implements OrderService {
                     if (!rollbackResult) {
                         log.warn("回滚Redis库存失败，但订单已取消: orderNo={}", order.getOrderNo());
                     }
+                    purchaseLimitService.release(order);
                     
                     // 从Redis中删除订单信息
                     String orderKey = RedisKeyPrefix.ORDER_INFO + order.getOrderNo();
@@ -256,6 +434,8 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Deprecated
+    @Transactional(readOnly = true)
     public List<OrderDTO> getAllOrders() {
         List<Order> orders = orderRepository.findAll();
         return orders.stream()
@@ -268,6 +448,8 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
+    @Deprecated
+    @Transactional(readOnly = true)
     public List<OrderDTO> getOrdersByStatus(Integer status) {
         List<Order> orders = orderRepository.findByStatus(status);
         return orders.stream()
@@ -279,6 +461,23 @@ public class OrderServiceImpl implements OrderService {
                 .toList();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<OrderSummaryDTO> getOrderPage(Integer status, LocalDateTime cursorTime, Long cursorId, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // 多取一条判断是否还有下一页
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        List<OrderSummaryDTO> rows = cursorTime != null && cursorId != null
+                ? orderRepository.findSummariesAfter(status, cursorTime, cursorId, pageable)
+                : orderRepository.findSummaries(status, pageable);
+        
+        boolean hasNext = rows.size() > limit;
+        List<OrderSummaryDTO> content = hasNext ? rows.subList(0, limit) : rows;
+        OrderSummaryDTO last = hasNext ? content.get(content.size() - 1) : null;
+        return new CursorPage<>(content, hasNext,
+                last != null ? last.getCreateTime() : null, last != null ? last.getId() : null);
+    }
+
     @Override
     public OrderDTO getOrderByOrderNo(String orderNo) {
         Optional<Order> orderOpt = orderRepository.findByOrderNo(orderNo);
@@ -289,4 +488,11 @@ public class OrderServiceImpl implements OrderService {
         }
         return null;
     }
-} 
\ No newline at end of file
+
+    @Override
+    public OrderTokenStatusDTO getOrderTokenStatus(String token) {
+        OrderTokenStatus status = orderCreationPipeline.getStatus(token);
+        OrderDTO order = status == OrderTokenStatus.CREATED ? getOrderByOrderNo(token) : null;
+        return new OrderTokenStatusDTO(token, status.getCode(), status.getDesc(), order);
+    }
+}
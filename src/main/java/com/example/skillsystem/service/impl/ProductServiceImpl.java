@@ -3,14 +3,23 @@ package com.example.skillsystem.service.impl;
 
 import com.example.skillsystem.config.AppConfig;
 import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.dto.ProductBatchDTO;
 import com.example.skillsystem.dto.ProductDTO;
+import com.example.skillsystem.dto.ProductSnapshot;
+import com.example.skillsystem.dto.ProductView;
 import com.example.skillsystem.entity.Product;
 import com.example.skillsystem.entity.StockLog;
 import com.example.skillsystem.repository.ProductRepository;
-import com.example.skillsystem.repository.StockLogRepository;
 import com.example.skillsystem.service.MockRedisService;
+import com.example.skillsystem.service.ProductEntityCache;
+import com.example.skillsystem.service.ProductListingService;
 import com.example.skillsystem.service.ProductService;
+import com.example.skillsystem.service.StockCounterService;
+import com.example.skillsystem.service.StockLeaseService;
+import com.example.skillsystem.service.StockLogJournal;
+import com.example.skillsystem.service.StockWriteBehindFlusher;
 import com.example.skillsystem.vo.Result;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -18,15 +27,22 @@ import org.springframework.beans.BeanUtils;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -34,38 +50,36 @@ import java.util.stream.Collectors;
 public class ProductServiceImpl implements ProductService {
     
     private final ProductRepository productRepository;
-    private final StockLogRepository stockLogRepository;
+    private final ProductEntityCache productEntityCache;
+    private final StockLogJournal stockLogJournal;
     private final MockRedisService mockRedisService;
+    private final ProductListingService productListingService;
+    private final StockCounterService stockCounterService;
+    private final StockLeaseService stockLeaseService;
+    private final StockWriteBehindFlusher stockWriteBehindFlusher;
     private final AppConfig appConfig;
     
+    // 延迟双删调度器
+    private final ScheduledExecutorService cacheInvalidationScheduler = Executors.newSingleThreadScheduledExecutor();
+    
     @Override
-    public ProductDTO getProductById(Long id) {
+    public ProductView getProductById(Long id) {
         log.info("获取商品信息, id: {}", id);
 
         // 构建缓存键
         String productInfoKey = RedisKeyPrefix.PRODUCT_INFO + id;
-        String stockKey = RedisKeyPrefix.PRODUCT_STOCK + id;
-        ProductDTO productDTO = null;
 
         try {
-            // 尝试从Redis缓存获取商品信息
+            // 尝试从Redis缓存获取商品快照，快照不可变，直接与实时库存组合返回
             Object productObject = mockRedisService.get(productInfoKey);
-            Object stockObject = mockRedisService.get(stockKey);
 
-            if (productObject != null) {
+            if (productObject instanceof ProductSnapshot) {
                 log.info("从Redis缓存获取商品信息, id: {}", id);
-                productDTO = (ProductDTO) productObject;
-
-                // 如果有库存缓存，使用Redis中的库存
-                if (stockObject != null) {
-                    Integer redisStock = (Integer) stockObject;
-                    productDTO.setStock(redisStock);
-                    log.info("使用Redis库存: {}", redisStock);
-                } else {
-                    log.warn("Redis中没有库存缓存，使用商品信息中的库存: {}", productDTO.getStock());
+                Integer redisStock = stockCounterService.getStock(id);
+                if (redisStock == null) {
+                    log.warn("Redis中没有库存缓存，使用商品快照中的库存, id: {}", id);
                 }
-
-                return productDTO;
+                return ProductView.of((ProductSnapshot) productObject, redisStock);
             } else {
                 log.info("Redis缓存未命中，将从数据库获取商品信息, id: {}", id);
             }
@@ -83,27 +97,126 @@ public class ProductServiceImpl implements ProductService {
         }
 
         Product product = productOpt.get();
-        productDTO = new ProductDTO();
-        BeanUtils.copyProperties(product, productDTO);
+        ProductSnapshot snapshot = ProductSnapshot.from(product);
+        Integer stock = product.getStock();
 
-        // 将商品信息和库存写入Redis缓存
+        // 将商品快照和库存写入Redis缓存
         try {
             log.info("将商品信息写入Redis缓存, id: {}", id);
 
-            // 写入商品信息缓存
-            mockRedisService.set(productInfoKey, productDTO, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+            // 按版本写入商品快照，商品更新后读到旧数据的请求无法覆盖新版本
+            boolean written = mockRedisService.setIfNewer(productInfoKey, snapshot, snapshot.getVersion(),
+                    appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+            if (!written) {
+                log.info("缓存中已有更新版本的商品信息，放弃回填, id: {}, version: {}", id, snapshot.getVersion());
+            }
 
-            // 写入库存缓存
-            mockRedisService.set(stockKey, product.getStock(), appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+            // 库存计数器只在不存在时初始化，避免覆盖正在扣减中的实时库存；
+            // 初始值使用可售库存，实体中的库存不含已支付未写回的扣减
+            Integer redisStock = stockCounterService.getStock(id);
+            if (redisStock != null) {
+                return ProductView.of(snapshot, redisStock);
+            }
+            Integer sellableStock = productRepository.findSellableStockById(id);
+            if (sellableStock != null) {
+                stock = sellableStock;
+                if (!stockCounterService.initStock(id, sellableStock)) {
+                    redisStock = stockCounterService.getStock(id);
+                    if (redisStock != null) {
+                        return ProductView.of(snapshot, redisStock);
+                    }
+                }
+            }
 
-            log.info("商品信息已写入Redis缓存: id={}, name={}, status={}, stock={}",
-                    productDTO.getId(), productDTO.getName(), productDTO.getStatus(), productDTO.getStock());
+            log.info("商品信息已写入Redis缓存: id={}, name={}, status={}, stock={}, version={}",
+                    snapshot.getId(), snapshot.getName(), snapshot.getStatus(), snapshot.getStock(), snapshot.getVersion());
         } catch (Exception e) {
             log.error("Redis缓存写入失败, id: {}, error: {}", id, e.getMessage());
             // 缓存写入失败不影响返回结果
         }
 
-        return productDTO;
+        return ProductView.of(snapshot, stock);
+    }
+
+    @Override
+    public ProductBatchDTO getProductsByIds(List<Long> ids) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        Map<Long, ProductView> found = new HashMap<>();
+        List<Long> missedIds = new ArrayList<>();
+        Map<Long, Integer> cachedStocks = new HashMap<>();
+
+        // 批量读取所有商品快照，再批量读取库存
+        try {
+            List<String> keys = new ArrayList<>(distinctIds.size());
+            for (Long id : distinctIds) {
+                keys.add(RedisKeyPrefix.PRODUCT_INFO + id);
+            }
+            List<Object> cached = mockRedisService.multiGet(keys);
+            Map<Long, Integer> redisStocks = stockCounterService.getStocks(distinctIds);
+            for (int i = 0; i < distinctIds.size(); i++) {
+                Long id = distinctIds.get(i);
+                Object productObject = cached.get(i);
+                Integer redisStock = redisStocks.get(id);
+                if (productObject instanceof ProductSnapshot) {
+                    found.put(id, ProductView.of((ProductSnapshot) productObject, redisStock));
+                } else {
+                    missedIds.add(id);
+                    if (redisStock != null) {
+                        cachedStocks.put(id, redisStock);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Redis批量读取失败, ids: {}, error: {}", distinctIds, e.getMessage());
+            missedIds = new ArrayList<>(distinctIds);
+            found.clear();
+            cachedStocks.clear();
+        }
+
+        // 未命中的商品一次性从数据库查询，再一次性回填缓存
+        if (!missedIds.isEmpty()) {
+            log.info("批量查询商品缓存未命中, 从数据库获取, ids: {}", missedIds);
+            List<Product> products = productRepository.findAllById(missedIds);
+            // 缓存中没有库存计数器的商品按可售库存初始化，实体中的库存不含已支付未写回的扣减
+            List<Long> uncountedIds = missedIds.stream().filter(id -> !cachedStocks.containsKey(id)).toList();
+            Map<Long, Integer> stockValues = new HashMap<>();
+            if (!uncountedIds.isEmpty()) {
+                for (Object[] row : productRepository.findSellableStocksByIds(uncountedIds)) {
+                    stockValues.put((Long) row[0], (Integer) row[1]);
+                }
+            }
+            Map<String, Object> infoValues = new HashMap<>();
+            Map<String, Long> infoVersions = new HashMap<>();
+            for (Product product : products) {
+                ProductSnapshot snapshot = ProductSnapshot.from(product);
+                Integer liveStock = cachedStocks.getOrDefault(product.getId(),
+                        stockValues.getOrDefault(product.getId(), product.getStock()));
+                found.put(product.getId(), ProductView.of(snapshot, liveStock));
+
+                String productInfoKey = RedisKeyPrefix.PRODUCT_INFO + product.getId();
+                infoValues.put(productInfoKey, snapshot);
+                infoVersions.put(productInfoKey, snapshot.getVersion());
+            }
+            try {
+                mockRedisService.multiSetIfNewer(infoValues, infoVersions, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                stockCounterService.initStocks(stockValues);
+            } catch (Exception e) {
+                log.error("Redis批量回填失败, ids: {}, error: {}", missedIds, e.getMessage());
+            }
+        }
+
+        // 按请求顺序组装结果
+        List<ProductView> result = new ArrayList<>(distinctIds.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : distinctIds) {
+            ProductView view = found.get(id);
+            if (view != null) {
+                result.add(view);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new ProductBatchDTO(result, missingIds);
     }
 
     /**
@@ -111,11 +224,7 @@ public class ProductServiceImpl implements ProductService {
      */
     public Integer getRedisStock(Long productId) {
         try {
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-            Object stockObject = mockRedisService.get(stockKey);
-            if (stockObject != null) {
-                return (Integer) stockObject;
-            }
+            return stockCounterService.getStock(productId);
         } catch (Exception e) {
             log.error("获取Redis库存失败, productId: {}, error: {}", productId, e.getMessage());
         }
@@ -127,12 +236,10 @@ public class ProductServiceImpl implements ProductService {
      */
     public void syncStockToRedis(Long productId) {
         try {
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-                mockRedisService.set(stockKey, product.getStock(), appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
-                log.info("同步库存到Redis: productId={}, stock={}", productId, product.getStock());
+            Integer dbStock = productRepository.findSellableStockById(productId);
+            if (dbStock != null) {
+                stockCounterService.setStock(productId, dbStock);
+                log.info("同步库存到Redis: productId={}, stock={}", productId, dbStock);
             }
         } catch (Exception e) {
             log.error("同步库存到Redis失败, productId: {}, error: {}", productId, e.getMessage());
@@ -140,54 +247,19 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public List<ProductDTO> getAllProducts() {
-        // 从数据库获取所有商品
-        List<Product> products = productRepository.findAll();
-
-        // 转换为DTO列表，优先使用Redis中的库存信息
-        return products.stream()
-                .map(product -> {
-                    ProductDTO dto = new ProductDTO();
-                    BeanUtils.copyProperties(product, dto);
-
-                    // 尝试从Redis获取实时库存
-                    String stockKey = RedisKeyPrefix.PRODUCT_STOCK + product.getId();
-                    Object redisStock = mockRedisService.get(stockKey);
-
-                    if (redisStock != null) {
-                        // 使用Redis中的库存
-                        try {
-                            dto.setStock(Integer.parseInt(redisStock.toString()));
-                            log.debug("商品列表使用Redis库存: productId={}, stock={}", product.getId(), redisStock);
-                        } catch (NumberFormatException e) {
-                            log.warn("Redis库存格式错误, productId={}, redisStock={}, 使用数据库库存",
-                                    product.getId(), redisStock);
-                            dto.setStock(product.getStock());
-                        }
-                    } else {
-                        // Redis中没有库存信息，使用数据库库存
-                        dto.setStock(product.getStock());
-                        log.debug("商品列表使用数据库库存: productId={}, stock={}", product.getId(), product.getStock());
-                    }
-
-                    return dto;
-                })
-                .collect(Collectors.toList());
+    public List<ProductView> getAllProducts() {
+        // 从物化视图读取，库存按页叠加Redis实时库存
+        return productListingService.list(null);
     }
     
     @Override
-    public List<ProductDTO> getProductsByStatus(Integer status) {
-        // 从数据库获取指定状态的商品
-        List<Product> products = productRepository.findByStatus(status);
-        
-        // 转换为DTO列表
-        return products.stream()
-                .map(product -> {
-                    ProductDTO dto = new ProductDTO();
-                    BeanUtils.copyProperties(product, dto);
-                    return dto;
-                })
-                .collect(Collectors.toList());
+    public List<ProductView> getProductsByStatus(Integer status) {
+        return productListingService.list(status);
+    }
+    
+    @Override
+    public List<ProductView> getProductPage(Long afterId, int size, Integer status) {
+        return productListingService.page(afterId, size, status);
     }
     
     @Override
@@ -210,6 +282,7 @@ public class ProductServiceImpl implements ProductService {
             
             // 保存到数据库
             product = productRepository.save(product);
+            productListingService.upsertAfterCommit(product);
             
             // 转换为DTO
             ProductDTO savedDTO = new ProductDTO();
@@ -218,11 +291,11 @@ public class ProductServiceImpl implements ProductService {
             // 尝试写入Redis缓存
             try {
                 String productInfoKey = RedisKeyPrefix.PRODUCT_INFO + product.getId();
-                mockRedisService.set(productInfoKey, savedDTO, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                mockRedisService.setIfNewer(productInfoKey, ProductSnapshot.from(product), product.getVersion(),
+                        appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
 
                 // 将库存写入缓存
-                String stockKey = RedisKeyPrefix.PRODUCT_STOCK + product.getId();
-                mockRedisService.set(stockKey, product.getStock(), appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                stockCounterService.setStock(product.getId(), product.getStock());
             } catch (Exception e) {
                 log.error("创建商品时Redis缓存写入失败, id: {}, error: {}", product.getId(), e.getMessage());
                 // 缓存写入失败不影响正常业务
@@ -267,7 +340,10 @@ public class ProductServiceImpl implements ProductService {
                 product.setPrice(productDTO.getPrice());
             }
             
-            if (productDTO.getStock() != null) {
+            boolean stockChanged = productDTO.getStock() != null;
+            if (stockChanged) {
+                // 先写回已支付未写回的扣减，之后设置的库存不会再被这些扣减减少
+                stockWriteBehindFlusher.flush();
                 product.setStock(productDTO.getStock());
             }
             
@@ -276,17 +352,19 @@ public class ProductServiceImpl implements ProductService {
             }
             
             product.setUpdateTime(LocalDateTime.now());
+            product.setVersion(product.getVersion() + 1);
             
             // 保存到数据库
             product = productRepository.save(product);
+            productListingService.upsertAfterCommit(product);
             
             // 转换为DTO
             ProductDTO updatedDTO = new ProductDTO();
             BeanUtils.copyProperties(product, updatedDTO);
             
-            // 尝试清除Redis缓存
+            // 按版本失效Redis缓存（延迟双删）
             try {
-                clearProductCache(id);
+                invalidateProductCache(id, product.getVersion(), stockChanged);
             } catch (Exception e) {
                 log.error("更新商品时清除Redis缓存失败, id: {}, error: {}", id, e.getMessage());
                 // 缓存清除失败不影响正常业务
@@ -321,12 +399,14 @@ public class ProductServiceImpl implements ProductService {
             // 更新商品状态为下架
             product.setStatus(0);
             product.setUpdateTime(LocalDateTime.now());
+            product.setVersion(product.getVersion() + 1);
             
             // 保存到数据库
             productRepository.save(product);
+            productListingService.upsertAfterCommit(product);
             
-            // 清除Redis缓存
-            clearProductCache(id);
+            // 按版本失效Redis缓存（延迟双删）
+            invalidateProductCache(id, product.getVersion(), false);
             
             log.info("商品下架成功, id: {}, name: {}", product.getId(), product.getName());
             
@@ -349,8 +429,7 @@ public class ProductServiceImpl implements ProductService {
             mockRedisService.delete(productInfoKey);
 
             // 清除库存缓存
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-            mockRedisService.delete(stockKey);
+            stockCounterService.deleteStock(productId);
             
             log.info("清除商品缓存成功, productId: {}", productId);
         } catch (Exception e) {
@@ -359,6 +438,57 @@ public class ProductServiceImpl implements ProductService {
         }
     }
     
+    /**
+     * 按版本失效商品缓存，事务提交后再失效一次，并在延迟后第三次失效（延迟双删）
+     * 版本水位拒绝读到旧数据的并发请求回填；提交前的失效期间其他请求仍可能从数据库读到旧库存并回填计数器，
+     * 因此提交后的失效和延迟失效都要重置库存计数器和本地租约
+     *
+     * @param productId 商品ID
+     * @param version 修改后的商品版本号
+     * @param resetStock 是否同时重置库存计数器（仅在修改了库存时）
+     */
+    private void invalidateProductCache(Long productId, long version, boolean resetStock) {
+        invalidateNow(productId, version, resetStock);
+        
+        Runnable afterCommit = () -> {
+            invalidateNow(productId, version, resetStock);
+            cacheInvalidationScheduler.schedule(() -> {
+                try {
+                    invalidateNow(productId, version, resetStock);
+                    log.info("延迟双删完成, productId: {}, version: {}", productId, version);
+                } catch (Exception e) {
+                    log.error("延迟双删失败, productId: {}, error: {}", productId, e.getMessage());
+                }
+            }, appConfig.getProductDoubleDeleteDelay(), TimeUnit.MILLISECONDS);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    afterCommit.run();
+                }
+            });
+        } else {
+            afterCommit.run();
+        }
+        
+        log.info("按版本失效商品缓存, productId: {}, version: {}, resetStock: {}", productId, version, resetStock);
+    }
+    
+    private void invalidateNow(Long productId, long version, boolean resetStock) {
+        mockRedisService.invalidate(RedisKeyPrefix.PRODUCT_INFO + productId, version,
+                appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+        if (resetStock) {
+            stockCounterService.deleteStock(productId);
+            stockLeaseService.discard(productId);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        cacheInvalidationScheduler.shutdown();
+    }
+    
     @Override
     @Transactional
     public boolean deductStock(Long productId, Integer quantity) {
@@ -369,37 +499,29 @@ public class ProductServiceImpl implements ProductService {
     @Transactional
     public boolean deductStock(Long productId, Integer quantity, String orderNo) {
         // 先扣减Redis中的库存（使用原子操作保证原子性）
-        String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-        Long result = mockRedisService.decrBy(stockKey, quantity);
-        
-        // 判断扣减结果
-        if (result == null) {
-            log.error("扣减Redis库存失败, productId: {}, quantity: {}", productId, quantity);
-            return false;
-        }
+        long result = stockCounterService.deduct(productId, quantity, orderNo);
         
         if (result < 0) {
             // 处理不同的错误码
-            if (result == -1L) {
+            if (result == StockCounterService.NOT_CACHED) {
                 log.warn("Redis中不存在该商品库存, productId: {}, 从数据库加载", productId);
                 // Redis中不存在库存，从数据库加载
-                Optional<Product> productOpt = productRepository.findById(productId);
-                if (productOpt.isPresent()) {
-                    Product product = productOpt.get();
-                    if (product.getStock() >= quantity) {
+                Integer dbStock = productRepository.findSellableStockById(productId);
+                if (dbStock != null) {
+                    if (dbStock >= quantity) {
                         // 将库存写入Redis
-                        mockRedisService.set(stockKey, product.getStock(), appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                        stockCounterService.initStock(productId, dbStock);
                         // 重新执行扣减
                         return deductStock(productId, quantity, orderNo);
                     } else {
-                        log.warn("库存不足, productId: {}, stock: {}, quantity: {}", productId, product.getStock(), quantity);
+                        log.warn("库存不足, productId: {}, stock: {}, quantity: {}", productId, dbStock, quantity);
                         return false;
                     }
                 } else {
                     log.error("商品不存在, productId: {}", productId);
                     return false;
                 }
-            } else if (result == -2L) {
+            } else if (result == StockCounterService.INSUFFICIENT) {
                 log.warn("库存不足, productId: {}, quantity: {}", productId, quantity);
                 return false;
             } else {
@@ -408,20 +530,22 @@ public class ProductServiceImpl implements ProductService {
             }
         }
         
-        log.info("Redis库存扣减成功, productId: {}, quantity: {}, 剩余库存: {}", productId, quantity, result);
+        // 分段商品返回的是所扣段的剩余，日志按商品库存总量记录
+        long remaining = stockCounterService.totalAfter(productId, result);
+        log.info("Redis库存扣减成功, productId: {}, quantity: {}, 剩余库存: {}", productId, quantity, remaining);
         
         // 记录库存扣减日志
         StockLog stockLog = StockLog.builder()
                 .productId(productId)
-                .beforeStock(result.intValue() + quantity)
-                .afterStock(result.intValue())
+                .beforeStock((int) remaining + quantity)
+                .afterStock((int) remaining)
                 .changeAmount(quantity)
                 .operationType("DEDUCT")
                 .orderId(orderNo)
                 .createTime(LocalDateTime.now())
                 .synced(true)
                 .build();
-        stockLogRepository.save(stockLog);
+        stockLogJournal.append(stockLog);
         
         return true;
     }
@@ -436,29 +560,23 @@ public class ProductServiceImpl implements ProductService {
     @Transactional
     public boolean increaseStock(Long productId, Integer quantity, String orderNo) {
         // 增加Redis中的库存
-        String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-        boolean hasKey = mockRedisService.exists(stockKey);
+        boolean hasKey = stockCounterService.isCached(productId);
         Integer beforeStock = 0;
         Integer afterStock = 0;
 
         if (hasKey) {
-            Object stockObj = mockRedisService.get(stockKey);
-            if (stockObj != null) {
-                beforeStock = Integer.parseInt(stockObj.toString());
-            }
-
-            Long newStock = mockRedisService.incrBy(stockKey, quantity);
-            afterStock = newStock.intValue();
+            long newStock = stockCounterService.increase(productId, quantity, orderNo);
+            afterStock = (int) newStock;
+            beforeStock = afterStock - quantity;
             log.info("Redis库存增加成功, productId: {}, quantity: {}", productId, quantity);
         } else {
             // 如果Redis中不存在该商品库存，从数据库加载
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (productOpt.isPresent()) {
-                Product product = productOpt.get();
-                beforeStock = product.getStock();
-                mockRedisService.set(stockKey, product.getStock(), appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
-                log.info("从数据库加载库存到Redis, productId: {}, stock: {}", productId, product.getStock());
-                afterStock = product.getStock();
+            Integer dbStock = productRepository.findSellableStockById(productId);
+            if (dbStock != null) {
+                beforeStock = dbStock;
+                stockCounterService.setStock(productId, dbStock);
+                log.info("从数据库加载库存到Redis, productId: {}, stock: {}", productId, dbStock);
+                afterStock = dbStock;
             } else {
                 log.error("商品不存在, productId: {}", productId);
                 return false;
@@ -467,6 +585,7 @@ public class ProductServiceImpl implements ProductService {
         
         // 数据库中增加库存
         int rows = productRepository.increaseStock(productId, quantity);
+        productEntityCache.evict(productId);
         
         // 记录库存增加日志
         StockLog stockLog = StockLog.builder()
@@ -479,7 +598,7 @@ public class ProductServiceImpl implements ProductService {
                 .createTime(LocalDateTime.now())
                 .synced(true)
                 .build();
-        stockLogRepository.save(stockLog);
+        stockLogJournal.append(stockLog);
         
         return rows > 0;
     }
@@ -504,12 +623,14 @@ public class ProductServiceImpl implements ProductService {
             // 更新商品状态为上架
             product.setStatus(1);
             product.setUpdateTime(LocalDateTime.now());
+            product.setVersion(product.getVersion() + 1);
             
             // 保存到数据库
             productRepository.save(product);
+            productListingService.upsertAfterCommit(product);
             
-            // 清除Redis缓存
-            clearProductCache(id);
+            // 按版本失效Redis缓存（延迟双删）
+            invalidateProductCache(id, product.getVersion(), false);
             
             log.info("商品重新上架成功, id: {}, name: {}", product.getId(), product.getName());
             
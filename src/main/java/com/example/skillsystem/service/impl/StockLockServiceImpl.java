@@ -1,6 +1,5 @@
 package com.example.skillsystem.service.impl;
 
-import com.example.skillsystem.entity.Product;
 import com.example.skillsystem.entity.StockLock;
 import com.example.skillsystem.entity.StockLog;
 import com.example.skillsystem.enums.StockLockStatus;
@@ -8,8 +7,9 @@ import com.example.skillsystem.enums.StockOperationType;
 import com.example.skillsystem.mq.StockMessageProducer;
 import com.example.skillsystem.repository.ProductRepository;
 import com.example.skillsystem.repository.StockLockRepository;
-import com.example.skillsystem.repository.StockLogRepository;
+import com.example.skillsystem.service.ProductEntityCache;
 import com.example.skillsystem.service.StockLockService;
+import com.example.skillsystem.service.StockLogJournal;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -25,8 +25,9 @@ import java.util.Optional;
 public class StockLockServiceImpl implements StockLockService {
     
     private final StockLockRepository stockLockRepository;
+    private final ProductEntityCache productEntityCache;
     private final ProductRepository productRepository;
-    private final StockLogRepository stockLogRepository;
+    private final StockLogJournal stockLogJournal;
     private final StockMessageProducer stockMessageProducer;
     
     @Override
@@ -35,15 +36,13 @@ public class StockLockServiceImpl implements StockLockService {
         log.info("开始锁定库存: productId={}, orderNo={}, quantity={}", productId, orderNo, quantity);
         
         try {
-            // 检查商品是否存在
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (!productOpt.isPresent()) {
+            // 检查商品是否存在，直接查询库存列，不经过二级缓存
+            Integer stock = productRepository.findSellableStockById(productId);
+            if (stock == null) {
                 log.error("商品不存在: productId={}", productId);
                 return false;
             }
             
-            Product product = productOpt.get();
-            
             // 检查是否已经锁定过
             Optional<StockLock> existingLock = stockLockRepository.findByOrderNo(orderNo);
             if (existingLock.isPresent()) {
@@ -53,10 +52,10 @@ public class StockLockServiceImpl implements StockLockService {
             
             // 计算当前可用库存（总库存 - 已锁定库存）
             Integer totalLocked = stockLockRepository.getTotalLockedQuantity(productId);
-            Integer availableStock = product.getStock() - (totalLocked != null ? totalLocked : 0);
+            Integer availableStock = stock - (totalLocked != null ? totalLocked : 0);
             
             log.info("库存检查: 总库存={}, 已锁定={}, 可用库存={}, 需要锁定={}", 
-                    product.getStock(), totalLocked, availableStock, quantity);
+                    stock, totalLocked, availableStock, quantity);
             
             // 检查可用库存是否足够
             if (availableStock < quantity) {
@@ -90,7 +89,7 @@ public class StockLockServiceImpl implements StockLockService {
                     .remark("锁定库存: " + quantity + " 件")
                     .build();
             
-            stockLogRepository.save(stockLog);
+            stockLogJournal.append(stockLog);
             
             log.info("库存锁定成功: productId={}, orderNo={}, quantity={}", productId, orderNo, quantity);
             return true;
@@ -122,11 +121,13 @@ public class StockLockServiceImpl implements StockLockService {
                 return true; // 已经不是锁定状态，认为释放成功
             }
             
-            // 更新锁定状态为已释放
-            stockLock.setStatus(StockLockStatus.RELEASED.getCode());
-            stockLock.setReleaseTime(LocalDateTime.now());
-            stockLock.setRemark("订单取消，释放库存锁定");
-            stockLockRepository.save(stockLock);
+            // 按状态条件更新为已释放，与并发的支付只有一个能成功
+            int rows = stockLockRepository.updateStatus(orderNo, StockLockStatus.LOCKED.getCode(),
+                    StockLockStatus.RELEASED.getCode(), LocalDateTime.now(), "订单取消，释放库存锁定");
+            if (rows == 0) {
+                log.warn("库存锁定已被其他操作处理: orderNo={}", orderNo);
+                return true;
+            }
             
             // 记录库存操作日志
             StockLog stockLog = StockLog.builder()
@@ -141,7 +142,7 @@ public class StockLockServiceImpl implements StockLockService {
                     .remark("释放库存锁定: " + stockLock.getLockedQuantity() + " 件")
                     .build();
             
-            stockLogRepository.save(stockLog);
+            stockLogJournal.append(stockLog);
 
             // 发送库存回滚MQ消息
             try {
@@ -172,79 +173,56 @@ public class StockLockServiceImpl implements StockLockService {
         log.info("开始扣减锁定库存: orderNo={}", orderNo);
         
         try {
-            Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
-            if (!lockOpt.isPresent()) {
-                log.error("未找到库存锁定记录: orderNo={}", orderNo);
-                return false;
-            }
-            
-            StockLock stockLock = lockOpt.get();
-            
-            // 检查状态
-            if (!StockLockStatus.LOCKED.getCode().equals(stockLock.getStatus())) {
-                log.error("库存锁定状态不正确: orderNo={}, status={}", orderNo, stockLock.getStatus());
-                return false;
-            }
-            
-            // 获取商品信息
-            Optional<Product> productOpt = productRepository.findById(stockLock.getProductId());
-            if (!productOpt.isPresent()) {
-                log.error("商品不存在: productId={}", stockLock.getProductId());
+            // 状态检查、库存检查、扣减库存和更新锁定状态在一条条件更新中完成，并发支付不会丢失更新
+            int rows = stockLockRepository.deductLockedStock(orderNo, StockLockStatus.LOCKED.getCode(),
+                    StockLockStatus.DEDUCTED.getCode(), "支付成功，扣减库存");
+            if (rows == 0) {
+                Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
+                if (lockOpt.isEmpty()) {
+                    log.error("未找到库存锁定记录: orderNo={}", orderNo);
+                } else if (!StockLockStatus.LOCKED.getCode().equals(lockOpt.get().getStatus())) {
+                    log.error("库存锁定状态不正确: orderNo={}, status={}", orderNo, lockOpt.get().getStatus());
+                } else {
+                    log.error("库存不足或商品不存在，无法扣减: orderNo={}, deductQuantity={}",
+                            orderNo, lockOpt.get().getLockedQuantity());
+                }
                 return false;
             }
             
-            Product product = productOpt.get();
-            Integer beforeStock = product.getStock();
-            Integer afterStock = beforeStock - stockLock.getLockedQuantity();
-            
-            // 检查库存是否足够
-            if (afterStock < 0) {
-                log.error("库存不足，无法扣减: beforeStock={}, deductQuantity={}", beforeStock, stockLock.getLockedQuantity());
-                return false;
-            }
-            
-            // 扣减实际库存
-            product.setStock(afterStock);
-            product.setUpdateTime(LocalDateTime.now());
-            productRepository.save(product);
-            
-            // 更新锁定状态为已扣减
-            stockLock.setStatus(StockLockStatus.DEDUCTED.getCode());
-            stockLock.setReleaseTime(LocalDateTime.now());
-            stockLock.setRemark("支付成功，扣减库存");
-            stockLockRepository.save(stockLock);
+            // 商品行已被本事务锁定，读到的库存就是扣减后的值
+            Object[] row = stockLockRepository.findLockedQuantityAndStock(orderNo).get(0);
+            Long productId = (Long) row[0];
+            productEntityCache.evict(productId);
+            Integer quantity = (Integer) row[1];
+            Integer afterStock = (Integer) row[2];
+            Integer beforeStock = afterStock + quantity;
             
             // 记录库存操作日志
             StockLog stockLog = StockLog.builder()
-                    .productId(stockLock.getProductId())
+                    .productId(productId)
                     .beforeStock(beforeStock)
                     .afterStock(afterStock)
-                    .changeAmount(-stockLock.getLockedQuantity())
+                    .changeAmount(-quantity)
                     .operationType(StockOperationType.DEDUCT.getCode())
                     .orderId(orderNo)
                     .createTime(LocalDateTime.now())
                     .synced(false)
-                    .remark("支付成功，扣减库存: " + stockLock.getLockedQuantity() + " 件")
+                    .remark("支付成功，扣减库存: " + quantity + " 件")
                     .build();
             
-            stockLogRepository.save(stockLog);
+            stockLogJournal.append(stockLog);
 
             // 发送库存扣减MQ消息
             try {
-                stockMessageProducer.sendStockDeductionMessage(
-                    stockLock.getProductId(),
-                    stockLock.getLockedQuantity(),
-                    orderNo
-                );
-                log.info("发送库存扣减MQ消息成功: orderNo={}, productId={}, quantity={}",
-                        orderNo, stockLock.getProductId(), stockLock.getLockedQuantity());
+                stockMessageProducer.sendStockDeductionMessage(productId, quantity, orderNo);
+                log.info("发送库存扣减MQ消息成功: orderNo={}, productId={}, quantity={}", orderNo, productId, quantity);
             } catch (Exception mqException) {
                 log.error("发送库存扣减MQ消息失败: orderNo={}, error={}", orderNo, mqException.getMessage());
                 // MQ发送失败不影响业务流程
             }
 
             log.info("锁定库存扣减成功: orderNo={}, quantity={}, beforeStock={}, afterStock={}",
-                    orderNo, stockLock.getLockedQuantity(), beforeStock, afterStock);
+                    orderNo, quantity, beforeStock, afterStock);
             return true;
             
         } catch (Exception e) {
@@ -287,7 +265,7 @@ public class StockLockServiceImpl implements StockLockService {
                         .remark("锁定过期，自动释放: " + lock.getLockedQuantity() + " 件")
                         .build();
                 
-                stockLogRepository.save(stockLog);
+                stockLogJournal.append(stockLog);
                 cleanedCount++;
                 
                 log.info("清理过期锁定: orderNo={}, productId={}, quantity={}", 
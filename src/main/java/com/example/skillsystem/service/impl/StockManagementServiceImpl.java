@@ -1,7 +1,7 @@
 package com.example.skillsystem.service.impl;
 
-import com.example.skillsystem.constants.RedisKeyPrefix;
-import com.example.skillsystem.entity.Product;
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.entity.Order;
 import com.example.skillsystem.entity.StockLock;
 import com.example.skillsystem.entity.StockLog;
 import com.example.skillsystem.enums.StockLockStatus;
@@ -9,17 +9,29 @@ import com.example.skillsystem.enums.StockOperationType;
 import com.example.skillsystem.mq.StockMessageProducer;
 import com.example.skillsystem.repository.ProductRepository;
 import com.example.skillsystem.repository.StockLockRepository;
-import com.example.skillsystem.repository.StockLogRepository;
-import com.example.skillsystem.service.MockRedisService;
+import com.example.skillsystem.service.ProductEntityCache;
+import com.example.skillsystem.service.PurchaseLimitService;
+import com.example.skillsystem.service.StockCounterService;
+import com.example.skillsystem.service.StockLeaseService;
+import com.example.skillsystem.service.StockLockCombiner;
+import com.example.skillsystem.service.StockLockRecordWriter;
+import com.example.skillsystem.service.StockLogJournal;
 import com.example.skillsystem.service.StockManagementService;
+import com.example.skillsystem.service.StockWriteBehindFlusher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
 
 
 @Slf4j
@@ -27,99 +39,63 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class StockManagementServiceImpl implements StockManagementService {
     
-    private final MockRedisService mockRedisService;
+    private final StockCounterService stockCounterService;
+    private final StockLeaseService stockLeaseService;
+    private final StockLockCombiner stockLockCombiner;
+    private final PurchaseLimitService purchaseLimitService;
     private final ProductRepository productRepository;
     private final StockLockRepository stockLockRepository;
-    private final StockLogRepository stockLogRepository;
+    private final ProductEntityCache productEntityCache;
+    private final StockLogJournal stockLogJournal;
     private final StockMessageProducer stockMessageProducer;
+    private final StockLockRecordWriter stockLockRecordWriter;
+    private final StockWriteBehindFlusher stockWriteBehindFlusher;
+    private final PlatformTransactionManager transactionManager;
+    private final AppConfig appConfig;
+    
+    // 订单锁定标记的保留时间，需长于锁定记录的30分钟过期时间
+    private static final long LOCK_MARKER_TTL_MINUTES = 60;
     
     @Override
-    @Transactional
     public boolean lockRedisStock(Long productId, String orderNo, Integer quantity) {
-        log.info("开始锁定Redis库存: productId={}, orderNo={}, quantity={}", productId, orderNo, quantity);
+        return lockRedisStock(productId, orderNo, quantity, null);
+    }
+    
+    @Override
+    public boolean lockRedisStock(Long productId, String orderNo, Integer quantity, Long userId) {
+        log.info("开始锁定Redis库存: productId={}, orderNo={}, quantity={}, userId={}", productId, orderNo, quantity, userId);
         
         try {
-            // 检查商品是否存在
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (!productOpt.isPresent()) {
-                log.error("商品不存在: productId={}", productId);
-                return false;
-            }
+            // 幂等检查、库存检查、扣减一次完成，请求只等待这一步
+            long remainingStock = lockStock(productId, orderNo, quantity, userId);
             
-            Product product = productOpt.get();
+            if (remainingStock == StockCounterService.NOT_CACHED) {
+                // Redis中没有库存，从数据库加载后重试一次
+                // 直接查询可售库存，不经过二级缓存，并扣除已支付未写回的数量
+                Integer dbStock = productRepository.findSellableStockById(productId);
+                if (dbStock == null) {
+                    log.error("商品不存在: productId={}", productId);
+                    return false;
+                }
+                stockCounterService.initStock(productId, dbStock);
+                log.info("同步数据库库存到Redis: productId={}, stock={}", productId, dbStock);
+                remainingStock = lockStock(productId, orderNo, quantity, userId);
+            }
             
-            // 检查是否已经锁定过
-            Optional<StockLock> existingLock = stockLockRepository.findByOrderNo(orderNo);
-            if (existingLock.isPresent()) {
+            if (remainingStock == StockCounterService.ALREADY_LOCKED) {
                 log.warn("订单已锁定库存: orderNo={}", orderNo);
                 return true;
             }
-            
-            // 确保Redis中有库存数据
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-            Object redisStock = mockRedisService.get(stockKey);
-            Integer currentStock;
-
-            if (redisStock == null) {
-                // 同步数据库库存到Redis
-                currentStock = product.getStock();
-                mockRedisService.set(stockKey, currentStock);
-                log.info("同步数据库库存到Redis: productId={}, stock={}", productId, currentStock);
-            } else {
-                if (redisStock instanceof Integer) {
-                    currentStock = (Integer) redisStock;
-                } else if (redisStock instanceof Long) {
-                    currentStock = ((Long) redisStock).intValue();
-                } else {
-                    currentStock = Integer.parseInt(redisStock.toString());
-                }
-            }
-
-            // 检查库存是否足够
-            if (currentStock < quantity) {
-                log.error("Redis库存不足: productId={}, 需要={}, 当前库存={}", productId, quantity, currentStock);
+            if (remainingStock == StockCounterService.LIMIT_EXCEEDED) {
+                log.warn("超过用户限购数量: productId={}, userId={}, quantity={}", productId, userId, quantity);
                 return false;
             }
-
-            // 原子性扣减Redis库存
-            Long remainingStock = mockRedisService.decrBy(stockKey, quantity);
-            if (remainingStock == null || remainingStock < 0) {
-                // 库存不足，回滚Redis库存
-                if (remainingStock != null && remainingStock < 0) {
-                    mockRedisService.incrBy(stockKey, quantity);
-                }
-                log.error("Redis库存扣减失败: productId={}, 需要={}, 剩余={}", productId, quantity, remainingStock);
+            if (remainingStock < 0) {
+                log.error("Redis库存不足: productId={}, 需要={}, 结果={}", productId, quantity, remainingStock);
                 return false;
             }
             
-            // 创建库存锁定记录
-            StockLock stockLock = StockLock.builder()
-                    .productId(productId)
-                    .orderNo(orderNo)
-                    .lockedQuantity(quantity)
-                    .status(StockLockStatus.LOCKED.getCode())
-                    .createTime(LocalDateTime.now())
-                    .expireTime(LocalDateTime.now().plusMinutes(30)) // 30分钟后过期
-                    .remark("下单锁定Redis库存")
-                    .build();
-            
-            stockLockRepository.save(stockLock);
-            
-            // 记录库存操作日志
-            StockLog stockLog = StockLog.builder()
-                    .productId(productId)
-                    .beforeStock(remainingStock.intValue() + quantity)
-                    .afterStock(remainingStock.intValue())
-                    .changeAmount(-quantity)
-                    .operationType(StockOperationType.LOCK.getCode())
-                    .orderId(orderNo)
-                    .createTime(LocalDateTime.now())
-                    .synced(false)
-                    .remark("下单锁定Redis库存: " + quantity + " 件")
-                    .build();
-            
-            stockLogRepository.save(stockLog);
-            
+            // 锁定记录和日志已在lockStock中提交异步批量落库，不占用请求线程
             log.info("Redis库存锁定成功: productId={}, orderNo={}, quantity={}, 剩余库存={}", 
                     productId, orderNo, quantity, remainingStock);
             return true;
@@ -131,86 +107,199 @@ public class StockManagementServiceImpl implements StockManagementService {
         }
     }
     
+    @Override
+    public boolean lockRedisStock(List<Order> orders) {
+        // 按商品ID排序，所有多商品订单以相同的顺序访问各商品的库存
+        List<Order> sorted = orders.stream().sorted(Comparator.comparing(Order::getProductId)).toList();
+        log.info("开始锁定多商品订单库存: 商品数={}, orderNos={}", sorted.size(),
+                sorted.stream().map(Order::getOrderNo).toList());
+        
+        try {
+            boolean allPlain = sorted.stream().allMatch(order -> isPlainStock(order.getProductId(), order.getUserId()));
+            return allPlain ? lockAllAtomically(sorted) : lockAllInOrder(sorted);
+        } catch (Exception e) {
+            log.error("多商品订单锁定库存失败: error={}", e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * 不限购、不租约、不分段的商品可以放进同一个原子脚本
+     */
+    private boolean isPlainStock(Long productId, Long userId) {
+        return (userId == null || purchaseLimitService.getLimit(productId) == null)
+                && !stockLeaseService.isLeased(productId)
+                && !stockCounterService.isSegmented(productId);
+    }
+    
+    /**
+     * 一次原子操作锁定所有商品，任一商品失败时所有商品都不扣减；锁定记录一起提交批量写入
+     */
+    private boolean lockAllAtomically(List<Order> orders) {
+        List<Long> productIds = orders.stream().map(Order::getProductId).toList();
+        List<String> orderNos = orders.stream().map(Order::getOrderNo).toList();
+        List<Integer> quantities = orders.stream().map(Order::getQuantity).toList();
+        
+        List<Long> results = stockCounterService.lockAll(productIds, orderNos, quantities,
+                LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES);
+        if (results.get(0) == StockCounterService.NOT_CACHED) {
+            // 把未缓存的商品库存从数据库加载到Redis后重试一次
+            for (Long productId : productIds) {
+                if (stockCounterService.isCached(productId)) {
+                    continue;
+                }
+                Integer dbStock = productRepository.findSellableStockById(productId);
+                if (dbStock == null) {
+                    log.error("商品不存在: productId={}", productId);
+                    return false;
+                }
+                stockCounterService.initStock(productId, dbStock);
+            }
+            results = stockCounterService.lockAll(productIds, orderNos, quantities, LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES);
+        }
+        
+        if (results.get(0) < 0) {
+            log.error("多商品订单锁定库存失败: productId={}, 结果={}", productIds.get(results.get(1).intValue()), results.get(0));
+            return false;
+        }
+        
+        List<StockLockRecordWriter.PendingRecord> records = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            records.add(buildLockRecord(productIds.get(i), orderNos.get(i), quantities.get(i), results.get(i)));
+        }
+        stockLockRecordWriter.submitAll(records);
+        log.info("多商品订单锁定库存成功: orderNos={}, 剩余库存={}", orderNos, results);
+        return true;
+    }
+    
+    /**
+     * 含限购、租约或分段商品时按商品ID顺序逐个锁定，某个商品失败时回滚已锁定的商品
+     */
+    private boolean lockAllInOrder(List<Order> orders) {
+        List<Order> locked = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            if (lockRedisStock(order.getProductId(), order.getOrderNo(), order.getQuantity(), order.getUserId())) {
+                locked.add(order);
+                continue;
+            }
+            for (Order lockedOrder : locked) {
+                rollbackRedisStock(lockedOrder.getOrderNo());
+                purchaseLimitService.release(lockedOrder);
+            }
+            log.warn("多商品订单锁定库存失败，已回滚 {} 个商品: productId={}", locked.size(), order.getProductId());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 限购商品在同一个原子操作中检查限购和扣减库存；租约商品从本实例的租约扣减，
+     * 分段商品扣减分段计数器，其他商品合并同商品的并发请求后批量扣减。
+     * 锁定成功时提交锁定记录和库存日志
+     */
+    private long lockStock(Long productId, String orderNo, Integer quantity, Long userId) {
+        LongFunction<StockLockRecordWriter.PendingRecord> recordBuilder =
+                remainingStock -> buildLockRecord(productId, orderNo, quantity, remainingStock);
+        
+        Integer limit = userId != null ? purchaseLimitService.getLimit(productId) : null;
+        long remainingStock;
+        if (limit != null) {
+            remainingStock = stockCounterService.lockWithLimit(productId, orderNo, quantity, userId, limit,
+                    LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES);
+        } else if (stockLeaseService.isLeased(productId)) {
+            remainingStock = stockLeaseService.lock(productId, orderNo, quantity, LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES);
+        } else if (stockCounterService.isSegmented(productId) || !appConfig.getStock().getCombinerEnabled()) {
+            remainingStock = stockCounterService.lock(productId, orderNo, quantity, LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES);
+        } else {
+            // 合并线程随整批一起提交锁定记录
+            return stockLockCombiner.lock(productId, orderNo, quantity, LOCK_MARKER_TTL_MINUTES, TimeUnit.MINUTES, recordBuilder);
+        }
+        
+        if (remainingStock >= 0) {
+            // 分段商品返回的是所扣段的剩余，日志按商品库存总量记录
+            stockLockRecordWriter.submitAll(List.of(recordBuilder.apply(stockCounterService.totalAfter(productId, remainingStock))));
+        }
+        return remainingStock;
+    }
+    
+    /**
+     * 创建库存锁定记录和库存操作日志
+     */
+    private StockLockRecordWriter.PendingRecord buildLockRecord(Long productId, String orderNo, Integer quantity, long remainingStock) {
+        StockLock stockLock = StockLock.builder()
+                .productId(productId)
+                .orderNo(orderNo)
+                .lockedQuantity(quantity)
+                .status(StockLockStatus.LOCKED.getCode())
+                .createTime(LocalDateTime.now())
+                .expireTime(LocalDateTime.now().plusMinutes(30)) // 30分钟后过期
+                .remark("下单锁定Redis库存")
+                .build();
+        
+        StockLog stockLog = StockLog.builder()
+                .productId(productId)
+                .beforeStock((int) remainingStock + quantity)
+                .afterStock((int) remainingStock)
+                .changeAmount(-quantity)
+                .operationType(StockOperationType.LOCK.getCode())
+                .orderId(orderNo)
+                .createTime(LocalDateTime.now())
+                .synced(false)
+                .remark("下单锁定Redis库存: " + quantity + " 件")
+                .build();
+        
+        return new StockLockRecordWriter.PendingRecord(stockLock, stockLog);
+    }
+    
     @Override
     @Transactional
     public boolean deductDatabaseStock(String orderNo) {
         log.info("开始扣减数据库库存: orderNo={}", orderNo);
         
         try {
-            Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
-            if (!lockOpt.isPresent()) {
-                log.error("未找到库存锁定记录: orderNo={}", orderNo);
+            if (!stockLockRecordWriter.awaitPersisted(orderNo)) {
+                log.error("库存锁定记录尚未写入数据库，暂时无法扣减: orderNo={}", orderNo);
                 return false;
             }
             
-            StockLock stockLock = lockOpt.get();
-            
-            // 检查锁定状态
-            if (!StockLockStatus.LOCKED.getCode().equals(stockLock.getStatus())) {
-                log.error("库存锁定状态不正确: orderNo={}, status={}", orderNo, stockLock.getStatus());
-                return false;
+            if (stockWriteBehindFlusher.isEnabled()) {
+                return markPendingFlush(orderNo);
             }
             
-            // 获取商品信息
-            Optional<Product> productOpt = productRepository.findById(stockLock.getProductId());
-            if (!productOpt.isPresent()) {
-                log.error("商品不存在: productId={}", stockLock.getProductId());
+            // 状态检查、库存检查、扣减库存和更新锁定状态在一条条件更新中完成，并发支付不会丢失更新
+            int rows = stockLockRepository.deductLockedStock(orderNo, StockLockStatus.LOCKED.getCode(),
+                    StockLockStatus.DEDUCTED.getCode(), "支付成功，扣减数据库库存");
+            if (rows == 0) {
+                logDeductFailure(orderNo);
                 return false;
             }
             
-            Product product = productOpt.get();
-            Integer beforeStock = product.getStock();
-            Integer afterStock = beforeStock - stockLock.getLockedQuantity();
-            
-            // 检查数据库库存是否足够
-            if (afterStock < 0) {
-                log.error("数据库库存不足，无法扣减: beforeStock={}, deductQuantity={}", 
-                        beforeStock, stockLock.getLockedQuantity());
-                return false;
-            }
-            
-            // 扣减数据库库存
-            product.setStock(afterStock);
-            product.setUpdateTime(LocalDateTime.now());
-            productRepository.save(product);
-            
-            // 更新锁定状态为已扣减
-            stockLock.setStatus(StockLockStatus.DEDUCTED.getCode());
-            stockLock.setReleaseTime(LocalDateTime.now());
-            stockLock.setRemark("支付成功，扣减数据库库存");
-            stockLockRepository.save(stockLock);
+            // 商品行已被本事务锁定，读到的库存就是扣减后的值
+            Object[] row = stockLockRepository.findLockedQuantityAndStock(orderNo).get(0);
+            Long productId = (Long) row[0];
+            productEntityCache.evict(productId);
+            Integer quantity = (Integer) row[1];
+            Integer afterStock = (Integer) row[2];
+            Integer beforeStock = afterStock + quantity;
             
             // 记录库存操作日志
             StockLog stockLog = StockLog.builder()
-                    .productId(stockLock.getProductId())
+                    .productId(productId)
                     .beforeStock(beforeStock)
                     .afterStock(afterStock)
-                    .changeAmount(-stockLock.getLockedQuantity())
+                    .changeAmount(-quantity)
                     .operationType(StockOperationType.DEDUCT.getCode())
                     .orderId(orderNo)
                     .createTime(LocalDateTime.now())
                     .synced(true)
-                    .remark("支付成功，扣减数据库库存: " + stockLock.getLockedQuantity() + " 件")
+                    .remark("支付成功，扣减数据库库存: " + quantity + " 件")
                     .build();
             
-            stockLogRepository.save(stockLog);
-
-            // 发送库存扣减MQ消息
-            try {
-                stockMessageProducer.sendStockDeductionMessage(
-                    stockLock.getProductId(),
-                    stockLock.getLockedQuantity(),
-                    orderNo
-                );
-                log.info("发送库存扣减MQ消息成功: orderNo={}, productId={}, quantity={}",
-                        orderNo, stockLock.getProductId(), stockLock.getLockedQuantity());
-            } catch (Exception mqException) {
-                log.error("发送库存扣减MQ消息失败: orderNo={}, error={}", orderNo, mqException.getMessage());
-                // MQ发送失败不影响业务流程
-            }
+            stockLogJournal.append(stockLog);
+            sendDeductionMessage(productId, quantity, orderNo);
 
             log.info("数据库库存扣减成功: orderNo={}, quantity={}, beforeStock={}, afterStock={}",
-                    orderNo, stockLock.getLockedQuantity(), beforeStock, afterStock);
+                    orderNo, quantity, beforeStock, afterStock);
             return true;
             
         } catch (Exception e) {
@@ -219,89 +308,144 @@ public class StockManagementServiceImpl implements StockManagementService {
         }
     }
     
+    /**
+     * 写回合并模式：只把锁定记录标记为已扣减待写回，商品库存和库存日志由写回线程按批次处理。
+     * Redis锁定时已经占住了这部分库存，这里不再检查数据库库存
+     */
+    private boolean markPendingFlush(String orderNo) {
+        int rows = stockLockRepository.markDeductedPendingFlush(orderNo, StockLockStatus.LOCKED.getCode(),
+                StockLockStatus.DEDUCTED.getCode(), "支付成功，等待写回数据库库存");
+        if (rows == 0) {
+            logDeductFailure(orderNo);
+            return false;
+        }
+        
+        StockLock stockLock = stockLockRepository.findByOrderNo(orderNo).get();
+        stockWriteBehindFlusher.recordDeduction(stockLock.getProductId(), stockLock.getLockedQuantity());
+        sendDeductionMessage(stockLock.getProductId(), stockLock.getLockedQuantity(), orderNo);
+        
+        log.info("库存扣减已登记，等待写回数据库: orderNo={}, productId={}, quantity={}",
+                orderNo, stockLock.getProductId(), stockLock.getLockedQuantity());
+        return true;
+    }
+    
+    private void sendDeductionMessage(Long productId, Integer quantity, String orderNo) {
+        try {
+            stockMessageProducer.sendStockDeductionMessage(productId, quantity, orderNo);
+            log.info("发送库存扣减MQ消息成功: orderNo={}, productId={}, quantity={}", orderNo, productId, quantity);
+        } catch (Exception mqException) {
+            log.error("发送库存扣减MQ消息失败: orderNo={}, error={}", orderNo, mqException.getMessage());
+            // MQ发送失败不影响业务流程
+        }
+    }
+    
+    /**
+     * 条件更新没有生效时查明原因，只在失败时多查一次
+     */
+    private void logDeductFailure(String orderNo) {
+        Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
+        if (lockOpt.isEmpty()) {
+            log.error("未找到库存锁定记录: orderNo={}", orderNo);
+        } else if (!StockLockStatus.LOCKED.getCode().equals(lockOpt.get().getStatus())) {
+            log.error("库存锁定状态不正确: orderNo={}, status={}", orderNo, lockOpt.get().getStatus());
+        } else {
+            log.error("数据库库存不足或商品不存在，无法扣减: orderNo={}, productId={}, deductQuantity={}",
+                    orderNo, lockOpt.get().getProductId(), lockOpt.get().getLockedQuantity());
+        }
+    }
+    
+    /**
+     * 先在事务外等待锁定记录落库，再在事务中按状态条件释放锁定并退回库存
+     */
     @Override
-    @Transactional
     public boolean rollbackRedisStock(String orderNo) {
         log.info("开始回滚Redis库存: orderNo={}", orderNo);
         
+        if (!stockLockRecordWriter.awaitPersisted(orderNo)) {
+            // 锁定记录落库后由过期清理退回库存，这里不能按没有锁定记录处理
+            log.error("库存锁定记录尚未写入数据库，暂时无法回滚: orderNo={}", orderNo);
+            return false;
+        }
         try {
-            Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
-            if (!lockOpt.isPresent()) {
-                log.warn("未找到库存锁定记录: orderNo={}", orderNo);
-                return true; // 没有锁定记录，认为回滚成功
-            }
-            
-            StockLock stockLock = lockOpt.get();
-            
-            // 检查状态
-            if (!StockLockStatus.LOCKED.getCode().equals(stockLock.getStatus())) {
-                log.warn("库存锁定状态不正确: orderNo={}, status={}", orderNo, stockLock.getStatus());
-                return true; // 已经不是锁定状态，认为回滚成功
-            }
-            
-            // 回滚Redis库存
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + stockLock.getProductId();
-            Long newStock = mockRedisService.incrBy(stockKey, stockLock.getLockedQuantity().longValue());
-            
-            // 更新锁定状态为已释放
-            stockLock.setStatus(StockLockStatus.RELEASED.getCode());
-            stockLock.setReleaseTime(LocalDateTime.now());
-            stockLock.setRemark("订单取消，回滚Redis库存");
-            stockLockRepository.save(stockLock);
-            
-            // 记录库存操作日志
-            StockLog stockLog = StockLog.builder()
-                    .productId(stockLock.getProductId())
-                    .beforeStock(newStock != null ? newStock.intValue() - stockLock.getLockedQuantity() : 0)
-                    .afterStock(newStock != null ? newStock.intValue() : 0)
-                    .changeAmount(stockLock.getLockedQuantity())
-                    .operationType(StockOperationType.ROLLBACK.getCode())
-                    .orderId(orderNo)
-                    .createTime(LocalDateTime.now())
-                    .synced(false)
-                    .remark("订单取消，回滚Redis库存: " + stockLock.getLockedQuantity() + " 件")
-                    .build();
-            
-            stockLogRepository.save(stockLog);
-
-            // 发送库存回滚MQ消息
-            try {
-                stockMessageProducer.sendStockRollbackMessage(
-                    stockLock.getProductId(),
-                    stockLock.getLockedQuantity(),
-                    orderNo
-                );
-                log.info("发送库存回滚MQ消息成功: orderNo={}, productId={}, quantity={}",
-                        orderNo, stockLock.getProductId(), stockLock.getLockedQuantity());
-            } catch (Exception mqException) {
-                log.error("发送库存回滚MQ消息失败: orderNo={}, error={}", orderNo, mqException.getMessage());
-                // MQ发送失败不影响业务流程
-            }
-
-            log.info("Redis库存回滚成功: orderNo={}, quantity={}, 回滚后库存={}",
-                    orderNo, stockLock.getLockedQuantity(), newStock);
-            return true;
-            
+            return Boolean.TRUE.equals(new TransactionTemplate(transactionManager).execute(status -> releaseLock(orderNo)));
         } catch (Exception e) {
             log.error("回滚Redis库存失败: orderNo={}, error={}", orderNo, e.getMessage(), e);
             return false;
         }
     }
     
+    private boolean releaseLock(String orderNo) {
+        Optional<StockLock> lockOpt = stockLockRepository.findByOrderNo(orderNo);
+        if (!lockOpt.isPresent()) {
+            log.warn("未找到库存锁定记录: orderNo={}", orderNo);
+            return true; // 没有锁定记录，认为回滚成功
+        }
+        
+        StockLock stockLock = lockOpt.get();
+        
+        // 检查状态
+        if (!StockLockStatus.LOCKED.getCode().equals(stockLock.getStatus())) {
+            log.warn("库存锁定状态不正确: orderNo={}, status={}", orderNo, stockLock.getStatus());
+            return true; // 已经不是锁定状态，认为回滚成功
+        }
+        
+        // 先按状态条件改为已释放，与并发的支付或过期清理只有一个能成功，Redis库存只退回一次
+        int rows = stockLockRepository.updateStatus(orderNo, StockLockStatus.LOCKED.getCode(),
+                StockLockStatus.RELEASED.getCode(), LocalDateTime.now(), "订单取消，回滚Redis库存");
+        if (rows == 0) {
+            log.warn("库存锁定已被其他操作处理: orderNo={}", orderNo);
+            return true;
+        }
+        
+        // 回滚Redis库存
+        Long newStock = stockCounterService.increase(stockLock.getProductId(), stockLock.getLockedQuantity(), orderNo);
+        
+        // 记录库存操作日志
+        StockLog stockLog = StockLog.builder()
+                .productId(stockLock.getProductId())
+                .beforeStock(newStock != null ? newStock.intValue() - stockLock.getLockedQuantity() : 0)
+                .afterStock(newStock != null ? newStock.intValue() : 0)
+                .changeAmount(stockLock.getLockedQuantity())
+                .operationType(StockOperationType.ROLLBACK.getCode())
+                .orderId(orderNo)
+                .createTime(LocalDateTime.now())
+                .synced(false)
+                .remark("订单取消，回滚Redis库存: " + stockLock.getLockedQuantity() + " 件")
+                .build();
+        
+        stockLogJournal.append(stockLog);
+
+        // 发送库存回滚MQ消息
+        try {
+            stockMessageProducer.sendStockRollbackMessage(
+                stockLock.getProductId(),
+                stockLock.getLockedQuantity(),
+                orderNo
+            );
+            log.info("发送库存回滚MQ消息成功: orderNo={}, productId={}, quantity={}",
+                    orderNo, stockLock.getProductId(), stockLock.getLockedQuantity());
+        } catch (Exception mqException) {
+            log.error("发送库存回滚MQ消息失败: orderNo={}, error={}", orderNo, mqException.getMessage());
+            // MQ发送失败不影响业务流程
+        }
+
+        log.info("Redis库存回滚成功: orderNo={}, quantity={}, 回滚后库存={}",
+                orderNo, stockLock.getLockedQuantity(), newStock);
+        return true;
+    }
+    
     @Override
     public boolean syncStockToRedis(Long productId) {
         try {
-            Optional<Product> productOpt = productRepository.findById(productId);
-            if (!productOpt.isPresent()) {
+            Integer dbStock = productRepository.findSellableStockById(productId);
+            if (dbStock == null) {
                 log.error("商品不存在: productId={}", productId);
                 return false;
             }
             
-            Product product = productOpt.get();
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-            mockRedisService.set(stockKey, product.getStock());
+            stockCounterService.setStock(productId, dbStock);
             
-            log.info("同步库存到Redis成功: productId={}, stock={}", productId, product.getStock());
+            log.info("同步库存到Redis成功: productId={}, stock={}", productId, dbStock);
             return true;
             
         } catch (Exception e) {
@@ -313,14 +457,12 @@ public class StockManagementServiceImpl implements StockManagementService {
     @Override
     public Integer getAvailableStock(Long productId) {
         try {
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-            Object stock = mockRedisService.get(stockKey);
-            if (stock instanceof Integer) {
-                return (Integer) stock;
-            } else if (stock instanceof Long) {
-                return ((Long) stock).intValue();
+            // 分段商品返回各段之和，租约商品加上本实例租约中未售出的部分
+            Integer stock = stockCounterService.getStock(productId);
+            if (stock != null && stockLeaseService.isLeased(productId)) {
+                stock += stockLeaseService.getLeasedStock(productId);
             }
-            return null;
+            return stock;
         } catch (Exception e) {
             log.error("获取Redis库存失败: productId={}, error={}", productId, e.getMessage());
             return null;
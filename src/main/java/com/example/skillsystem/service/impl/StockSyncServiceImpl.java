@@ -1,13 +1,14 @@
 package com.example.skillsystem.service.impl;
 
-import com.example.skillsystem.config.AppConfig;
-import com.example.skillsystem.constants.RedisKeyPrefix;
 import com.example.skillsystem.entity.Product;
 import com.example.skillsystem.entity.StockLog;
 import com.example.skillsystem.repository.ProductRepository;
 import com.example.skillsystem.repository.StockLogRepository;
-import com.example.skillsystem.service.MockRedisService;
+import com.example.skillsystem.service.StockCounterService;
+import com.example.skillsystem.service.StockLogJournal;
+import com.example.skillsystem.service.StockMismatchTracker;
 import com.example.skillsystem.service.StockSyncService;
+import com.example.skillsystem.service.StockWriteBehindFlusher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -19,8 +20,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
@@ -29,31 +28,32 @@ public class StockSyncServiceImpl implements StockSyncService {
     
     private final ProductRepository productRepository;
     private final StockLogRepository stockLogRepository;
-    private final MockRedisService mockRedisService;
-    private final AppConfig appConfig;
+    private final StockLogJournal stockLogJournal;
+    private final StockCounterService stockCounterService;
+    private final StockWriteBehindFlusher stockWriteBehindFlusher;
+    private final StockMismatchTracker stockMismatchTracker;
+    
+    // 核对库存不一致时每批读取的商品数
+    private static final int MISMATCH_CHECK_BATCH = 500;
     
     @Override
     @Transactional
     public void syncStockByProductId(Long productId) {
         log.info("开始同步商品库存, productId: {}", productId);
         
-        // 获取数据库中的库存
-        Optional<Product> productOpt = productRepository.findById(productId);
-        if (productOpt.isEmpty()) {
+        // 获取数据库中的可售库存，直接查询库存列，不经过二级缓存，并扣除已支付未写回的数量
+        Integer dbStock = productRepository.findSellableStockById(productId);
+        if (dbStock == null) {
             log.error("商品不存在, productId: {}", productId);
             return;
         }
         
-        Product product = productOpt.get();
-        Integer dbStock = product.getStock();
-        
         // 获取Redis中的库存
-        String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-        Object redisStockObj = mockRedisService.get(stockKey);
+        Integer redisStock = stockCounterService.getStock(productId);
 
         // 如果Redis中不存在库存，则写入
-        if (redisStockObj == null) {
-            mockRedisService.set(stockKey, dbStock, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+        if (redisStock == null) {
+            stockCounterService.setStock(productId, dbStock);
             log.info("Redis中不存在库存，已写入, productId: {}, stock: {}", productId, dbStock);
             
             // 记录同步日志
@@ -67,20 +67,17 @@ public class StockSyncServiceImpl implements StockSyncService {
                     .synced(true)
                     .remark("Redis中不存在库存，初始化同步")
                     .build();
-            stockLogRepository.save(stockLog);
+            stockLogJournal.append(stockLog);
             
                 return;
             }
         
-        // 获取Redis中的库存值
-        Integer redisStock = Integer.parseInt(redisStockObj.toString());
-        
         // 如果Redis和数据库库存不一致，以数据库为准进行同步
         if (!dbStock.equals(redisStock)) {
             log.warn("库存不一致, productId: {}, dbStock: {}, redisStock: {}", productId, dbStock, redisStock);
             
             // 更新Redis库存
-            mockRedisService.set(stockKey, dbStock, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+            stockCounterService.setStock(productId, dbStock);
             
             // 记录同步日志
             StockLog stockLog = StockLog.builder()
@@ -93,7 +90,7 @@ public class StockSyncServiceImpl implements StockSyncService {
                     .synced(true)
                     .remark("库存不一致，同步修复")
                     .build();
-            stockLogRepository.save(stockLog);
+            stockLogJournal.append(stockLog);
             
             log.info("库存同步完成, productId: {}, 从 {} 修正为 {}", productId, redisStock, dbStock);
         } else {
@@ -106,6 +103,9 @@ public class StockSyncServiceImpl implements StockSyncService {
     public void syncAllStocks() {
         log.info("开始全量同步库存");
         
+        // 先写回已支付未写回的扣减，避免把滞后的数据库库存当作正确值
+        stockWriteBehindFlusher.flush();
+        
         // 获取所有商品
         List<Product> products = productRepository.findAll();
         
@@ -144,26 +144,21 @@ public class StockSyncServiceImpl implements StockSyncService {
                 }
                 
                 // 获取数据库中的当前库存
-                Optional<Product> productOpt = productRepository.findById(productId);
-                if (productOpt.isEmpty()) {
+                Integer currentStock = productRepository.findSellableStockById(productId);
+                if (currentStock == null) {
                     log.error("商品不存在, productId: {}", productId);
                     continue;
                 }
                 
-                Product product = productOpt.get();
-                Integer currentStock = product.getStock();
-                
                 // 获取Redis中的库存
-                String stockKey = RedisKeyPrefix.PRODUCT_STOCK + productId;
-                Object redisStockObj = mockRedisService.get(stockKey);
+                Integer redisStock = stockCounterService.getStock(productId);
 
                 // 如果Redis中不存在库存，则写入当前库存
-                if (redisStockObj == null) {
-                    mockRedisService.set(stockKey, currentStock, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                if (redisStock == null) {
+                    stockCounterService.setStock(productId, currentStock);
                     log.info("Redis中不存在库存，已写入, productId: {}, stock: {}", productId, currentStock);
                 } else {
                     // 应用所有未同步的日志
-                    Integer redisStock = Integer.parseInt(redisStockObj.toString());
                     
                     for (StockLog log : logs) {
                         // 根据操作类型应用变更
@@ -178,7 +173,7 @@ public class StockSyncServiceImpl implements StockSyncService {
                     }
                     
                     // 更新Redis库存
-                    mockRedisService.set(stockKey, redisStock, appConfig.getProductCacheTtl(), TimeUnit.SECONDS);
+                    stockCounterService.setStock(productId, redisStock);
                     
                     // 保存更新后的日志
                     stockLogRepository.saveAll(logs);
@@ -197,47 +192,69 @@ public class StockSyncServiceImpl implements StockSyncService {
         Map<String, Object> result = new HashMap<>();
         
         // 获取所有未同步的日志数量
-        long unsyncedCount = stockLogRepository.findBySyncedFalseOrderByCreateTimeAsc().size();
+        long unsyncedCount = stockLogRepository.countBySyncedFalse();
         result.put("unsyncedCount", unsyncedCount);
         
         // 获取今日同步日志数量
         LocalDateTime today = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
         LocalDateTime tomorrow = today.plusDays(1);
-        List<StockLog> todayLogs = stockLogRepository.findByCreateTimeBetween(today, tomorrow);
-        result.put("todaySyncCount", todayLogs.size());
+        result.put("todaySyncCount", stockLogRepository.countByCreateTimeGreaterThanEqualAndCreateTimeLessThan(today, tomorrow));
         
-        // 获取不一致的商品列表
-        List<Map<String, Object>> inconsistentProducts = new ArrayList<>();
-        List<Product> products = productRepository.findAll();
+        // 获取不一致的商品列表，只重新核对库存有变化的商品
+        refreshMismatches();
+        List<Map<String, Object>> inconsistentProducts = stockMismatchTracker.getMismatches();
         
-        for (Product product : products) {
-            String stockKey = RedisKeyPrefix.PRODUCT_STOCK + product.getId();
-            Object redisStockObj = mockRedisService.get(stockKey);
+        result.put("inconsistentProducts", inconsistentProducts);
+        result.put("inconsistentCount", inconsistentProducts.size());
+        
+        return result;
+    }
+    
+    /**
+     * 重新核对登记过库存变化的商品，每批商品一次数据库查询和一次缓存批量读取
+     */
+    private void refreshMismatches() {
+        if (stockMismatchTracker.takeFullScan()) {
+            List<Long> productIds = productRepository.findAllIds();
+            stockMismatchTracker.retainProducts(productIds);
+            productIds.forEach(stockMismatchTracker::markDirty);
+        }
+        
+        List<Long> dirty = stockMismatchTracker.drainDirty();
+        for (int from = 0; from < dirty.size(); from += MISMATCH_CHECK_BATCH) {
+            List<Long> chunk = dirty.subList(from, Math.min(dirty.size(), from + MISMATCH_CHECK_BATCH));
+            Map<Long, Product> products = new HashMap<>();
+            for (Product product : productRepository.findAllById(chunk)) {
+                products.put(product.getId(), product);
+            }
+            // 与缓存比较的是可售库存，实体中的库存不含已支付未写回的扣减
+            Map<Long, Integer> dbStocks = new HashMap<>();
+            for (Object[] row : productRepository.findSellableStocksByIds(chunk)) {
+                dbStocks.put((Long) row[0], (Integer) row[1]);
+            }
+            Map<Long, Integer> redisStocks = stockCounterService.getStocks(chunk);
             
-            // 如果Redis中不存在库存，或者与数据库库存不一致
-            if (redisStockObj == null) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("productId", product.getId());
-                item.put("productName", product.getName());
-                item.put("dbStock", product.getStock());
-                item.put("redisStock", "不存在");
-                inconsistentProducts.add(item);
-            } else {
-                Integer redisStock = Integer.parseInt(redisStockObj.toString());
-                if (!product.getStock().equals(redisStock)) {
+            for (Long productId : chunk) {
+                Product product = products.get(productId);
+                if (product == null) {
+                    stockMismatchTracker.update(productId, null);
+                    continue;
+                }
+                Integer redisStock = redisStocks.get(productId);
+                Integer dbStock = dbStocks.getOrDefault(productId, product.getStock());
+                
+                // 如果Redis中不存在库存，或者与数据库库存不一致
+                if (redisStock == null || !dbStock.equals(redisStock)) {
                     Map<String, Object> item = new HashMap<>();
                     item.put("productId", product.getId());
                     item.put("productName", product.getName());
-                    item.put("dbStock", product.getStock());
-                    item.put("redisStock", redisStock);
-                    inconsistentProducts.add(item);
+                    item.put("dbStock", dbStock);
+                    item.put("redisStock", redisStock != null ? redisStock : "不存在");
+                    stockMismatchTracker.update(productId, item);
+                } else {
+                    stockMismatchTracker.update(productId, null);
                 }
             }
         }
-        
-        result.put("inconsistentProducts", inconsistentProducts);
-        result.put("inconsistentCount", inconsistentProducts.size());
-        
-        return result;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.IdempotencyService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IdempotencyCacheTask {
+    
+    private final IdempotencyService idempotencyService;
+    
+    /**
+     * 每分钟清理一次过期的幂等结果
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpiredTask() {
+        try {
+            int evicted = idempotencyService.evictExpired();
+            if (evicted > 0) {
+                log.info("清理过期幂等结果 {} 条，剩余 {} 条", evicted, idempotencyService.size());
+            }
+        } catch (Exception e) {
+            log.error("清理过期幂等结果异常", e);
+        }
+    }
+}
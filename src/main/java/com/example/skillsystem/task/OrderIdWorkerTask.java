@@ -0,0 +1,27 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.OrderIdGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderIdWorkerTask {
+    
+    private final OrderIdGenerator orderIdGenerator;
+    
+    /**
+     * 每20秒续期一次订单号机器ID的占用
+     */
+    @Scheduled(fixedDelay = 20000)
+    public void renewWorkerLeaseTask() {
+        try {
+            orderIdGenerator.renewWorkerLease();
+        } catch (Exception e) {
+            log.error("续期订单号机器ID异常", e);
+        }
+    }
+}
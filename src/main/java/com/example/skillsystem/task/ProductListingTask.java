@@ -0,0 +1,27 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.ProductListingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductListingTask {
+    
+    private final ProductListingService productListingService;
+    
+    /**
+     * 定期从数据库刷新商品列表视图，合并其他实例对商品的修改
+     */
+    @Scheduled(fixedDelayString = "${app.product.listing-refresh-interval:30000}")
+    public void refreshListingTask() {
+        try {
+            productListingService.refresh();
+        } catch (Exception e) {
+            log.error("刷新商品列表视图异常", e);
+        }
+    }
+}
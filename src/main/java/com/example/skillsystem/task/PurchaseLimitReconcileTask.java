@@ -0,0 +1,27 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.PurchaseLimitService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PurchaseLimitReconcileTask {
+    
+    private final PurchaseLimitService purchaseLimitService;
+    
+    /**
+     * 每5分钟按数据库订单校正一次用户限购计数
+     */
+    @Scheduled(fixedRate = 300000)
+    public void reconcileTask() {
+        try {
+            purchaseLimitService.reconcile();
+        } catch (Exception e) {
+            log.error("用户限购计数校正异常", e);
+        }
+    }
+}
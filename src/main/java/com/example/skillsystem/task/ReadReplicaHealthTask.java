@@ -0,0 +1,34 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.config.ReplicaRoutingDataSource;
+import com.example.skillsystem.service.ReadYourWritesTracker;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.read-replica", name = "enabled", havingValue = "true")
+public class ReadReplicaHealthTask {
+    
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final AppConfig appConfig;
+    
+    /**
+     * 定时检查从库连接，默认每5秒一次
+     */
+    @Scheduled(fixedDelayString = "${app.read-replica.health-check-interval:5000}")
+    public void healthCheckTask() {
+        try {
+            replicaRoutingDataSource.checkHealth(appConfig.getReadReplica().getHealthCheckTimeout());
+            readYourWritesTracker.evictExpired();
+        } catch (Exception e) {
+            log.error("从库健康检查异常", e);
+        }
+    }
+}
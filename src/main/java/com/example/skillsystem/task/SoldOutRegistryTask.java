@@ -0,0 +1,35 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.SoldOutRegistry;
+import com.example.skillsystem.service.StockManagementService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoldOutRegistryTask {
+    
+    private final SoldOutRegistry soldOutRegistry;
+    private final StockManagementService stockManagementService;
+    
+    /**
+     * 每秒按实际库存校正售罄登记，清除已补货或因广播乱序误登记的商品
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void verifySoldOutTask() {
+        for (Long productId : soldOutRegistry.getSoldOutProducts()) {
+            try {
+                Integer stock = stockManagementService.getAvailableStock(productId);
+                if (stock == null || stock > 0) {
+                    soldOutRegistry.clearLocally(productId);
+                    log.info("售罄登记已校正, productId: {}, stock: {}", productId, stock);
+                }
+            } catch (Exception e) {
+                log.error("校正售罄登记失败, productId: {}", productId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.StockLeaseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockLeaseTask {
+    
+    private final StockLeaseService stockLeaseService;
+    
+    /**
+     * 每秒检查一次库存租约，超时未用完的库存归还共享库存
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void returnExpiredLeasesTask() {
+        try {
+            stockLeaseService.returnExpiredLeases();
+        } catch (Exception e) {
+            log.error("归还过期库存租约异常", e);
+        }
+    }
+}
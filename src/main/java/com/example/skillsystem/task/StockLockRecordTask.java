@@ -0,0 +1,28 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.StockLockRecordWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockLockRecordTask {
+    
+    private final StockLockRecordWriter stockLockRecordWriter;
+    
+    /**
+     * 每5秒尝试把备用文件中的库存锁定记录重新导入数据库
+     * 锁定记录导入前对应的库存无法退回，间隔比库存日志短
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void replayFallbackTask() {
+        try {
+            stockLockRecordWriter.replayFallback();
+        } catch (Exception e) {
+            log.error("导入库存锁定记录备用文件异常", e);
+        }
+    }
+}
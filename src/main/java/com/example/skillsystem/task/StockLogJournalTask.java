@@ -0,0 +1,27 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.StockLogJournal;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockLogJournalTask {
+    
+    private final StockLogJournal stockLogJournal;
+    
+    /**
+     * 每30秒尝试把备用文件中的库存日志重新导入数据库
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void replayFallbackTask() {
+        try {
+            stockLogJournal.replayFallback();
+        } catch (Exception e) {
+            log.error("导入库存日志备用文件异常", e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.service.StockLogStatistics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockLogStatisticsTask {
+    
+    private final StockLogStatistics stockLogStatistics;
+    
+    /**
+     * 每60秒重试写入失败的汇总增量，并从汇总表刷新库存日志累计条数，包含其他实例写入的日志
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void reloadTotalsTask() {
+        try {
+            stockLogStatistics.retryPendingRollup();
+            stockLogStatistics.reloadTotals();
+        } catch (Exception e) {
+            log.error("刷新库存日志统计异常", e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.skillsystem.task;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.service.StockCounterService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockSegmentRebalanceTask {
+    
+    private final StockCounterService stockCounterService;
+    private final AppConfig appConfig;
+    
+    /**
+     * 定期在各段之间均分分段商品的库存，避免部分段提前耗尽后扣减都落到跨段凑齐的慢路径
+     */
+    @Scheduled(fixedDelayString = "${app.stock.segment-rebalance-interval:5000}")
+    public void rebalanceTask() {
+        for (Long productId : appConfig.getStock().getSegmentedProducts()) {
+            try {
+                stockCounterService.rebalance(productId);
+            } catch (Exception e) {
+                log.error("分段库存再平衡失败, productId: {}", productId, e);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.skillsystem.task;
 
+import com.example.skillsystem.service.StockMismatchTracker;
 import com.example.skillsystem.service.StockSyncService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Component;
 public class StockSyncTask {
     
     private final StockSyncService stockSyncService;
+    private final StockMismatchTracker stockMismatchTracker;
     
     /**
      * 每天凌晨2点执行全量同步
@@ -40,4 +42,12 @@ public class StockSyncTask {
             log.error("未同步库存日志处理定时任务执行异常", e);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 每10分钟要求全量核对一次库存不一致商品，覆盖其他实例的库存变化，下次查询同步状态时执行
+     */
+    @Scheduled(fixedRate = 600000)
+    public void mismatchFullScanTask() {
+        stockMismatchTracker.requestFullScan();
+    }
+}
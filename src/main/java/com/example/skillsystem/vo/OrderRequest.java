@@ -2,12 +2,26 @@ package com.example.skillsystem.vo;
 
 import lombok.Data;
 import java.io.Serializable;
+import java.util.List;
 
 @Data
 public class OrderRequest implements Serializable {
     
     private static final long serialVersionUID = 1L;
     
+    private Long userId;
     private Long productId;
     private Integer quantity;
+    
+    // 多商品订单的商品列表，使用批量下单接口时填写
+    private List<Item> items;
+    
+    @Data
+    public static class Item implements Serializable {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private Long productId;
+        private Integer quantity;
+    }
 } 
\ No newline at end of file
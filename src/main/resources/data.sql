@@ -21,3 +21,9 @@ INSERT INTO stock_log (product_id, before_stock, after_stock, change_amount, ope
 VALUES
 (1, 101, 100, 1, 'DEDUCT', (SELECT order_no FROM `order` WHERE product_id = 1 LIMIT 1), true),
 (3, 82, 80, 2, 'DEDUCT', (SELECT order_no FROM `order` WHERE product_id = 3 LIMIT 1), true);
+
+-- 按已有库存日志生成统计汇总
+INSERT INTO stock_log_rollup (stat_date, product_id, operation_type, log_count, change_amount)
+SELECT DATE(create_time), product_id, operation_type, COUNT(*), SUM(change_amount)
+FROM stock_log
+GROUP BY DATE(create_time), product_id, operation_type;
@@ -0,0 +1,30 @@
+-- 下单锁定库存Lua脚本（幂等检查 + 库存检查 + 扣减 一次完成）
+-- KEYS[1]: 库存key
+-- KEYS[2]: 订单锁定标记key
+-- ARGV[1]: 锁定数量
+-- ARGV[2]: 锁定标记过期时间（秒）
+
+-- 如果该订单已经锁定过，返回-3
+if redis.call('exists', KEYS[2]) == 1 then
+    return -3
+end
+
+-- 获取当前库存
+local stock = tonumber(redis.call('get', KEYS[1]))
+
+-- 如果库存不存在，返回-1
+if stock == nil then
+    return -1
+end
+
+-- 如果库存不足，返回-2
+if stock < tonumber(ARGV[1]) then
+    return -2
+end
+
+-- 扣减库存并写入锁定标记
+redis.call('decrby', KEYS[1], ARGV[1])
+redis.call('set', KEYS[2], ARGV[1], 'EX', ARGV[2])
+
+-- 返回扣减后的库存
+return stock - tonumber(ARGV[1])
@@ -0,0 +1,34 @@
+-- 批量锁定库存Lua脚本（同一商品的多个订单按到达顺序逐个判断，一次调用完成）
+-- KEYS[1]: 库存key
+-- KEYS[2..n+1]: 各订单锁定标记key
+-- ARGV[1]: 锁定标记过期时间（秒）
+-- ARGV[2..n+1]: 各订单锁定数量
+-- 返回数组，每个订单一项，含义与 stock_lock.lua 的返回值一致
+
+local stock = tonumber(redis.call('get', KEYS[1]))
+local results = {}
+
+for i = 2, #KEYS do
+    local quantity = tonumber(ARGV[i])
+    if redis.call('exists', KEYS[i]) == 1 then
+        -- 该订单已经锁定过
+        results[i - 1] = -3
+    elseif stock == nil then
+        -- 库存不存在
+        results[i - 1] = -1
+    elseif stock < quantity then
+        -- 库存不足，继续判断后面数量更小的订单
+        results[i - 1] = -2
+    else
+        stock = stock - quantity
+        redis.call('set', KEYS[i], ARGV[i], 'EX', ARGV[1])
+        results[i - 1] = stock
+    end
+end
+
+-- 整批只写一次库存
+if stock ~= nil then
+    redis.call('set', KEYS[1], stock, 'KEEPTTL')
+end
+
+return results
@@ -0,0 +1,41 @@
+-- 带用户限购的下单锁定库存Lua脚本（幂等检查 + 限购检查 + 库存检查 + 扣减 一次完成）
+-- KEYS[1]: 库存key
+-- KEYS[2]: 订单锁定标记key
+-- KEYS[3]: 用户限购计数key
+-- ARGV[1]: 锁定数量
+-- ARGV[2]: 锁定标记过期时间（秒）
+-- ARGV[3]: 限购数量
+-- ARGV[4]: 限购计数过期时间（秒）
+
+-- 如果该订单已经锁定过，返回-3
+if redis.call('exists', KEYS[2]) == 1 then
+    return -3
+end
+
+-- 如果超过限购数量，返回-4
+local purchased = tonumber(redis.call('get', KEYS[3])) or 0
+if purchased + tonumber(ARGV[1]) > tonumber(ARGV[3]) then
+    return -4
+end
+
+-- 获取当前库存
+local stock = tonumber(redis.call('get', KEYS[1]))
+
+-- 如果库存不存在，返回-1
+if stock == nil then
+    return -1
+end
+
+-- 如果库存不足，返回-2
+if stock < tonumber(ARGV[1]) then
+    return -2
+end
+
+-- 扣减库存、写入锁定标记、累加限购计数
+redis.call('decrby', KEYS[1], ARGV[1])
+redis.call('set', KEYS[2], ARGV[1], 'EX', ARGV[2])
+redis.call('incrby', KEYS[3], ARGV[1])
+redis.call('expire', KEYS[3], ARGV[4])
+
+-- 返回扣减后的库存
+return stock - tonumber(ARGV[1])
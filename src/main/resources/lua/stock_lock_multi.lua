@@ -0,0 +1,36 @@
+-- 多商品订单锁定库存Lua脚本（所有商品先全部检查，再全部扣减，要么全部成功要么不做任何修改）
+-- 调用方按商品ID升序传入键，集群部署时各库存键需使用相同的hash tag
+-- KEYS[1..n]: 各商品库存key
+-- KEYS[n+1..2n]: 各订单锁定标记key
+-- ARGV[1]: 锁定标记过期时间（秒）
+-- ARGV[2..n+1]: 各商品锁定数量
+-- 成功时返回各商品扣减后的库存；失败时返回 {失败码, 失败位置}，失败码与 stock_lock.lua 一致，位置从0开始
+
+local n = #KEYS / 2
+local remaining = {}
+
+for i = 1, n do
+    local quantity = tonumber(ARGV[i + 1])
+    if redis.call('exists', KEYS[n + i]) == 1 then
+        -- 该订单已经锁定过
+        return {-3, i - 1}
+    end
+    local stock = tonumber(redis.call('get', KEYS[i]))
+    if stock == nil then
+        -- 库存不存在
+        return {-1, i - 1}
+    end
+    if stock < quantity then
+        -- 库存不足
+        return {-2, i - 1}
+    end
+    remaining[i] = stock - quantity
+end
+
+-- 全部检查通过后统一扣减并写入锁定标记
+for i = 1, n do
+    redis.call('set', KEYS[i], remaining[i], 'KEEPTTL')
+    redis.call('set', KEYS[n + i], ARGV[i + 1], 'EX', ARGV[1])
+end
+
+return remaining
@@ -0,0 +1,34 @@
+-- 令牌桶取令牌Lua脚本，桶状态存放在hash中（tokens, ts）
+-- KEYS[1]: 令牌桶key
+-- ARGV[1]: 桶容量
+-- ARGV[2]: 每秒补充的令牌数
+-- ARGV[3]: 需要的令牌数
+-- ARGV[4]: 取完后桶中至少保留的令牌数
+-- ARGV[5]: 当前时间（毫秒），由调用方传入，脚本内不读取时钟
+
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local permits = tonumber(ARGV[3])
+local reserve = tonumber(ARGV[4])
+local now = tonumber(ARGV[5])
+
+local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+
+-- 按经过的时间补充令牌，不超过容量
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)
+
+-- 桶满所需时间之后键自动过期，不需要清理
+local ttl = math.ceil(capacity * 1000 / rate) + 1000
+
+-- 令牌不足时返回需要等待的毫秒数
+if tokens - permits < reserve then
+    redis.call('hset', KEYS[1], 'tokens', tokens, 'ts', now)
+    redis.call('pexpire', KEYS[1], ttl)
+    return math.max(1, math.ceil((permits + reserve - tokens) * 1000 / rate))
+end
+
+redis.call('hset', KEYS[1], 'tokens', tokens - permits, 'ts', now)
+redis.call('pexpire', KEYS[1], ttl)
+return 0
@@ -1,5 +1,6 @@
 -- 删除现有表（按依赖关系顺序删除）
 DROP TABLE IF EXISTS stock_lock;
+DROP TABLE IF EXISTS stock_log_rollup;
 DROP TABLE IF EXISTS stock_log;
 DROP TABLE IF EXISTS `order`;
 DROP TABLE IF EXISTS product;
@@ -13,6 +14,7 @@ CREATE TABLE product (
     description TEXT COMMENT '商品描述',
     image_url VARCHAR(255) COMMENT '商品图片URL',
     status TINYINT NOT NULL DEFAULT 1 COMMENT '状态：1-上架，0-下架',
+    version BIGINT NOT NULL DEFAULT 0 COMMENT '商品信息版本号，每次修改商品信息时递增',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
 ) COMMENT '商品表';
@@ -21,6 +23,8 @@ CREATE TABLE product (
 CREATE TABLE `order` (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
     order_no VARCHAR(50) NOT NULL COMMENT '订单编号',
+    user_id BIGINT COMMENT '下单用户ID',
+    batch_no VARCHAR(50) COMMENT '多商品订单批次号，同一次下单的各商品订单相同',
     product_id BIGINT NOT NULL COMMENT '商品ID',
     product_name VARCHAR(100) NOT NULL COMMENT '商品名称',
     product_price DECIMAL(10, 2) NOT NULL COMMENT '商品价格',
@@ -31,7 +35,11 @@ CREATE TABLE `order` (
     expire_time DATETIME NOT NULL COMMENT '订单过期时间',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    UNIQUE KEY uk_order_no (order_no)
+    UNIQUE KEY uk_order_no (order_no),
+    INDEX idx_product_user (product_id, user_id),
+    INDEX idx_batch_no (batch_no),
+    INDEX idx_status_create_time (status, create_time),
+    INDEX idx_create_time (create_time)
 ) COMMENT '订单表';
 
 -- 库存日志表
@@ -46,11 +54,25 @@ CREATE TABLE stock_log (
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     synced BOOLEAN DEFAULT FALSE COMMENT '是否已同步到Redis',
     remark VARCHAR(255) COMMENT '备注',
-    INDEX idx_product_id (product_id),
+    -- 按商品或操作类型过滤的游标翻页沿这两个索引按 (create_time, id) 顺序读取；
+    -- idx_product_create_time 取代原来的 idx_product_id，idx_operation_type_create_time 为新增
+    INDEX idx_product_create_time (product_id, create_time),
+    INDEX idx_operation_type_create_time (operation_type, create_time),
+    INDEX idx_synced (synced),
     INDEX idx_order_id (order_id),
     INDEX idx_create_time (create_time)
 ) COMMENT '库存日志表';
 
+-- 库存日志统计汇总表
+CREATE TABLE stock_log_rollup (
+    stat_date DATE NOT NULL COMMENT '统计日期',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    operation_type VARCHAR(20) NOT NULL COMMENT '操作类型',
+    log_count BIGINT NOT NULL DEFAULT 0 COMMENT '日志条数',
+    change_amount BIGINT NOT NULL DEFAULT 0 COMMENT '库存变更数量合计',
+    PRIMARY KEY (stat_date, product_id, operation_type)
+) COMMENT '库存日志统计汇总表，写入库存日志时同步累加';
+
 -- 库存锁定表
 CREATE TABLE stock_lock (
     id BIGINT PRIMARY KEY AUTO_INCREMENT,
@@ -62,8 +84,10 @@ CREATE TABLE stock_lock (
     release_time DATETIME COMMENT '释放时间',
     expire_time DATETIME COMMENT '过期时间',
     remark VARCHAR(255) COMMENT '备注',
+    flush_batch BIGINT COMMENT '库存写回批次：0-已扣减待写回商品库存，大于0-写回批次号，为空表示无需写回',
     INDEX idx_product_id (product_id),
     INDEX idx_order_no (order_no),
     INDEX idx_status (status),
-    INDEX idx_expire_time (expire_time)
+    INDEX idx_expire_time (expire_time),
+    INDEX idx_flush_batch (flush_batch)
 ) COMMENT '库存锁定表';
@@ -0,0 +1,157 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.vo.Result;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 幂等请求：处理中的重复请求等待原结果，失败不保留，同一个键的不同请求被拒绝，共享占位在处理期间续期
+ */
+class IdempotencyServiceTest {
+
+    private static final String SCOPE = "order:create";
+    private static final Map<String, Object> REQUEST = Map.of("productId", 1, "quantity", 1);
+
+    private MockRedisService mockRedisService;
+    private AppConfig appConfig;
+    private IdempotencyService idempotencyService;
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        mockRedisService = new MockRedisService();
+        appConfig = new AppConfig();
+        idempotencyService = newService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyService.shutdown();
+    }
+
+    @Test
+    void duplicateRequestWaitsForTheInFlightResult() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Result<String>> first = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute(SCOPE, "K1", REQUEST, () -> {
+                    started.countDown();
+                    await(release);
+                    return success("O1");
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertNull(idempotencyService.findCompleted(SCOPE, "K1", REQUEST));
+
+        CompletableFuture<Result<String>> duplicate = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute(SCOPE, "K1", REQUEST, () -> success("O2")));
+        release.countDown();
+
+        Result<String> original = first.get(5, TimeUnit.SECONDS);
+        assertSame(original, duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+        assertSame(original, idempotencyService.findCompleted(SCOPE, "K1", REQUEST));
+    }
+
+    @Test
+    void failedResultIsNotKept() {
+        Result<String> failed = idempotencyService.execute(SCOPE, "K1", REQUEST, () -> {
+            executions.incrementAndGet();
+            return Result.error("库存不足");
+        });
+        Result<String> retried = idempotencyService.execute(SCOPE, "K1", REQUEST, () -> success("O1"));
+
+        assertEquals(500, failed.getCode());
+        assertEquals("O1", retried.getData());
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void reusedKeyWithDifferentBodyIsRejected() {
+        idempotencyService.execute(SCOPE, "K1", REQUEST, () -> success("O1"));
+
+        Map<String, Object> other = Map.of("productId", 2, "quantity", 1);
+        Result<String> result = idempotencyService.execute(SCOPE, "K1", other, () -> success("O2"));
+
+        assertEquals(422, result.getCode());
+        assertEquals(422, idempotencyService.<String>findCompleted(SCOPE, "K1", other).getCode());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void sharedResultIsReturnedByAnotherInstance() {
+        appConfig.getOrder().setIdempotencySharedEnabled(true);
+        IdempotencyService other = newService();
+        try {
+            Result<String> original = idempotencyService.execute(SCOPE, "K1", REQUEST, () -> success("O1"));
+
+            Result<String> replayed = other.execute(SCOPE, "K1", REQUEST, () -> success("O2"));
+
+            assertEquals(original.getData(), replayed.getData());
+            assertEquals(1, executions.get());
+            assertEquals(422, other.execute(SCOPE, "K1", Map.of("productId", 2), () -> success("O3")).getCode());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    void sharedPlaceholderIsRenewedWhileProcessing() throws Exception {
+        appConfig.getOrder().setIdempotencySharedEnabled(true);
+        appConfig.getOrder().setIdempotencyWaitTimeout(100);
+        IdempotencyService other = newService();
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Result<String>> first = CompletableFuture.supplyAsync(() ->
+                    idempotencyService.execute(SCOPE, "K1", REQUEST, () -> {
+                        started.countDown();
+                        await(release);
+                        return success("O1");
+                    }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // 处理时间超过占位有效期，续期后其他实例的重复请求仍不会再执行一次
+            Thread.sleep(350);
+            Result<String> duplicate = other.execute(SCOPE, "K1", REQUEST, () -> success("O2"));
+            assertEquals(409, duplicate.getCode());
+
+            release.countDown();
+            assertEquals("O1", first.get(5, TimeUnit.SECONDS).getData());
+            assertEquals("O1", other.<String>findCompleted(SCOPE, "K1", REQUEST).getData());
+            assertEquals(1, executions.get());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    private IdempotencyService newService() {
+        return new IdempotencyService(mockRedisService, new ObjectMapper(), appConfig);
+    }
+
+    private Result<String> success(String orderNo) {
+        executions.incrementAndGet();
+        return Result.success(orderNo);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import com.example.skillsystem.entity.Order;
+import com.example.skillsystem.enums.OrderTokenStatus;
+import com.example.skillsystem.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 异步下单流水线：只补偿写入失败的订单，等待写入只等自己的订单
+ */
+class OrderCreationPipelineTest {
+
+    private MockRedisService mockRedisService;
+    private OrderRepository orderRepository;
+    private StockManagementService stockManagementService;
+    private PurchaseLimitService purchaseLimitService;
+    private OrderCreationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        mockRedisService = new MockRedisService();
+        orderRepository = mock(OrderRepository.class);
+        stockManagementService = mock(StockManagementService.class);
+        purchaseLimitService = mock(PurchaseLimitService.class);
+        when(stockManagementService.rollbackRedisStock(anyString())).thenReturn(true);
+        when(orderRepository.findByOrderNo(anyString())).thenReturn(Optional.empty());
+        pipeline = new OrderCreationPipeline(orderRepository, stockManagementService, mockRedisService,
+                purchaseLimitService, mock(PlatformTransactionManager.class), new AppConfig());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void onlyTheFailedOrderIsCompensated() {
+        Order good = order("O1");
+        Order bad = order("O2");
+        when(orderRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("batch"));
+        when(orderRepository.save(argThat(order -> order != null && "O2".equals(order.getOrderNo()))))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        pipeline.submit(good);
+        pipeline.submit(bad);
+        assertEquals(OrderTokenStatus.PENDING, pipeline.getStatus("O1"));
+        pipeline.flush();
+
+        verify(orderRepository).save(good);
+        verify(stockManagementService).rollbackRedisStock("O2");
+        verify(purchaseLimitService).release(bad);
+        verify(stockManagementService, never()).rollbackRedisStock("O1");
+        verify(purchaseLimitService, never()).release(good);
+        assertTrue(mockRedisService.exists(RedisKeyPrefix.ORDER_TOKEN_FAILED + "O2"));
+        assertEquals(OrderTokenStatus.FAILED, pipeline.getStatus("O2"));
+        assertEquals(OrderTokenStatus.NOT_FOUND, pipeline.getStatus("O1"));
+    }
+
+    @Test
+    void compensationFailureLeavesTheFailedStatus() {
+        Order bad = order("O1");
+        when(orderRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("batch"));
+        when(orderRepository.save(bad)).thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(stockManagementService.rollbackRedisStock("O1")).thenThrow(new IllegalStateException("db down"));
+
+        pipeline.submit(bad);
+        pipeline.flush();
+
+        verify(purchaseLimitService).release(bad);
+        assertEquals(OrderTokenStatus.FAILED, pipeline.getStatus("O1"));
+    }
+
+    @Test
+    void awaitPersistedWaitsForTheWriterThread() {
+        pipeline.start();
+        Order order = order("O1");
+
+        pipeline.submit(order);
+
+        assertTrue(pipeline.awaitPersisted("O1"));
+        verify(orderRepository, timeout(1000)).saveAll(anyList());
+        assertFalse(mockRedisService.exists(RedisKeyPrefix.ORDER_TOKEN_FAILED + "O1"));
+    }
+
+    @Test
+    void awaitPersistedReturnsForUnknownOrders() {
+        assertTrue(pipeline.awaitPersisted("unknown"));
+    }
+
+    private static Order order(String orderNo) {
+        Order order = new Order();
+        order.setOrderNo(orderNo);
+        order.setProductId(1L);
+        order.setUserId(1L);
+        order.setQuantity(1);
+        return order;
+    }
+}
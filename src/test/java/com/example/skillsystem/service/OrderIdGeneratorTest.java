@@ -0,0 +1,205 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+/**
+ * 订单号生成器：序号用完时进位、小幅时钟回拨继续递增、大幅回拨拒绝生成，机器ID占用过期后拒绝生成
+ */
+class OrderIdGeneratorTest {
+
+    // 2025-01-01 00:00:00 UTC
+    private static final long START = 1735689600000L;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_ID_BITS = 10;
+
+    private MockRedisService mockRedisService;
+    private AppConfig appConfig;
+    private final AtomicLong now = new AtomicLong(START);
+
+    @BeforeEach
+    void setUp() {
+        mockRedisService = new MockRedisService();
+        appConfig = new AppConfig();
+        appConfig.getOrder().setMaxClockBackward(5);
+    }
+
+    @Test
+    void sequenceRolloverCarriesIntoTheNextMillisecond() {
+        appConfig.getOrder().setWorkerId(7);
+        OrderIdGenerator generator = newGenerator();
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < (1 << SEQUENCE_BITS) + 10; i++) {
+            ids.add(generator.nextId());
+        }
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i) > ids.get(i - 1));
+        }
+
+        // 同一毫秒用完4096个序号后借用下一毫秒，序号从0开始，机器ID保持不变
+        long carried = ids.get(1 << SEQUENCE_BITS);
+        assertEquals(time(ids.get(0)) + 1, time(carried));
+        assertEquals(0, sequence(carried));
+        assertEquals(7, worker(carried));
+    }
+
+    @Test
+    void concurrentIdsAreUnique() throws Exception {
+        appConfig.getOrder().setWorkerId(1);
+        // 真实时钟下每毫秒超过4096个ID时会借用后面的毫秒，借用的时长受回拨容忍值限制，这里使用默认值
+        appConfig.getOrder().setMaxClockBackward(new AppConfig().getOrder().getMaxClockBackward());
+        OrderIdGenerator generator = newGenerator();
+        generator.setClock(System::currentTimeMillis);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Long> ids = new ArrayList<>(20000);
+                long previous = -1;
+                for (int i = 0; i < 20000; i++) {
+                    long id = generator.nextId();
+                    // 同一线程内严格递增
+                    assertTrue(id > previous);
+                    previous = id;
+                    ids.add(id);
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+
+        Set<Long> unique = new HashSet<>();
+        for (Future<List<Long>> future : futures) {
+            unique.addAll(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(160000, unique.size());
+    }
+
+    @Test
+    void smallClockStepBackKeepsIncreasing() {
+        appConfig.getOrder().setWorkerId(1);
+        OrderIdGenerator generator = newGenerator();
+
+        long before = generator.nextId();
+        now.addAndGet(-5);
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+        assertEquals(time(before), time(after));
+    }
+
+    @Test
+    void largeClockStepBackIsRefused() {
+        appConfig.getOrder().setWorkerId(1);
+        OrderIdGenerator generator = newGenerator();
+
+        long before = generator.nextId();
+        now.addAndGet(-100);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // 时钟追上后恢复生成，不会与回拨前的ID重复
+        now.addAndGet(101);
+        assertTrue(generator.nextId() > before);
+    }
+
+    @Test
+    void configuredWorkerIdOutOfRangeIsRejected() {
+        appConfig.getOrder().setWorkerId(OrderIdGenerator.MAX_WORKER_ID + 1);
+        OrderIdGenerator generator = new OrderIdGenerator(mockRedisService, appConfig);
+
+        assertThrows(IllegalArgumentException.class, generator::init);
+    }
+
+    @Test
+    void workerIdExpiresWhenItIsNotRenewed() {
+        OrderIdGenerator generator = newGenerator();
+        int workerId = generator.getWorkerId();
+        assertTrue(workerId >= 0);
+        assertEquals(workerId, worker(generator.nextId()));
+
+        // 超过确认有效期仍未续期时拒绝生成
+        now.addAndGet(TimeUnit.SECONDS.toMillis(50));
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // 续期成功后继续使用原来的机器ID
+        generator.renewWorkerLease();
+        assertEquals(workerId, generator.getWorkerId());
+        assertEquals(workerId, worker(generator.nextId()));
+    }
+
+    @Test
+    void failedRenewalKeepsTheWorkerIdOnlyUntilTheLeaseEnds() {
+        MockRedisService failingRedis = spy(new MockRedisService());
+        OrderIdGenerator generator = new OrderIdGenerator(failingRedis, appConfig);
+        generator.setClock(now::get);
+        generator.init();
+        doThrow(new IllegalStateException("connection refused"))
+                .when(failingRedis).compareAndSet(anyString(), any(), any(), anyLong(), any());
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        generator.renewWorkerLease();
+        generator.nextId();
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(20));
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void workerIdTakenByAnotherInstanceIsReplaced() {
+        OrderIdGenerator generator = newGenerator();
+        int workerId = generator.getWorkerId();
+
+        mockRedisService.set(RedisKeyPrefix.ORDER_WORKER + workerId, "other-instance", 60, TimeUnit.SECONDS);
+        generator.renewWorkerLease();
+
+        assertNotEquals(workerId, generator.getWorkerId());
+        assertEquals(generator.getWorkerId(), worker(generator.nextId()));
+    }
+
+    private OrderIdGenerator newGenerator() {
+        OrderIdGenerator generator = new OrderIdGenerator(mockRedisService, appConfig);
+        generator.setClock(now::get);
+        generator.init();
+        return generator;
+    }
+
+    private static long time(long id) {
+        return id >>> (WORKER_ID_BITS + SEQUENCE_BITS);
+    }
+
+    private static long sequence(long id) {
+        return id & ((1L << SEQUENCE_BITS) - 1);
+    }
+
+    private static int worker(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & OrderIdGenerator.MAX_WORKER_ID);
+    }
+}
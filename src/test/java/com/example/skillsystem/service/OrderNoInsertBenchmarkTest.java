@@ -0,0 +1,114 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 订单号写入性能对比：随机UUID与Snowflake订单号分别写入带唯一索引的表
+ * 默认不运行，需要连接 application.properties 中配置的数据库：
+ * mvn test -Dtest=OrderNoInsertBenchmarkTest -Dbenchmark.orderNo=true [-Dbenchmark.rows=1000000]
+ * 表越大、唯一索引越超出缓冲池，随机UUID的后段吞吐下降越明显，因此分段输出吞吐而不只是总耗时。
+ * 使用单独的基准表，不执行 schema.sql，不影响业务表
+ */
+@JdbcTest(properties = "spring.sql.init.mode=never")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark.orderNo", matches = "true")
+class OrderNoInsertBenchmarkTest {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int SLICES = 10;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void compareUuidAndSnowflakeInserts() {
+        int rows = Integer.getInteger("benchmark.rows", 1_000_000);
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.getOrder().setWorkerId(1);
+        OrderIdGenerator generator = new OrderIdGenerator(new MockRedisService(), appConfig);
+        generator.init();
+
+        long[] uuid = insert("bench_order_no_uuid", rows, () -> UUID.randomUUID().toString().replace("-", ""));
+        long[] snowflake = insert("bench_order_no_snowflake", rows, generator::nextOrderNo);
+
+        System.out.printf("订单号写入对比，共 %d 行，每批 %d 行%n", rows, BATCH_SIZE);
+        System.out.printf("%-10s %16s %16s%n", "区间", "UUID 行/秒", "Snowflake 行/秒");
+        int sliceRows = rows / SLICES;
+        for (int i = 0; i < SLICES; i++) {
+            System.out.printf("%-10s %16d %16d%n", (i * 10) + "-" + ((i + 1) * 10) + "%",
+                    throughput(sliceRows, uuid[i]), throughput(sliceRows, snowflake[i]));
+        }
+        System.out.printf("%-10s %16d %16d%n", "合计", throughput(rows, sum(uuid)), throughput(rows, sum(snowflake)));
+    }
+
+    /**
+     * 建表后分批写入，返回每个区间的耗时（纳秒），结束后删除基准表
+     */
+    private long[] insert(String table, int rows, Supplier<String> orderNos) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+        // 与订单表相同的主键和订单号唯一索引
+        jdbcTemplate.execute("CREATE TABLE " + table + " ("
+                + "id BIGINT PRIMARY KEY AUTO_INCREMENT, "
+                + "order_no VARCHAR(50) NOT NULL, "
+                + "create_time DATETIME NOT NULL, "
+                + "UNIQUE KEY uk_order_no (order_no))");
+        try {
+            int sliceRows = rows / SLICES;
+            long[] elapsed = new long[SLICES];
+            String sql = "INSERT INTO " + table + " (order_no, create_time) VALUES (?, ?)";
+            int inserted = 0;
+            for (int slice = 0; slice < SLICES; slice++) {
+                long start = System.nanoTime();
+                int end = slice == SLICES - 1 ? rows : inserted + sliceRows;
+                while (inserted < end) {
+                    int size = Math.min(BATCH_SIZE, end - inserted);
+                    List<Object[]> batch = new ArrayList<>(size);
+                    Timestamp now = new Timestamp(System.currentTimeMillis());
+                    for (int i = 0; i < size; i++) {
+                        batch.add(new Object[]{orderNos.get(), now});
+                    }
+                    jdbcTemplate.batchUpdate(sql, batch);
+                    inserted += size;
+                }
+                elapsed[slice] = System.nanoTime() - start;
+            }
+            Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+            assertEquals(rows, count);
+            return elapsed;
+        } finally {
+            if (!Boolean.getBoolean("benchmark.keepTables")) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            }
+        }
+    }
+
+    private static long throughput(int rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1_000_000_000L / nanos;
+    }
+
+    private static long sum(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 下单锁定库存的原子操作：同一订单只扣减一次，失败不留锁定标记，并发锁定和回滚后库存守恒
+ */
+class StockCounterServiceLockTest {
+
+    private static final Long PRODUCT_ID = 1L;
+    private static final Long SEGMENTED_PRODUCT_ID = 2L;
+
+    private MockRedisService mockRedisService;
+    private StockCounterService stockCounterService;
+
+    @BeforeEach
+    void setUp() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.getStock().setSegmentedProducts(List.of(SEGMENTED_PRODUCT_ID));
+        appConfig.getStock().setSegmentCount(4);
+        mockRedisService = new MockRedisService();
+        stockCounterService = new StockCounterService(mockRedisService, mock(SoldOutRegistry.class),
+                new StockMismatchTracker(), appConfig);
+    }
+
+    @Test
+    void lockDeductsOnceForTheSameOrder() {
+        stockCounterService.setStock(PRODUCT_ID, 10);
+
+        assertEquals(7, stockCounterService.lock(PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES));
+        assertEquals(StockCounterService.ALREADY_LOCKED, stockCounterService.lock(PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES));
+        assertEquals(7, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    @Test
+    void segmentedLockDeductsOnceForTheSameOrder() {
+        stockCounterService.setStock(SEGMENTED_PRODUCT_ID, 40);
+
+        assertTrue(stockCounterService.lock(SEGMENTED_PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES) >= 0);
+        assertEquals(StockCounterService.ALREADY_LOCKED,
+                stockCounterService.lock(SEGMENTED_PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES));
+        assertEquals(37, stockCounterService.getStock(SEGMENTED_PRODUCT_ID));
+    }
+
+    @Test
+    void failedLockLeavesNoMarker() {
+        stockCounterService.setStock(PRODUCT_ID, 2);
+        stockCounterService.setStock(SEGMENTED_PRODUCT_ID, 2);
+
+        assertEquals(StockCounterService.INSUFFICIENT, stockCounterService.lock(PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES));
+        assertEquals(StockCounterService.INSUFFICIENT,
+                stockCounterService.lock(SEGMENTED_PRODUCT_ID, "O2", 3, 1, TimeUnit.MINUTES));
+        assertFalse(mockRedisService.exists(RedisKeyPrefix.STOCK_LOCK + "O1"));
+        assertFalse(mockRedisService.exists(RedisKeyPrefix.STOCK_LOCK + "O2"));
+
+        // 补货后同一订单可以重试
+        stockCounterService.increase(PRODUCT_ID, 1, "O1");
+        assertEquals(0, stockCounterService.lock(PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    void lockReportsUncachedStock() {
+        assertEquals(StockCounterService.NOT_CACHED, stockCounterService.lock(PRODUCT_ID, "O1", 1, 1, TimeUnit.MINUTES));
+        assertEquals(StockCounterService.NOT_CACHED,
+                stockCounterService.lock(SEGMENTED_PRODUCT_ID, "O2", 1, 1, TimeUnit.MINUTES));
+        assertFalse(mockRedisService.exists(RedisKeyPrefix.STOCK_LOCK + "O2"));
+    }
+
+    @Test
+    void duplicateOrderInOneBatchIsLockedOnce() {
+        stockCounterService.setStock(PRODUCT_ID, 10);
+        String lockKey = RedisKeyPrefix.STOCK_LOCK + "O1";
+
+        List<Long> results = mockRedisService.lockStockBatch(RedisKeyPrefix.PRODUCT_STOCK + PRODUCT_ID,
+                List.of(lockKey, lockKey), List.of(4, 4), 1, TimeUnit.MINUTES);
+
+        assertEquals(List.of(6L, StockCounterService.ALREADY_LOCKED), results);
+        assertEquals(6, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    @Test
+    void concurrentLockAndRollbackConserveStock() throws Exception {
+        concurrentLockAndRollbackConserveStock(PRODUCT_ID);
+    }
+
+    @Test
+    void concurrentSegmentedLockAndRollbackConserveStock() throws Exception {
+        concurrentLockAndRollbackConserveStock(SEGMENTED_PRODUCT_ID);
+    }
+
+    /**
+     * 多个线程重复提交同一批订单，成功锁定的一半随后回滚；最终库存加上仍锁定的数量等于初始库存
+     */
+    private void concurrentLockAndRollbackConserveStock(Long productId) throws Exception {
+        int initialStock = 500;
+        int orderCount = 400;
+        int threads = 8;
+        stockCounterService.setStock(productId, initialStock);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int held = 0;
+                for (int i = 0; i < orderCount; i++) {
+                    String orderNo = "O" + i;
+                    int quantity = i % 3 + 1;
+                    long result = stockCounterService.lock(productId, orderNo, quantity, 1, TimeUnit.MINUTES);
+                    if (result < 0) {
+                        continue;
+                    }
+                    if (i % 2 == 0) {
+                        stockCounterService.increase(productId, quantity, orderNo);
+                    } else {
+                        held += quantity;
+                    }
+                }
+                return held;
+            }));
+        }
+        start.countDown();
+
+        int held = 0;
+        for (Future<Integer> future : futures) {
+            held += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int stock = stockCounterService.getStock(productId);
+        assertTrue(stock >= 0);
+        assertEquals(initialStock, stock + held);
+    }
+}
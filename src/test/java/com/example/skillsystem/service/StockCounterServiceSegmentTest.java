@@ -0,0 +1,179 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 分段库存：按订单号选段、跨段凑齐和再平衡都不改变各段之和
+ */
+class StockCounterServiceSegmentTest {
+
+    private static final Long PRODUCT_ID = 2L;
+    private static final int SEGMENT_COUNT = 4;
+
+    private MockRedisService mockRedisService;
+    private StockCounterService stockCounterService;
+
+    @BeforeEach
+    void setUp() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.getStock().setSegmentedProducts(List.of(PRODUCT_ID));
+        appConfig.getStock().setSegmentCount(SEGMENT_COUNT);
+        mockRedisService = new MockRedisService();
+        stockCounterService = new StockCounterService(mockRedisService, mock(SoldOutRegistry.class),
+                new StockMismatchTracker(), appConfig);
+    }
+
+    @Test
+    void deductReturnsTheRemainderOfTheHomeSegment() {
+        setSegments(10, 10, 10, 10);
+        String orderNo = "O1";
+        int home = Math.floorMod(orderNo.hashCode(), SEGMENT_COUNT);
+
+        assertEquals(7, stockCounterService.deduct(PRODUCT_ID, 3, orderNo));
+        assertEquals(7, segment(home));
+
+        // 归还落在同一段
+        stockCounterService.increase(PRODUCT_ID, 3, orderNo);
+        assertEquals(10, segment(home));
+        assertEquals(40, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    @Test
+    void totalAfterReportsTheProductTotal() {
+        setSegments(10, 10, 10, 10);
+
+        long result = stockCounterService.lock(PRODUCT_ID, "O1", 3, 1, TimeUnit.MINUTES);
+
+        assertEquals(7, result);
+        assertEquals(37, stockCounterService.totalAfter(PRODUCT_ID, result));
+        assertEquals(StockCounterService.INSUFFICIENT,
+                stockCounterService.totalAfter(PRODUCT_ID, StockCounterService.INSUFFICIENT));
+    }
+
+    @Test
+    void deductGathersAcrossSegments() {
+        setSegments(1, 1, 1, 1);
+
+        assertEquals(1, stockCounterService.deduct(PRODUCT_ID, 3, "O1"));
+        assertEquals(1, stockCounterService.getStock(PRODUCT_ID));
+
+        assertEquals(StockCounterService.INSUFFICIENT, stockCounterService.deduct(PRODUCT_ID, 2, "O2"));
+        assertEquals(1, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    @Test
+    void deductReportsUncachedStock() {
+        assertEquals(StockCounterService.NOT_CACHED, stockCounterService.deduct(PRODUCT_ID, 1, "O1"));
+    }
+
+    @Test
+    void concurrentGatherNeverOversells() throws Exception {
+        setSegments(3, 3, 3, 3);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return stockCounterService.deduct(PRODUCT_ID, 5, "O" + thread) >= 0 ? 5 : 0;
+            }));
+        }
+        start.countDown();
+
+        int deducted = 0;
+        for (Future<Integer> future : futures) {
+            deducted += future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // 12件库存最多凑出两单，不会因为并发凑数互相取走而少卖
+        assertEquals(10, deducted);
+        assertEquals(2, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    @Test
+    void rebalanceSplitsTheTotalEvenly() {
+        setSegments(10, 0, 0, 3);
+
+        stockCounterService.rebalance(PRODUCT_ID);
+
+        assertEquals(4, segment(0));
+        assertEquals(3, segment(1));
+        assertEquals(3, segment(2));
+        assertEquals(3, segment(3));
+    }
+
+    @Test
+    void rebalanceDuringDeductionsKeepsTheTotal() throws Exception {
+        setSegments(2000, 0, 0, 0);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                int deducted = 0;
+                for (int i = 0; i < 300; i++) {
+                    if (stockCounterService.deduct(PRODUCT_ID, 1, "O" + thread + "-" + i) >= 0) {
+                        deducted++;
+                    }
+                }
+                return deducted;
+            }));
+        }
+        Future<?> rebalancer = executor.submit(() -> {
+            start.await();
+            while (running.get()) {
+                stockCounterService.rebalance(PRODUCT_ID);
+            }
+            return null;
+        });
+        start.countDown();
+
+        int deducted = 0;
+        for (Future<Integer> future : futures) {
+            deducted += future.get(30, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        rebalancer.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // 库存充足，再平衡期间的扣减都应成功，各段之和只减少扣减的数量
+        assertEquals(1200, deducted);
+        assertEquals(800, stockCounterService.getStock(PRODUCT_ID));
+    }
+
+    private void setSegments(int... values) {
+        for (int i = 0; i < values.length; i++) {
+            mockRedisService.set(segmentKey(i), values[i]);
+        }
+    }
+
+    private int segment(int index) {
+        return ((Number) mockRedisService.get(segmentKey(index))).intValue();
+    }
+
+    private static String segmentKey(int index) {
+        return RedisKeyPrefix.PRODUCT_STOCK + PRODUCT_ID + RedisKeyPrefix.STOCK_SEGMENT + index;
+    }
+}
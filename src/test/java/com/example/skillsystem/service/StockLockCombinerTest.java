@@ -0,0 +1,123 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.constants.RedisKeyPrefix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 同一商品并发锁定合并成批后逐个判断库存，不超卖，锁定记录只为成功的订单提交
+ */
+class StockLockCombinerTest {
+
+    private static final Long PRODUCT_ID = 1L;
+    private static final String STOCK_KEY = RedisKeyPrefix.PRODUCT_STOCK + PRODUCT_ID;
+
+    private MockRedisService mockRedisService;
+    private StockLockRecordWriter stockLockRecordWriter;
+    private AppConfig appConfig;
+    private StockLockCombiner stockLockCombiner;
+    private final AtomicInteger submittedRecords = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        appConfig = new AppConfig();
+        mockRedisService = new MockRedisService();
+        stockLockRecordWriter = mock(StockLockRecordWriter.class);
+        doAnswer(invocation -> {
+            submittedRecords.addAndGet(invocation.<List<?>>getArgument(0).size());
+            return null;
+        }).when(stockLockRecordWriter).submitAll(anyList());
+        stockLockCombiner = new StockLockCombiner(mockRedisService, stockLockRecordWriter,
+                mock(SoldOutRegistry.class), appConfig);
+    }
+
+    @Test
+    void concurrentLocksNeverOversell() throws Exception {
+        mockRedisService.set(STOCK_KEY, 60);
+
+        List<Long> results = lockConcurrently(100, i -> "O" + i);
+
+        long succeeded = results.stream().filter(result -> result >= 0).count();
+        assertEquals(60, succeeded);
+        assertEquals(40, results.stream().filter(result -> result == StockCounterService.INSUFFICIENT).count());
+        assertEquals(0, ((Number) mockRedisService.get(STOCK_KEY)).intValue());
+        assertEquals(60, submittedRecords.get());
+    }
+
+    @Test
+    void concurrentLocksForTheSameOrderSucceedOnce() throws Exception {
+        mockRedisService.set(STOCK_KEY, 60);
+
+        List<Long> results = lockConcurrently(20, i -> "O1");
+
+        assertEquals(1, results.stream().filter(result -> result >= 0).count());
+        assertEquals(19, results.stream().filter(result -> result == StockCounterService.ALREADY_LOCKED).count());
+        assertEquals(59, ((Number) mockRedisService.get(STOCK_KEY)).intValue());
+        assertEquals(1, submittedRecords.get());
+    }
+
+    @Test
+    void uncachedStockSubmitsNoRecords() {
+        long result = stockLockCombiner.lock(PRODUCT_ID, "O1", 1, 1, TimeUnit.MINUTES, stock -> null);
+
+        assertEquals(StockCounterService.NOT_CACHED, result);
+        verify(stockLockRecordWriter, never()).submitAll(anyList());
+    }
+
+    @Test
+    void scriptFailureIsReportedToTheCaller() {
+        MockRedisService failingRedis = mock(MockRedisService.class);
+        when(failingRedis.lockStockBatch(anyString(), anyList(), anyList(), anyLong(), any()))
+                .thenThrow(new IllegalStateException("connection reset"));
+        StockLockCombiner combiner = new StockLockCombiner(failingRedis, stockLockRecordWriter,
+                mock(SoldOutRegistry.class), appConfig);
+
+        assertThrows(IllegalStateException.class,
+                () -> combiner.lock(PRODUCT_ID, "O1", 1, 1, TimeUnit.MINUTES, stock -> null));
+    }
+
+    private List<Long> lockConcurrently(int requests, IntFunction<String> orderNo) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            String no = orderNo.apply(i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                return stockLockCombiner.lock(PRODUCT_ID, no, 1, 1, TimeUnit.MINUTES,
+                        stock -> new StockLockRecordWriter.PendingRecord(null, null));
+            }));
+        }
+        start.countDown();
+
+        List<Long> results = new ArrayList<>();
+        for (Future<Long> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.skillsystem.service;
+
+import com.example.skillsystem.config.AppConfig;
+import com.example.skillsystem.entity.StockLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 库存日志写入器：环形缓冲区在并发写入下不丢不重，写入失败的日志经备用文件导入，
+ * 数据有问题的行隔离，数据库暂时不可用时保留未导入的行
+ */
+class StockLogJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private AppConfig appConfig;
+    private Path fallbackFile;
+    private final List<StockLog> written = new CopyOnWriteArrayList<>();
+    // 返回true时模拟数据库写入失败抛出的异常
+    private volatile Predicate<Collection<StockLog>> failWhen = batch -> false;
+    private volatile RuntimeException failure;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(), any())).thenAnswer(invocation -> {
+            Collection<StockLog> batch = invocation.getArgument(1);
+            if (failWhen.test(batch)) {
+                throw failure;
+            }
+            written.addAll(batch);
+            return new int[0][];
+        });
+        fallbackFile = tempDir.resolve("stock-log-fallback.jsonl");
+        appConfig = new AppConfig();
+        appConfig.getStock().setJournalFallbackFile(fallbackFile.toString());
+        appConfig.getStock().setJournalBatchSize(50);
+    }
+
+    @Test
+    void concurrentAppendsAreWrittenExactlyOnce() throws Exception {
+        appConfig.getStock().setJournalCapacity(1 << 14);
+        StockLogJournal journal = newJournal();
+        journal.start();
+        try {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        journal.append(stockLog(thread + "-" + i));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+        } finally {
+            journal.shutdown();
+        }
+
+        assertEquals(8000, written.size());
+        assertEquals(8000, written.stream().map(StockLog::getOrderId).distinct().count());
+        assertEquals(0, journal.getPendingCount());
+        assertFalse(Files.exists(fallbackFile));
+    }
+
+    @Test
+    void overflowGoesToTheFallbackFileAndIsReplayed() throws Exception {
+        appConfig.getStock().setJournalCapacity(4);
+        StockLogJournal journal = newJournal();
+
+        for (int i = 0; i < 10; i++) {
+            journal.append(stockLog("O" + i));
+        }
+        assertEquals(4, journal.getPendingCount());
+        assertEquals(6, lines(fallbackFile).size());
+
+        journal.flush();
+        assertEquals(6, journal.replayFallback());
+
+        assertEquals(10, written.stream().map(StockLog::getOrderId).distinct().count());
+        assertEquals(10, written.size());
+        assertFalse(Files.exists(fallbackFile));
+    }
+
+    @Test
+    void failedWritesAreReplayedAfterRecovery() throws Exception {
+        StockLogJournal journal = newJournal();
+        fail(batch -> true, new TransientDataAccessResourceException("connection refused"));
+
+        journal.append(stockLog("O1"));
+        journal.append(stockLog("O2"));
+        journal.flush();
+        assertTrue(written.isEmpty());
+        assertEquals(2, lines(fallbackFile).size());
+
+        // 数据库仍不可用时保留全部未导入的行
+        assertEquals(0, journal.replayFallback());
+        assertEquals(2, lines(tempDir.resolve("stock-log-fallback.jsonl.replaying")).size());
+
+        fail(batch -> false, null);
+        assertEquals(2, journal.replayFallback());
+        assertEquals(2, written.size());
+        assertFalse(Files.exists(tempDir.resolve("stock-log-fallback.jsonl.replaying")));
+    }
+
+    @Test
+    void badLinesAreQuarantinedWithoutBlockingTheRest() throws Exception {
+        StockLogJournal journal = newJournal();
+        ObjectMapper objectMapper = objectMapper();
+        Files.write(fallbackFile, List.of(
+                objectMapper.writeValueAsString(stockLog("O1")),
+                "{not json",
+                objectMapper.writeValueAsString(stockLog("BAD")),
+                objectMapper.writeValueAsString(stockLog("O2"))), StandardCharsets.UTF_8);
+        fail(batch -> batch.stream().anyMatch(stockLog -> "BAD".equals(stockLog.getOrderId())),
+                new DataIntegrityViolationException("Data too long for column 'order_id'"));
+
+        assertEquals(2, journal.replayFallback());
+
+        assertEquals(List.of("O1", "O2"), written.stream().map(StockLog::getOrderId).toList());
+        List<String> quarantined = lines(tempDir.resolve("stock-log-fallback.jsonl.bad"));
+        assertEquals(2, quarantined.size());
+        assertEquals("{not json", quarantined.get(0));
+        assertTrue(quarantined.get(1).contains("BAD"));
+        assertFalse(Files.exists(tempDir.resolve("stock-log-fallback.jsonl.replaying")));
+    }
+
+    private StockLogJournal newJournal() {
+        return new StockLogJournal(jdbcTemplate, mock(PlatformTransactionManager.class), mock(StockLogStatistics.class),
+                new StockMismatchTracker(), objectMapper(), appConfig);
+    }
+
+    private void fail(Predicate<Collection<StockLog>> condition, RuntimeException exception) {
+        failure = exception;
+        failWhen = condition;
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper().findAndRegisterModules();
+    }
+
+    private static List<String> lines(Path file) throws Exception {
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    private static StockLog stockLog(String orderId) {
+        return StockLog.builder()
+                .productId(1L)
+                .beforeStock(10)
+                .afterStock(9)
+                .changeAmount(-1)
+                .operationType("LOCK")
+                .orderId(orderId)
+                .createTime(LocalDateTime.now())
+                .synced(false)
+                .remark("测试")
+                .build();
+    }
+}